@@ -1,28 +1,91 @@
 package org.texttechnologylab.parliament.crawler;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.PageCache;
+import org.texttechnologylab.parliament.crawler.download.Watermark;
+import org.texttechnologylab.parliament.crawler.schedule.ParliamentCrawler;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class for Parsing Minutes of Bundesrat
  * @author Giuseppe Abrami
  * @date 2021-12-01
  */
-public class Bundesrat {
+public class Bundesrat implements ParliamentCrawler {
     static String sBase = "https://www.bundesrat.de/";
 
-    public static void main(String[] args) throws IOException {
+    private Watermark pWatermark = null;
+
+    /**
+     * Sessions of the crawl, the watermark only passes sessions which are fetched together with all sessions before
+     */
+    private Watermark.Progress pProgress = null;
+
+    /**
+     * Legislature and number of the sessions by their target
+     */
+    private final Map<File, String[]> pSessions = new ConcurrentHashMap<>(0);
+
+    /**
+     * Legislature by the number of a session
+     */
+    private final Map<String, String> pPeriods = new ConcurrentHashMap<>(0);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
 
-        String sStart = "https://www.bundesrat.de/DE/service/archiv/pl-protokoll-archiv/pl-protokoll-archiv-node.html";
         String sOut = args[0];
 
-        Document pDocument = Jsoup.connect(String.valueOf(new URL(sStart))).get();
+        // the sessions are fetched through the crawler, so the watermark follows the finished downloads
+        Bundesrat pCrawler = new Bundesrat();
+        ExecutorService pWorkers = CrawlerRuntime.newExecutor("Bundesrat", DownloadEngine.DEFAULT_WORKERS);
+        for (DownloadJob pJob : pCrawler.discover(new File(sOut))) {
+            pWorkers.execute(() -> {
+                try {
+                    pCrawler.fetch(pJob, DownloadEngine.getDefault());
+                } catch (IOException e) {
+                    System.out.println(pJob.getURL() + "\t" + e.getMessage());
+                }
+            });
+        }
+
+        pWorkers.shutdown();
+        pWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        pCrawler.finish();
+
+    }
+
+    @Override
+    public String getName() {
+        return "Bundesrat";
+    }
+
+    @Override
+    public List<DownloadJob> discover(File pOutput) throws IOException {
+
+        String sStart = "https://www.bundesrat.de/DE/service/archiv/pl-protokoll-archiv/pl-protokoll-archiv-node.html";
+        String sOut = pOutput.getAbsolutePath() + "/";
+
+        List<DownloadJob> rList = new ArrayList<>(0);
+
+        // in incremental mode only the legislature of the last fetched session and newer ones are requested
+        pWatermark = new Watermark(pOutput);
+
+        // listing pages are revalidated with ETag / Last-Modified, unchanged pages are not transferred again
+        Document pDocument = PageCache.getDefault().get(CrawlerRuntime.connect(String.valueOf(new URL(sStart))));
 
         Elements tdTop = pDocument.select("div .body-text tbody td");
 
@@ -31,14 +94,24 @@ public class Bundesrat {
 
                 String sLegislatur = element.text();
 
-                if(sLegislatur.equalsIgnoreCase("2021-2025")) {
+                // the periods (e.g. 2021-2025) are compared as strings, the current one is always requested again
+                if(!Watermark.isIncremental() || sLegislatur.compareTo(pWatermark.get("period", "")) >= 0) {
 
                     new File(sOut + sLegislatur).mkdir();
 
                     String sLink = element.getElementsByTag("a").get(0).attr("href");
 
                     try {
-                        parse(sBase + sLink, sOut + sLegislatur + "/");
+                        for (DownloadJob pJob : parse(sBase + sLink, sOut + sLegislatur + "/")) {
+                            String sNumber = pJob.getStoreKey()[2].replaceAll("\\D", "");
+                            if (sNumber.isEmpty() || pWatermark.isNew("session", sNumber)) {
+                                pSessions.put(pJob.getTarget(), new String[]{sLegislatur, sNumber});
+                                if (!sNumber.isEmpty()) {
+                                    pPeriods.put(sNumber, sLegislatur);
+                                }
+                                rList.add(pJob);
+                            }
+                        }
                     } catch (IOException e) {
                         e.printStackTrace();
                     }
@@ -48,34 +121,63 @@ public class Bundesrat {
 
         });
 
+        pProgress = pWatermark.track("session", pPeriods.keySet());
+
+        return rList;
+
     }
 
-    public static void parse(String sURI, String outPath) throws IOException {
+    public static List<DownloadJob> parse(String sURI, String outPath) throws IOException {
 
         // DE/service/archiv/pl-protokoll-archiv/_functions/plpr2021-25/plpr2021-25-node.html;jsessionid=01A55AE8C5268731DC22623596C0445C.2_cid365
 
 
-        Document pDocument = Jsoup.connect(String.valueOf(new URL(sURI))).get();
+        Document pDocument = PageCache.getDefault().get(CrawlerRuntime.connect(String.valueOf(new URL(sURI))));
 
         Elements links = pDocument.select("tbody tr td a");
 
+        List<DownloadJob> rList = new ArrayList<>(0);
+
         links.forEach(l->{
            String sLink = l.attr("href");
             String sTitle = l.attr("title");
 
+            if (!sTitle.contains("Plenar") || !sTitle.contains("(")) {
+                return;
+            }
+
             String sFileName = sTitle.substring(sTitle.indexOf("Plenar"), sTitle.indexOf("(")-1);
 
-            try {
-                FileUtils.downloadFile(new File(outPath+sFileName+".pdf"), sBase+sLink);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            rList.add(new DownloadJob(new File(outPath+sFileName+".pdf"), sBase+sLink).store("Bundesrat", new File(outPath).getName(), sFileName));
 
 
         });
 
+        return rList;
 
+    }
+
+    @Override
+    public File fetch(DownloadJob pJob, DownloadEngine pEngine) throws IOException {
+        File rFile = pEngine.download(pJob);
+        // without a discovery in this JVM (e.g. a download task of a DistributedCrawl) the watermark is not moved
+        String[] sSession = pSessions.get(pJob.getTarget());
+        if (pProgress != null && sSession != null && !sSession[1].isEmpty()) {
+            String sMark = pProgress.done(sSession[1]);
+            if (sMark != null) {
+                pWatermark.set("period", pPeriods.get(sMark));
+            }
+        }
+        return rFile;
+    }
 
+    @Override
+    public void finish() throws IOException {
+        if (pWatermark != null) {
+            pWatermark.close();
+            pWatermark = null;
+            pProgress = null;
+        }
     }
 
 }
@@ -4,25 +4,28 @@ import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import org.apache.uima.UIMAException;
 import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.jcas.JCas;
-import org.jsoup.Jsoup;
 import org.jsoup.select.Elements;
 import org.junit.Test;
 import org.texttechnologylab.annotation.DocumentAnnotation;
 import org.texttechnologylab.annotation.DocumentModification;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.helper.BundestagStructure;
+import org.texttechnologylab.parliament.crawler.helper.BundestagXmlReader;
 import org.texttechnologylab.parliament.crawler.helper.TextImagerProcessing;
+import org.texttechnologylab.parliament.crawler.helper.TextNormalizer;
 import org.texttechnologylab.utilities.helper.FileUtils;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Set;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class for Parsing Bundestag-Minutes
@@ -31,144 +34,161 @@ import java.util.Set;
  */
 public class Bundestag {
 
+    /**
+     * Property for the number of workers of the conversion, 1 converts the protocols one after another
+     */
+    public static final String WORKERS = "gerparcor.workers";
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("d.M.yyyy");
+
     @Test
     public void bundestagNeu(){
 
-        // Instantiate the Factory
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        try {
+            int iCount = convert("/tmp/bundestag/19/xml", "/tmp/bundestag/19/xmi/", Integer.getInteger(WORKERS, Runtime.getRuntime().availableProcessors()));
+            System.out.println(iCount + " protocols converted");
+        }
+        catch (Exception e){
+            e.printStackTrace();
+        }
 
-        SimpleDateFormat sdfDay = new SimpleDateFormat("dd");
-        SimpleDateFormat sdfMonth = new SimpleDateFormat("MM");
-        SimpleDateFormat sdfYear = new SimpleDateFormat("yyyy");
+    }
 
+    /**
+     * Method to convert the XML protocols of a directory into XMI.
+     * Every worker has its own parser, normalizer, JCas and pipeline, only the list of files is shared.
+     * All documents get the timestamp of the start of the run, so the output does not depend on the number of workers.
+     * @param sPath directory of the protocols
+     * @param sOutputPath directory of the XMI files
+     * @param iWorkers number of parallel workers
+     * @return number of converted protocols
+     * @throws InterruptedException
+     */
+    public static int convert(String sPath, String sOutputPath, int iWorkers) throws InterruptedException {
 
-        try {
+        long lTimestamp = System.currentTimeMillis();
+
+        Queue<File> pFiles = new ConcurrentLinkedQueue<>(FileUtils.getFiles(sPath, ".xml"));
+        AtomicInteger rCount = new AtomicInteger(0);
+
+        // the conversion is CPU-bound, so platform threads are used
+        ExecutorService pWorkers = CrawlerRuntime.newExecutor("bundestag-xmi", Math.max(1, iWorkers), false);
 
-            String sOutputPath = "/tmp/bundestag/19/xmi/";
-            TextImagerProcessing tiProcessing = new TextImagerProcessing(sOutputPath);
-//            System.setProperty("accessExternalDTD", "true");
-            // optional, but recommended
-            // process XML securely, avoid attacks like XML External Entities (XXE)
-            dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            dbf.setValidating(false);
-            dbf.setNamespaceAware(true);
-//            dbf.setFeature("http://xml.org/sax/features/namespaces", false);
-//            dbf.setFeature("http://xml.org/sax/features/validation", false);
-//            dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", true);
-//            dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", true);
-
-            // parse XML file
-            DocumentBuilder db = dbf.newDocumentBuilder();
-
-//            db.setEntityResolver(new EntityResolver()
-//            {
-//                @Override
-//                public InputSource resolveEntity(String publicId, String systemId)
-//                        throws SAXException, IOException
-//                {
-////                    System.out.println(systemId);
-//                    return new InputSource(new FileInputStream(new File("/tmp/bundestag/19/xml/dbtplenarprotokoll.dtd")));
-////                    if (systemId.equals("urn:x-com.kdgregory.example.xml.parsing"))
-////                    {
-////                        // normally you open the DTD file/resource here
-////                        return new InputSource(dtd);
-////                    }
-////                    else
-////                    {
-////                        throw new SAXException("unable to resolve entity; "
-////                                + "public = \"" + publicId + "\", "
-////                                + "system = \"" + systemId + "\"");
-////                    }
-//                }
-//            });
-
-            SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
-
-            // processing
-            String sPath = "/tmp/bundestag/19/xml";
-            Set<File> fileSet = FileUtils.getFiles(sPath, ".xml");
-
-            fileSet.stream().forEach(f->{
-
-                Document doc = null;
+        for (int w = 0; w < Math.max(1, iWorkers); w++) {
+            pWorkers.execute(() -> {
+
+                Converter pConverter;
                 try {
-                    doc = db.parse(f);
-
-                // optional, but recommended
-                // http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
-                    doc.getDocumentElement().normalize();
-//                    doc.normalizeDocument();
-
-                    String sPeriode = doc.getElementsByTagName("WAHLPERIODE").item(0).getTextContent();
-                    String sType = doc.getElementsByTagName("DOKUMENTART").item(0).getTextContent();
-                    String sNR = doc.getElementsByTagName("NR").item(0).getTextContent();
-                    String sDatum = doc.getElementsByTagName("DATUM").item(0).getTextContent();
-                    String sText = doc.getElementsByTagName("TEXT").item(0).getTextContent();
-
-                    sText =  sText.replaceAll("[\\x00-\\x09]", "");
-                    sText =  sText.replaceAll("[\\x0B-\\x1F]", "");
-                    sText =  sText.replaceAll("[\\x20]", " ");
-                    sText =  sText.replaceAll("[\\x7F-\\x9F]", "");
-                    sText =  sText.replaceAll("\u0096", "'");
-                    sText =  sText.replaceAll("\u0093", "");
-                    sText =  sText.replaceAll("\u0084", "");
-                    sText =  sText.replaceAll("\u0085", "");
-                    sText =  sText.replaceAll("\\-\n", "");
-                    sText =  sText.replaceAll("\n", " ");
-                    sText =  sText.replaceAll("  ", " ");
-                    sText =  sText.replaceAll("&#38;", "&");
-//                    sText =  sText.replaceAll("\n", " ");
-//                    sText =  sText.replaceAll("I n h a l t :", "Inhalt:");
-                    //sText =  sText.replaceAll("&amp;#38", "&");
-//                    sText =  sText.replaceAll("\n", " ");
-
-                    JCas pCas = JCasFactory.createText(sText, "de");
-
-                    DocumentMetaData dmd = DocumentMetaData.create(pCas);
-                    dmd.setDocumentTitle(sType+" vom "+sDatum);
-                    dmd.setDocumentId(f.getName());
-
-                    DocumentAnnotation dma = new DocumentAnnotation(pCas);
-                    dma.setAuthor("Bundestagsverwaltung");
-                    dma.setSubtitle("Wahlperiode "+sPeriode+": "+sText +" - "+sNR);
-
-                    Date pDate = sdf.parse(sDatum);
-
-                    dma.setDateDay(Integer.parseInt(sdfDay.format(pDate)));
-                    dma.setDateMonth(Integer.parseInt(sdfMonth.format(pDate)));
-                    dma.setDateYear(Integer.parseInt(sdfYear.format(pDate)));
-                    dma.setTimestamp(pDate.getTime());
-
-                    DocumentModification docMod = new DocumentModification(pCas);
-                    docMod.setUser("abrami");
-                    docMod.setComment("Initial Transformation");
-                    docMod.setTimestamp(System.currentTimeMillis());
-                    docMod.addToIndexes();
-
-                    DocumentModification dm = new DocumentModification(pCas);
-                    dm.setTimestamp(System.currentTimeMillis());
-                    dm.setUser("abrami");
-                    dm.setComment("Converting");
-
-                    tiProcessing.runPipeline(pCas);
-
-
-                } catch (SAXException e) {
-                    e.printStackTrace();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    pConverter = new Converter(sOutputPath);
                 } catch (UIMAException e) {
                     e.printStackTrace();
-                } catch (Exception e) {
-                     e.printStackTrace();
+                    return;
                 }
 
+                File f;
+                while ((f = pFiles.poll()) != null) {
+                    try {
+                        pConverter.convert(f, lTimestamp);
+                        rCount.incrementAndGet();
+                    } catch (IOException | UIMAException | RuntimeException e) {
+                        // a broken protocol (e.g. a NullPointerException of a missing element) must not end the worker,
+                        // the JCas and the reader are reset for the next file
+                        System.out.println(f.getName() + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage());
+                        e.printStackTrace();
+                    }
+                }
 
             });
+        }
+
+        pWorkers.shutdown();
+        pWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        return rCount.get();
+
+    }
 
+    /**
+     * Class for the objects of one worker of the conversion, none of them is shared with other threads
+     */
+    private static class Converter {
+
+        // the protocols are read in one pass without building a DOM, the DTD is not loaded
+        private final BundestagXmlReader pReader = new BundestagXmlReader();
+
+        private final TextNormalizer pNormalizer = TextNormalizer.forParliament("Bundestag");
+
+        private final TextImagerProcessing tiProcessing;
+
+        // the JCas is reset for every protocol instead of creating a new one
+        private final JCas pCas;
+
+        // offsets of the normalized text, reused like the buffer of the normalizer
+        private int[] iOffsets = new int[0];
+
+        Converter(String sOutputPath) throws UIMAException {
+            tiProcessing = new TextImagerProcessing(sOutputPath);
+            pCas = JCasFactory.createJCas();
         }
-        catch (Exception e){
-            e.printStackTrace();
+
+        /**
+         * Method to convert a protocol
+         * @param f
+         * @param lTimestamp timestamp of the modifications
+         * @throws IOException
+         * @throws UIMAException
+         */
+        void convert(File f, long lTimestamp) throws IOException, UIMAException {
+
+            BundestagXmlReader.Session pSession = pReader.read(f);
+
+            String sPeriode = pSession.getPeriod();
+            String sType = pSession.getType();
+            String sNR = pSession.getNumber();
+            String sDatum = pSession.getDate();
+
+            // one pass instead of a replaceAll per rule, the buffer of the normalizer is reused
+            String sRaw = pSession.getText();
+            if (iOffsets.length <= sRaw.length()) {
+                iOffsets = new int[sRaw.length() + 1];
+            }
+            String sText = pNormalizer.normalize(sRaw, iOffsets);
+
+            LocalDate pDate = LocalDate.parse(sDatum.trim(), DATE);
+
+            pCas.reset();
+            pCas.setDocumentText(sText);
+            pCas.setDocumentLanguage("de");
+
+            DocumentMetaData dmd = DocumentMetaData.create(pCas);
+            dmd.setDocumentTitle(sType+" vom "+sDatum);
+            dmd.setDocumentId(f.getName());
+
+            DocumentAnnotation dma = new DocumentAnnotation(pCas);
+            dma.setAuthor("Bundestagsverwaltung");
+            dma.setSubtitle("Wahlperiode "+sPeriode+": "+sText +" - "+sNR);
+
+            dma.setDateDay(pDate.getDayOfMonth());
+            dma.setDateMonth(pDate.getMonthValue());
+            dma.setDateYear(pDate.getYear());
+            dma.setTimestamp(pDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+
+            DocumentModification docMod = new DocumentModification(pCas);
+            docMod.setUser("abrami");
+            docMod.setComment("Initial Transformation");
+            docMod.setTimestamp(lTimestamp);
+            docMod.addToIndexes();
+
+            DocumentModification dm = new DocumentModification(pCas);
+            dm.setTimestamp(lTimestamp);
+            dm.setUser("abrami");
+            dm.setComment("Converting");
+
+            // speeches, speakers and comments which the reader recorded (only for the format since WP 19)
+            BundestagStructure.annotate(pCas, pSession.getSegments(), iOffsets, pNormalizer);
+
+            tiProcessing.runPipeline(pCas);
+
         }
 
     }
@@ -179,7 +199,7 @@ public class Bundestag {
 
         while(true) {
 
-            org.jsoup.nodes.Document nDocument = Jsoup.connect("https://www.bundestag.de/ajax/filterlist/de/services/opendata/"+sessionID+"?limit=10&noFilterSet=true&offset="+offset).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").get();
+            org.jsoup.nodes.Document nDocument = CrawlerRuntime.connect("https://www.bundestag.de/ajax/filterlist/de/services/opendata/"+sessionID+"?limit=10&noFilterSet=true&offset="+offset).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").get();
 
             Elements el = nDocument.select("div.bt-documents-description");
 
@@ -194,7 +214,7 @@ public class Bundestag {
                 System.out.println(sURI);
 
                 try {
-                    FileUtils.downloadFile(new File("/tmp/bundestagNeu/"+iWahlperiode+"/" + sID + ".xml"), "https://bundestag.de"+sURI);
+                    DownloadEngine.getDefault().download(new File("/tmp/bundestagNeu/"+iWahlperiode+"/" + sID + ".xml"), "https://bundestag.de"+sURI);
                 } catch (IOException ex) {
                     ex.printStackTrace();
                 }
@@ -216,7 +236,7 @@ public class Bundestag {
     @Test
     public void Periode19() throws IOException {
 
-        org.jsoup.nodes.Document pDocument = Jsoup.parse(new URL("https://www.bundestag.de/services/opendata#bt-collapse-543410"), 3000);
+        org.jsoup.nodes.Document pDocument = CrawlerRuntime.connect("https://www.bundestag.de/services/opendata#bt-collapse-543410").timeout(3000).get();
 
 
         //Elements el = pDocument.select("table.bt-table-data tbody tr td.title a");
@@ -225,7 +245,7 @@ public class Bundestag {
 
         while(true) {
 
-            org.jsoup.nodes.Document nDocument = Jsoup.connect("https://www.bundestag.de/ajax/filterlist/de/services/opendata/543410-543410?limit=10&noFilterSet=true&offset="+offset).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").get();
+            org.jsoup.nodes.Document nDocument = CrawlerRuntime.connect("https://www.bundestag.de/ajax/filterlist/de/services/opendata/543410-543410?limit=10&noFilterSet=true&offset="+offset).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").get();
 
             Elements el = nDocument.select("div.bt-documents-description");
 
@@ -240,7 +260,7 @@ public class Bundestag {
                 System.out.println(sURI);
 
                 try {
-                    FileUtils.downloadFile(new File("/tmp/bundestagNeu/19/" + sID + ".xml"), "https://bundestag.de"+sURI);
+                    DownloadEngine.getDefault().download(new File("/tmp/bundestagNeu/19/" + sID + ".xml"), "https://bundestag.de"+sURI);
                 } catch (IOException ex) {
                     ex.printStackTrace();
                 }
@@ -263,7 +283,7 @@ public class Bundestag {
 
         while(true) {
 
-            org.jsoup.nodes.Document nDocument = Jsoup.connect("https://www.bundestag.de/ajax/filterlist/de/services/opendata/854776-854776?limit=10&noFilterSet=true&offset="+offset).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").get();
+            org.jsoup.nodes.Document nDocument = CrawlerRuntime.connect("https://www.bundestag.de/ajax/filterlist/de/services/opendata/854776-854776?limit=10&noFilterSet=true&offset="+offset).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").get();
 
             Elements el = nDocument.select("div.bt-documents-description li a");
 
@@ -275,7 +295,7 @@ public class Bundestag {
                     String sName = sLink.substring(sLink.lastIndexOf("/")+1);
                     sName = sName.substring(0, sName.indexOf("?"));
                     try {
-                        FileUtils.downloadFile(new File("/tmp/Drucksachen/"+sName+".xml"), sLink);
+                        DownloadEngine.getDefault().download(new File("/tmp/Drucksachen/"+sName+".xml"), sLink);
                     } catch (IOException ex) {
                         ex.printStackTrace();
                     }
@@ -285,7 +305,7 @@ public class Bundestag {
                     String sName = sLink.substring(sLink.lastIndexOf("/")+1);
                     sName = sName.substring(0, sName.indexOf("?"));
                     try {
-                        FileUtils.downloadFile(new File("/tmp/Drucksachen/"+sName+".json"), sLink);
+                        DownloadEngine.getDefault().download(new File("/tmp/Drucksachen/"+sName+".json"), sLink);
                     } catch (IOException ex) {
                         ex.printStackTrace();
                     }
@@ -1,35 +1,93 @@
 package org.texttechnologylab.parliament.crawler;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.Watermark;
+import org.texttechnologylab.parliament.crawler.schedule.ParliamentCrawler;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class for Parsing Minutes of Liechtenstein
  * @author Giuseppe Abrami
  * @date 2021-12-01
  */
-public class Liechtenstein {
+public class Liechtenstein implements ParliamentCrawler {
+
+    /**
+     * First year of a full crawl
+     */
+    public static final int FIRST_YEAR = 2021;
+
+    private Watermark pWatermark = null;
+
+    /**
+     * Sessions of the crawl, the watermark only passes sessions which are fetched together with all sessions before
+     */
+    private Watermark.Progress pProgress = null;
+
+    /**
+     * Dates (yyyy-MM-dd) of the sessions by their target
+     */
+    private final Map<File, String> pDates = new ConcurrentHashMap<>(0);
 
     public static void main(String[] args) throws IOException {
 
+        String sOut = args[0];
+        new File(sOut).mkdir();
+
+        // the host allows one request per second, so the sessions are fetched one after another and the watermark follows them
+        Liechtenstein pCrawler = new Liechtenstein();
+        for (DownloadJob pJob : pCrawler.discover(new File(sOut))) {
+            try {
+                pCrawler.fetch(pJob, DownloadEngine.getDefault());
+            } catch (IOException e) {
+                System.out.println(pJob.getURL() + "\t" + e.getMessage());
+            }
+        }
+
+        pCrawler.finish();
+
+    }
+
+    @Override
+    public String getName() {
+        return "Liechtenstein";
+    }
+
+    @Override
+    public List<DownloadJob> discover(File pOutput) throws IOException {
 
         String sPath = "https://www.landtag.li/protokolle/default.aspx?mode=lp&prim=YEAR";
 
         String sDownload = "https://lp.rechtportal.li/PDF/Landtagsprotokoll_YEAR_MONTH_DAY.pdf";
 
-        String sOut = args[0];
-        new File(sOut).mkdir();
+        String sOut = pOutput.getAbsolutePath() + "/";
         String ua = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_6_8) AppleWebKit/534.30 (KHTML, like Gecko) Chrome/12.0.742.122 Safari/534.30";
 
-        for(int a=2021; a<=2023; a++){
+        HostRateLimiter.getDefault().setRate("lp.rechtportal.li", 1, 1);
+
+        List<DownloadJob> rList = new ArrayList<>(0);
+
+        // in incremental mode only the years since the last fetched session are requested
+        pWatermark = new Watermark(pOutput);
+        String sLast = pWatermark.get("session", String.valueOf(FIRST_YEAR));
+        int iFirst = Watermark.isIncremental() ? Math.max(FIRST_YEAR, Integer.parseInt(sLast.substring(0, 4))) : FIRST_YEAR;
+
+        for(int a=iFirst; a<=LocalDate.now().getYear(); a++){
 
             new File(sOut+a).mkdir();
 
-            Document pDocument = Jsoup.connect(sPath.replace("YEAR", ""+a)).userAgent(ua).get();
+            Document pDocument = CrawlerRuntime.connect(sPath.replace("YEAR", ""+a)).userAgent(ua).get();
 
             int finalA = a;
             pDocument.select("td.selectionDate").forEach(e->{
@@ -46,20 +104,13 @@ public class Liechtenstein {
 
                 File dFile = new File(sOut+finalA+"/"+ finalA +"_"+monthDay[0]+"_"+monthDay[1]+".pdf");
 
-                try {
-                    Thread.sleep(1000l);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
+                String sDate = String.format("%04d-%02d-%02d", finalA, Integer.parseInt(monthDay[0].trim()), Integer.parseInt(monthDay[1].trim()));
 
-                if(!dFile.exists()){
-                    try {
-                        String sDownloadNew = sDownload.replace("YEAR", ""+finalA).replace("MONTH", monthDay[0]).replace("DAY", monthDay[1]);
-                        System.out.println(sDownloadNew);
-                        FileUtils.downloadFile(dFile, sDownloadNew);
-                    } catch (IOException ex) {
-                        ex.printStackTrace();
-                    }
+                if(!dFile.exists() && pWatermark.isNew("session", sDate)){
+                    String sDownloadNew = sDownload.replace("YEAR", ""+finalA).replace("MONTH", monthDay[0]).replace("DAY", monthDay[1]);
+                    System.out.println(sDownloadNew);
+                    pDates.put(dFile, sDate);
+                    rList.add(new DownloadJob(dFile, sDownloadNew));
                 }
 
 
@@ -67,6 +118,30 @@ public class Liechtenstein {
 
         }
 
+        pProgress = pWatermark.track("session", pDates.values());
+
+        return rList;
+
+    }
+
+    @Override
+    public File fetch(DownloadJob pJob, DownloadEngine pEngine) throws IOException {
+        File rFile = pEngine.download(pJob);
+        // without a discovery in this JVM (e.g. a download task of a DistributedCrawl) the watermark is not moved
+        String sDate = pDates.get(pJob.getTarget());
+        if (pProgress != null && sDate != null) {
+            pProgress.done(sDate);
+        }
+        return rFile;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (pWatermark != null) {
+            pWatermark.close();
+            pWatermark = null;
+            pProgress = null;
+        }
     }
 
 }
@@ -5,6 +5,8 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.junit.Test;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
 import org.texttechnologylab.utilities.helper.FileUtils;
 import org.texttechnologylab.utilities.helper.StringUtils;
 
@@ -20,13 +22,15 @@ import java.util.Date;
  */
 public class Oesterreich {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         // after wget on Parliament-Site
         String sDownload = args[0];
 
         new File(sDownload).mkdir();
 
+        HostRateLimiter.getDefault().setRate("www.parlament.gv.at", 1, 1);
+
         Document d = Jsoup.parse(FileUtils.getContentFromFile(new File("/path/to/downloaded_File")));
 
 
@@ -45,22 +49,15 @@ public class Oesterreich {
                     File dFile = new File(sDownload+ finalSDatum +"_"+sSitzung+".pdf");
 
                     if(!dFile.exists()) {
-                        try {
-                            FileUtils.downloadFile(dFile, pdf.attr("href"));
-                            try {
-                                Thread.sleep(1000l);
-                            } catch (InterruptedException ex) {
-                                ex.printStackTrace();
-                            }
-                        } catch (IOException ex) {
-                            ex.printStackTrace();
-                        }
+                        DownloadEngine.getDefault().submit(dFile, pdf.attr("href"));
                     }
 
                 }
             });
         });
 
+        DownloadEngine.getDefault().awaitCompletion();
+
     }
 
     @Test
@@ -100,7 +97,7 @@ public class Oesterreich {
                     Document pDocument = Jsoup.parse(sSplit[10]);
                     for (Element a : pDocument.select("a")) {
                         if(a.attr("href").endsWith(".pdf")){
-                            FileUtils.downloadFile(dFile, sBaseDownloadPath+a.attr("href"));
+                            DownloadEngine.getDefault().download(dFile, sBaseDownloadPath+a.attr("href"));
                         }
                     }
                 }
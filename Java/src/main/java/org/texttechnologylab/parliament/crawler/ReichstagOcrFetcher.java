@@ -0,0 +1,175 @@
+package org.texttechnologylab.parliament.crawler;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.texttechnologylab.parliament.crawler.download.CrawlFrontier;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.SequenceProber;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Class for the OCR pages (ALTO) of the Reichstag volumes at the BSB (api.digitale-sammlungen.de).
+ * The number of pages of a volume is taken from its IIIF manifest (number of canvases); if the manifest cannot be read,
+ * the last page is found by probing the OCR api with the SequenceProber. Knowing the last page, all pages of a volume are
+ * submitted to the DownloadEngine at once, which limits the parallel requests to the host (rate limit and congestion window)
+ * and writes every page to a temporary file which is synced and renamed, so a crash never leaves a truncated page behind.
+ * The page counts are stored in the CrawlFrontier, a restarted crawl does not need to request them again.
+ */
+public class ReichstagOcrFetcher {
+
+    public static final String OCRAPI = "https://api.digitale-sammlungen.de/ocr/{object_id}/{page_num}";
+
+    public static final String MANIFEST = "https://api.digitale-sammlungen.de/iiif/presentation/v2/{object_id}/manifest";
+
+    private final DownloadEngine pEngine;
+
+    private final CrawlFrontier pFrontier;
+
+    private HostRateLimiter pRateLimiter = HostRateLimiter.getDefault();
+
+    private final Map<String, Integer> pPageCounts = new ConcurrentHashMap<>(0);
+
+    /**
+     * Constructor
+     * @param pFrontier frontier for the page counts, may be null
+     */
+    public ReichstagOcrFetcher(CrawlFrontier pFrontier) {
+        this(DownloadEngine.getDefault(), pFrontier);
+    }
+
+    /**
+     * Constructor
+     * @param pEngine engine which downloads the pages
+     * @param pFrontier frontier for the page counts, may be null
+     */
+    public ReichstagOcrFetcher(DownloadEngine pEngine, CrawlFrontier pFrontier) {
+        this.pEngine = pEngine;
+        this.pFrontier = pFrontier;
+    }
+
+    public void setRateLimiter(HostRateLimiter pRateLimiter) {
+        this.pRateLimiter = pRateLimiter;
+    }
+
+    /**
+     * Method to get the URL of the OCR of a page
+     * @param sObjectId BSB object, e.g. bsb00000001
+     * @param iPage
+     * @return
+     */
+    public static String getURL(String sObjectId, int iPage) {
+        return OCRAPI.replace("{object_id}", sObjectId).replace("{page_num}", String.valueOf(iPage));
+    }
+
+    /**
+     * Method to get the number of pages of a BSB object, which is also the number of its last page
+     * @param sObjectId
+     * @param iFirst a page which is known to exist, the probing starts there
+     * @return
+     * @throws IOException
+     */
+    public int getPageCount(String sObjectId, int iFirst) throws IOException {
+
+        Integer iCount = pPageCounts.get(sObjectId);
+        if (iCount != null) {
+            return iCount;
+        }
+        if (pFrontier != null) {
+            long lCount = pFrontier.getCursor("pages." + sObjectId, -1);
+            if (lCount >= 0) {
+                pPageCounts.put(sObjectId, (int) lCount);
+                return (int) lCount;
+            }
+        }
+
+        int rCount = getManifestPageCount(sObjectId);
+        if (rCount <= 0) {
+            rCount = new SequenceProber(iPage -> getURL(sObjectId, iPage), pEngine, SequenceProber.DEFAULT_GAP).findLast(iFirst);
+        }
+
+        pPageCounts.put(sObjectId, rCount);
+        if (pFrontier != null) {
+            pFrontier.setCursor("pages." + sObjectId, rCount);
+        }
+        return rCount;
+
+    }
+
+    /**
+     * Method to count the canvases of the IIIF manifest
+     * @param sObjectId
+     * @return the number of pages, -1 if the manifest is not available
+     */
+    private int getManifestPageCount(String sObjectId) {
+
+        String sURL = MANIFEST.replace("{object_id}", sObjectId);
+        try {
+            pRateLimiter.acquireUninterruptibly(sURL);
+            Connection.Response pResponse = CrawlerRuntime.connect(sURL)
+                    .userAgent(DownloadEngine.DEFAULT_USER_AGENT)
+                    .ignoreContentType(true)
+                    .maxBodySize(0)
+                    .timeout(60000)
+                    .execute();
+
+            JSONArray pSequences = new JSONObject(pResponse.body()).getJSONArray("sequences");
+            int rCount = 0;
+            for (int i = 0; i < pSequences.length(); i++) {
+                rCount = Math.max(rCount, pSequences.getJSONObject(i).getJSONArray("canvases").length());
+            }
+            return rCount > 0 ? rCount : -1;
+
+        } catch (HttpStatusException e) {
+            System.out.println(sURL + "\t" + e.getStatusCode() + ", probing the pages");
+        } catch (Exception e) {
+            System.out.println(sURL + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage() + ", probing the pages");
+        }
+        return -1;
+
+    }
+
+    /**
+     * Method to submit the pages iFirst to iLast of a BSB object, existing files are skipped
+     * @param sObjectId
+     * @param iFirst
+     * @param iLast
+     * @param pTargets function which returns the file of a page
+     * @return the pending downloads by page
+     */
+    public Map<Integer, Future<File>> fetch(String sObjectId, int iFirst, int iLast, IntFunction<File> pTargets) {
+
+        Map<Integer, Future<File>> rPages = new LinkedHashMap<>(0);
+        for (int iPage = iFirst; iPage <= iLast; iPage++) {
+            File pTarget = pTargets.apply(iPage);
+            if (!pTarget.exists()) {
+                rPages.put(iPage, pEngine.submit(pTarget, getURL(sObjectId, iPage)));
+            }
+        }
+        return rPages;
+
+    }
+
+    /**
+     * Method to submit all pages from iFirst to the last page of a BSB object
+     * @param sObjectId
+     * @param iFirst
+     * @param pTargets function which returns the file of a page
+     * @return the pending downloads by page
+     * @throws IOException if the page count could not be determined
+     */
+    public Map<Integer, Future<File>> fetch(String sObjectId, int iFirst, IntFunction<File> pTargets) throws IOException {
+        return fetch(sObjectId, iFirst, getPageCount(sObjectId, iFirst), pTargets);
+    }
+
+}
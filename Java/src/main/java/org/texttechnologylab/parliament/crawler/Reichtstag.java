@@ -1,10 +1,13 @@
 package org.texttechnologylab.parliament.crawler;
 
 import com.google.api.client.util.ArrayMap;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.texttechnologylab.parliament.crawler.download.CrawlFrontier;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.HttpStatusException;
 import org.texttechnologylab.utilities.helper.FileUtils;
 
 import java.io.File;
@@ -13,8 +16,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
@@ -26,7 +32,7 @@ public class Reichtstag {
 
     public static String BASEURL = "https://www.reichstagsprotokolle.de/";
     public static String OUTFILE = "/tmp/parlament/";
-    public static String OCRAPI = "https://api.digitale-sammlungen.de/ocr/{object_id}/{page_num}";
+    public static String OCRAPI = ReichstagOcrFetcher.OCRAPI;
 
     public static void main(String[] args) {
 
@@ -36,8 +42,19 @@ public class Reichtstag {
             StringBuilder errorBuilder1 = new StringBuilder();
             StringBuilder errorBuilder2 = new StringBuilder();
 
+            HostRateLimiter.getDefault().setRate("www.reichstagsprotokolle.de", 0.66, 1);
+            // the parallel requests to the OCR api are adapted to the 429 responses by the CongestionController
+            HostRateLimiter.getDefault().setRate("api.digitale-sammlungen.de", 4, 4);
+
             new File(OUTFILE).mkdir();
-            Document pDocument = Jsoup.connect(String.valueOf(new URL(BASEURL + "index.html"))).get();
+
+            // finished listing pages and volumes are skipped without a request after a restart
+            CrawlFrontier pFrontier = new CrawlFrontier(new File(OUTFILE + "/frontier.log"));
+
+            // the pages of a volume are downloaded in parallel, the page counts are kept in the frontier
+            ReichstagOcrFetcher pFetcher = new ReichstagOcrFetcher(pFrontier);
+
+            Document pDocument = CrawlerRuntime.connect(String.valueOf(new URL(BASEURL + "index.html"))).get();
 
             Elements innernav = pDocument.select("div .innernav2");
 
@@ -57,7 +74,12 @@ public class Reichtstag {
                         String sURL = elements.attr("href");
                         System.out.println(sURL);
                         try {
-                            Document pZeitraum = Jsoup.connect(String.valueOf(new URL(BASEURL + sURL))).get();
+                            if (pFrontier.isDone(BASEURL + sURL)) {
+                                return;
+                            }
+                            pFrontier.discover(BASEURL + sURL);
+
+                            Document pZeitraum = CrawlerRuntime.connect(String.valueOf(new URL(BASEURL + sURL))).get();
 
                             Elements pLi = pZeitraum.select("div.innernav2 li a");
 
@@ -68,13 +90,14 @@ public class Reichtstag {
                                 new File(OUTFILE + "/" + link.text()).mkdir();
 
                                 try {
-                                    try {
-                                        Thread.sleep(1500);
-                                    } catch (InterruptedException e) {
-                                        e.printStackTrace();
+                                    if (pFrontier.isDone(BASEURL + link.attr("href"))) {
+                                        return;
                                     }
+                                    pFrontier.discover(BASEURL + link.attr("href"));
 
-                                    Document pUnter = Jsoup.connect(String.valueOf(new URL(BASEURL + link.attr("href")))).get();
+                                    HostRateLimiter.getDefault().acquireUninterruptibly(BASEURL);
+
+                                    Document pUnter = CrawlerRuntime.connect(String.valueOf(new URL(BASEURL + link.attr("href")))).get();
 
                                     Elements pEintraege = pUnter.select("ul.left2 li a");
 
@@ -83,6 +106,11 @@ public class Reichtstag {
 
                                     eList.forEach(eintrag -> {
                                         try {
+                                            if (pFrontier.isDone(BASEURL + eintrag.attr("href"))) {
+                                                return;
+                                            }
+                                            pFrontier.discover(BASEURL + eintrag.attr("href"));
+
                                             String sEintrag = eintrag.text();
                                             sEintrag = sEintrag.replace("/", "_");
 
@@ -108,95 +136,72 @@ public class Reichtstag {
                                             }
 
                                             List<String> keyList = sMap.keySet().stream().collect(Collectors.toList());
-                                            long waitTime = 1500l;
+                                            Map<String, Future<File>> pPages = new LinkedHashMap<>(0);
 
                                             for (int a = 0; a < keyList.size(); a++) {
 
-                                                if (a < keyList.size() - 1) {
-
-                                                    int iStart = iMap.get(a);
-                                                    int iEnd = iMap.get(a + 1);
-
-                                                    for (int download = iStart; download < iEnd; download++) {
-
-                                                        String sValue = sMap.get(keyList.get(a));
-
-                                                        String sFileName = keyList.get(a);
-
-                                                        String apiValueKey = sValue.substring(sValue.indexOf("bsb"), sValue.lastIndexOf("_"));
+                                                String sValue = sMap.get(keyList.get(a));
 
-                                                        String getURI = OCRAPI.replace("{object_id}", apiValueKey);
-                                                        getURI = getURI.replace("{page_num}", String.valueOf(download));
-                                                        File targetFile = null;
-                                                        try {
-                                                            targetFile = new File(OUTFILE + "/" + link.text() + "/" + sEintrag + "/" + sFileName + "_" + download + ".xml");
-                                                            if (!targetFile.exists()) {
-                                                                Thread.sleep(waitTime);
-                                                                FileUtils.downloadFile(targetFile, getURI);
-                                                            }
-                                                        } catch (InterruptedException e) {
-                                                            e.printStackTrace();
-                                                        } catch (IOException fne) {
+                                                String sFileName = keyList.get(a);
 
-                                                            if (fne.getMessage().contains("429 for URL")) {
-                                                                errorBuilder2.append(targetFile.getAbsolutePath() + "\t" +fne.getMessage());
+                                                String apiValueKey = sValue.substring(sValue.indexOf("bsb"), sValue.lastIndexOf("_"));
 
-                                                                waitTime = waitTime + 1000;
-                                                                try {
-                                                                    Thread.sleep(10000);
-                                                                } catch (InterruptedException e) {
-                                                                    e.printStackTrace();
-                                                                }
-
-                                                            }
-                                                            else{
-                                                                errorBuilder1.append(sEintrag + "/" + sFileName + "\t" + fne.getClass().getSimpleName() + "\t" + fne.getMessage());
-                                                            }
-
-                                                            System.out.println(sEintrag + "/" + sFileName + "\t" + fne.getClass().getSimpleName() + "\t" + fne.getMessage());
-                                                        }
-
-
-                                                    }
+                                                int iStart = iMap.get(a);
 
+                                                // the last entry ends with the last page of the volume, which is taken from the IIIF manifest
+                                                int iEnd;
+                                                if (a < keyList.size() - 1) {
+                                                    iEnd = iMap.get(a + 1) - 1;
                                                 } else {
+                                                    try {
+                                                        iEnd = pFetcher.getPageCount(apiValueKey, iStart);
+                                                    } catch (IOException e) {
+                                                        System.out.println("No page count: " + sEintrag + "/" + sFileName + "\t" + e.getMessage());
+                                                        pFrontier.failed(BASEURL + eintrag.attr("href"));
+                                                        return;
+                                                    }
+                                                }
 
-                                                    int iStart = iMap.get(a);
-                                                    boolean downloadLeft = true;
-                                                    while (downloadLeft) {
-
-                                                        String sValue = sMap.get(keyList.get(a));
-
-                                                        String sFileName = keyList.get(a);
-
-                                                        String apiValueKey = sValue.substring(sValue.indexOf("bsb"), sValue.lastIndexOf("_"));
-
-                                                        String getURI = OCRAPI.replace("{object_id}", apiValueKey);
-                                                        getURI = getURI.replace("{page_num}", String.valueOf(iStart++));
-
-                                                        File targetFile = new File(OUTFILE + "/" + link.text() + "/" + sEintrag + "/" + sFileName + "_" + iStart + ".xml");
+                                                // 429 and 503 are retried by the engine, the CongestionController adapts the parallel requests
+                                                String sTarget = OUTFILE + "/" + link.text() + "/" + sEintrag + "/" + sFileName + "_";
+                                                for (Map.Entry<Integer, Future<File>> pPage : pFetcher.fetch(apiValueKey, iStart, iEnd, iPage -> new File(sTarget + iPage + ".xml")).entrySet()) {
+                                                    pPages.put(sEintrag + "/" + sFileName + "_" + pPage.getKey(), pPage.getValue());
+                                                }
 
-                                                        try {
-                                                            if (!targetFile.exists()) {
-                                                                Thread.sleep(1500);
-                                                                FileUtils.downloadFile(targetFile, getURI);
-                                                            }
-                                                        } catch (Exception e) {
-                                                            System.out.println("Finish: " + sEintrag + "/" + sFileName + "\t" + e.getMessage());
-                                                            downloadLeft = false;
-                                                        }
+                                            }
 
+                                            boolean bComplete = true;
+                                            for (Map.Entry<String, Future<File>> pPage : pPages.entrySet()) {
+                                                try {
+                                                    pPage.getValue().get();
+                                                } catch (InterruptedException e) {
+                                                    e.printStackTrace();
+                                                } catch (ExecutionException e) {
+                                                    bComplete = false;
+                                                    Throwable fne = e.getCause();
+                                                    if (fne instanceof HttpStatusException && ((HttpStatusException) fne).isThrottled()) {
+                                                        errorBuilder2.append(OUTFILE + "/" + link.text() + "/" + pPage.getKey() + ".xml" + "\t" + fne.getMessage());
+                                                    } else {
+                                                        errorBuilder1.append(pPage.getKey() + "\t" + fne.getClass().getSimpleName() + "\t" + fne.getMessage());
                                                     }
                                                 }
+                                            }
 
-
+                                            if (bComplete) {
+                                                pFrontier.done(BASEURL + eintrag.attr("href"));
+                                            } else {
+                                                pFrontier.failed(BASEURL + eintrag.attr("href"));
                                             }
 
-                                        } catch (MalformedURLException e) {
+                                        } catch (IOException e) {
                                             e.printStackTrace();
                                         }
                                     });
 
+                                    if (eList.stream().allMatch(eintrag -> pFrontier.isDone(BASEURL + eintrag.attr("href")))) {
+                                        pFrontier.done(BASEURL + link.attr("href"));
+                                    }
+
 
                                 } catch (IOException e) {
                                     e.printStackTrace();
@@ -205,6 +210,10 @@ public class Reichtstag {
 
                             });
 
+                            if (tList.stream().allMatch(link -> pFrontier.isDone(BASEURL + link.attr("href")))) {
+                                pFrontier.done(BASEURL + sURL);
+                            }
+
                         } catch (IOException e) {
                             e.printStackTrace();
                         }
@@ -221,6 +230,8 @@ public class Reichtstag {
             FileUtils.writeContent(errorBuilder1.toString(), new File("/tmp/error1.txt"));
             FileUtils.writeContent(errorBuilder2.toString(), new File("/tmp/error2.txt"));
 
+            pFrontier.close();
+
         } catch (MalformedURLException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -237,7 +248,7 @@ public class Reichtstag {
         Map<String, String> rSet = new ArrayMap<>();
 
         try {
-            Document pDocument = Jsoup.connect(String.valueOf(pURL)).get();
+            Document pDocument = CrawlerRuntime.connect(String.valueOf(pURL)).get();
 
             Elements content = pDocument.select("div.content12");
 
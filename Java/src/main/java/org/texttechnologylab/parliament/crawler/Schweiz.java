@@ -1,14 +1,21 @@
 package org.texttechnologylab.parliament.crawler;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.jsoup.Jsoup;
 import org.junit.Test;
+import org.texttechnologylab.parliament.crawler.download.CrawlFrontier;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
 import org.texttechnologylab.utilities.helper.FileUtils;
 import org.texttechnologylab.utilities.helper.RESTUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -18,24 +25,55 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public class Schweiz {
 
-    public static void main(String[] args){
+    private static final String ODATA = "https://ws.parlament.ch/odata.svc/Transcript";
+
+    private static final String SELECT = "$select=Language,LanguageOfText,Text,MeetingDate,ID,SpeakerFirstName,SpeakerFullName,SpeakerLastName,CouncilName";
+
+    /**
+     * Number of transcripts per request of the batch mode
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Number of IDs of a partition of the batch mode
+     */
+    private static final long PARTITION_SIZE = 20000;
+
+    /**
+     * Usage: Schweiz &lt;output&gt; [batch [workers]]
+     * Without batch every transcript is requested by its ID, with batch the ID range is split into partitions,
+     * which are paged with $filter, $orderby, $top and $skip by several workers.
+     * @param args
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        if (args.length > 1 && args[1].equalsIgnoreCase("batch")) {
+            batch(args[0], args.length > 2 ? Integer.parseInt(args[2]) : 4);
+            return;
+        }
 
 
         String sURI = "https://ws.parlament.ch/odata.svc/Transcript(Language='DE',ID=[ID]L)?$select=Language,LanguageOfText,Text,MeetingDate,ID,SpeakerFirstName,SpeakerFullName,SpeakerLastName,CouncilName&$format=application/json;odata.metadata=full,application/json;odata=verbose";
 
         String sDownload = args[0];
 
-        int iFolder = 1;
+        // the cursor is restored from the frontier, so a restarted crawl continues with the next ID
+        CrawlFrontier pFrontier = new CrawlFrontier(new File(sDownload + "frontier.log"));
+
+        int iFolder = (int) pFrontier.getCursor("folder", 1);
 
-        int iCount = 1;
-        int iDownload = 0;
+        int iCount = (int) pFrontier.getCursor("id", 1);
+        int iDownload = (int) pFrontier.getCursor("downloads", 0);
+
+        // formerly 100 requests followed by a pause of two seconds
+        HostRateLimiter.getDefault().setRate("ws.parlament.ch", 25, 25);
 
         while(true) {
             try {
 
-                if(iCount%100==0 && iCount>0){
-                    Thread.sleep(2000l);
-                }
+                HostRateLimiter.getDefault().acquire(sURI);
 
                 if(iDownload%1000==0 && iDownload>0){
                     iFolder++;
@@ -43,7 +81,7 @@ public class Schweiz {
 
                 new File(sDownload+iFolder).mkdir();
 
-                JSONObject jObject = RESTUtils.getObjectFromRest(sURI.replace("[ID]", "" + iCount), "");
+                JSONObject jObject = RESTUtils.getObjectFromRest(CrawlerRuntime.resolve(sURI.replace("[ID]", "" + iCount)), "");
 
                 System.out.println(jObject);
 
@@ -62,10 +100,109 @@ public class Schweiz {
                 System.out.println(iCount+" \t "+e.getMessage());
             }
             iCount++;
+
+            pFrontier.setCursor("folder", iFolder);
+            pFrontier.setCursor("downloads", iDownload);
+            pFrontier.setCursor("id", iCount);
+        }
+
+
+
+    }
+
+    /**
+     * Method to download all german transcripts in batches.
+     * The ID range up to the highest ID is split into partitions, every worker pages through a partition with
+     * BATCH_SIZE transcripts per request. Finished partitions are stored in the frontier and skipped on a restart.
+     * The files are named like the files of the single mode (ID__MeetingDate-ID.json), so merge works on both.
+     * @param sDownload
+     * @param iWorkers
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void batch(String sDownload, int iWorkers) throws IOException, InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("ws.parlament.ch", 25, 25);
+
+        CrawlFrontier pFrontier = new CrawlFrontier(new File(sDownload + "frontier.log"));
+
+        JSONArray pLast = getResults(RESTUtils.getObjectFromRest(query(ODATA + "?$filter=Language%20eq%20'DE'&$orderby=ID%20desc&$top=1&$select=ID"), ""));
+        if (pLast.length() == 0) {
+            System.out.println("No transcripts found");
+            return;
+        }
+        long lLast = Long.parseLong(pLast.getJSONObject(0).getString("ID"));
+
+        ExecutorService pWorkers = CrawlerRuntime.newExecutor("odata", iWorkers);
+        AtomicInteger iDownloads = new AtomicInteger(0);
+
+        for (long lFrom = 0; lFrom <= lLast; lFrom += PARTITION_SIZE) {
+
+            long lPartitionFrom = lFrom;
+            long lPartitionTo = lFrom + PARTITION_SIZE;
+            String sKey = "partition." + lPartitionFrom;
+
+            if (pFrontier.getCursor(sKey, 0) >= lPartitionTo) {
+                continue;
+            }
+
+            pWorkers.execute(() -> {
+                File pFolder = new File(sDownload + "p" + lPartitionFrom);
+                pFolder.mkdirs();
+                String sFilter = "$filter=Language%20eq%20'DE'%20and%20ID%20ge%20" + lPartitionFrom + "L%20and%20ID%20lt%20" + lPartitionTo + "L&$orderby=ID";
+                try {
+                    int iSkip = 0;
+                    while (true) {
+                        JSONArray pResults = getResults(RESTUtils.getObjectFromRest(query(ODATA + "?" + sFilter + "&$top=" + BATCH_SIZE + "&$skip=" + iSkip + "&" + SELECT), ""));
+                        for (int i = 0; i < pResults.length(); i++) {
+                            JSONObject jObject = pResults.getJSONObject(i);
+                            String sID = jObject.getString("ID");
+                            String sDate = jObject.getString("MeetingDate").replace("/", "_");
+                            FileUtils.writeContent(jObject.toString(), new File(pFolder, sID + "__" + sDate + "-" + sID + ".json"));
+                        }
+                        iDownloads.addAndGet(pResults.length());
+                        if (pResults.length() < BATCH_SIZE) {
+                            break;
+                        }
+                        iSkip += BATCH_SIZE;
+                    }
+                    pFrontier.setCursor(sKey, lPartitionTo);
+                    System.out.println("IDs " + lPartitionFrom + " - " + lPartitionTo + " finished, " + iDownloads.get() + " transcripts");
+                } catch (Exception e) {
+                    System.out.println("IDs " + lPartitionFrom + " - " + lPartitionTo + " \t " + e.getMessage());
+                }
+            });
+
         }
 
+        pWorkers.shutdown();
+        pWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        pFrontier.close();
 
+    }
 
+    /**
+     * Method to wait for the rate limit and add the JSON format to a query, with -Dgerparcor.replay the query
+     * is sent to the ReplayServer
+     * @param sURL
+     * @return
+     */
+    private static String query(String sURL) {
+        HostRateLimiter.getDefault().acquireUninterruptibly(sURL);
+        return CrawlerRuntime.resolve(sURL + "&$format=json");
+    }
+
+    /**
+     * Method to get the entries of an OData response, which are either the array d or d.results
+     * @param pResponse
+     * @return
+     */
+    private static JSONArray getResults(JSONObject pResponse) {
+        Object pData = pResponse.get("d");
+        if (pData instanceof JSONArray) {
+            return (JSONArray) pData;
+        }
+        return ((JSONObject) pData).getJSONArray("results");
     }
 
     @Test
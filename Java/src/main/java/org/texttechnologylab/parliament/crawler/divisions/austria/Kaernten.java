@@ -1,11 +1,11 @@
 package org.texttechnologylab.parliament.crawler.divisions.austria;
 
 import org.json.JSONObject;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
 
 import javax.net.ssl.*;
 import java.io.File;
@@ -16,14 +16,14 @@ import java.security.cert.X509Certificate;
 
 public class Kaernten {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOutpath = args[0];
         new File(sOutpath).mkdir();
 
         String sDownladBasePath = "https://www.ktn.gv.at/";
 
-        Document pDocument = Jsoup.connect("https://www.ktn.gv.at/Politik/Landtag/Stenographische-Protokolle").sslSocketFactory(socketFactory()).get();
+        Document pDocument = CrawlerRuntime.connect("https://www.ktn.gv.at/Politik/Landtag/Stenographische-Protokolle").sslSocketFactory(socketFactory()).get();
 
         HttpsURLConnection.setDefaultSSLSocketFactory(socketFactory());
 
@@ -48,19 +48,15 @@ public class Kaernten {
 
                 File dFile = new File(sOutpath+""+ finalSTitle +"/"+l.text()+".pdf");
                 if(!dFile.exists()) {
-                    try {
 //                        Document pPdf = Jsoup.connect(sDownladBasePath+l.attr("href")).sslSocketFactory(socketFactory()).ignoreContentType(true).ignoreHttpErrors(true).userAgent("Mozilla/5.0").get();
 //                        System.out.println(pPdf);
-                        FileUtils.downloadFile(dFile, sDownladBasePath+l.attr("href"));
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
+                    DownloadEngine.getDefault().submit(dFile, sDownladBasePath+l.attr("href"));
                 }
             });
 
         });
 
-
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
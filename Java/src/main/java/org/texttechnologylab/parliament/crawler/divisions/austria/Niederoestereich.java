@@ -1,9 +1,10 @@
 package org.texttechnologylab.parliament.crawler.divisions.austria;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.PageCache;
 
 import javax.net.ssl.*;
 import java.io.File;
@@ -14,14 +15,14 @@ import java.security.cert.X509Certificate;
 
 public class Niederoestereich {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOutpath = args[0];
         new File(sOutpath).mkdir();
 
         String sDownladBasePath = "https://noe-landtag.gv.at";
 
-        Document pDocument = Jsoup.connect("https://noe-landtag.gv.at/sitzungen").sslSocketFactory(socketFactory()).get();
+        Document pDocument = PageCache.getDefault().get(CrawlerRuntime.connect("https://noe-landtag.gv.at/sitzungen").sslSocketFactory(socketFactory()));
 
         HttpsURLConnection.setDefaultSSLSocketFactory(socketFactory());
 
@@ -36,7 +37,7 @@ public class Niederoestereich {
             new File(sOutpath+sTitle).mkdir();
 
             try {
-                Document subPage = Jsoup.connect(sDownladBasePath+el1.attr("href")).sslSocketFactory(socketFactory()).ignoreContentType(true).get();
+                Document subPage = PageCache.getDefault().get(CrawlerRuntime.connect(sDownladBasePath+el1.attr("href")).sslSocketFactory(socketFactory()).ignoreContentType(true));
 
                 Elements pSubElements = subPage.select("div.col-12 div");
 
@@ -45,7 +46,7 @@ public class Niederoestereich {
                     System.out.println(el2.text());
 
                     try {
-                        Document subSubPage = Jsoup.connect(sDownladBasePath+el2.select("a").get(0).attr("href")).get();
+                        Document subSubPage = PageCache.getDefault().get(CrawlerRuntime.connect(sDownladBasePath+el2.select("a").get(0).attr("href")));
 
                         Elements subSubElements = subSubPage.select("#attachements li");
                         subSubElements.stream().forEach(el3->{
@@ -56,11 +57,7 @@ public class Niederoestereich {
                                         File dFile = new File(sOutpath+ finalSTitle +"/"+el2.text()+".pdf");
 
                                         if(!dFile.exists()) {
-                                            try {
-                                                FileUtils.downloadFile(dFile, sDownladBasePath + el4.attr("href"));
-                                            } catch (IOException e) {
-                                                throw new RuntimeException(e);
-                                            }
+                                            DownloadEngine.getDefault().submit(dFile, sDownladBasePath + el4.attr("href"));
                                         }
                                     }
                                 });
@@ -99,7 +96,7 @@ public class Niederoestereich {
 
         });
 
-
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
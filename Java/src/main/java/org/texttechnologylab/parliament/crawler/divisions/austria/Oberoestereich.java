@@ -3,12 +3,13 @@ package org.texttechnologylab.parliament.crawler.divisions.austria;
 import com.google.common.html.HtmlEscapers;
 import com.google.common.io.Files;
 import org.apache.commons.lang.StringEscapeUtils;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.junit.Test;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
 
 import javax.net.ssl.*;
 import javax.print.Doc;
@@ -24,14 +25,14 @@ import java.util.Set;
 
 public class Oberoestereich {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOutpath = args[0];
         new File(sOutpath).mkdir();
 
         String sDownladBasePath = "https://www.land-oberoesterreich.gv.at";
 
-        Document pDocument = Jsoup.connect("https://www.land-oberoesterreich.gv.at/ltgspsuche.htm").sslSocketFactory(socketFactory()).get();
+        Document pDocument = CrawlerRuntime.connect("https://www.land-oberoesterreich.gv.at/ltgspsuche.htm").sslSocketFactory(socketFactory()).get();
 
         HttpsURLConnection.setDefaultSSLSocketFactory(socketFactory());
 
@@ -47,7 +48,7 @@ public class Oberoestereich {
 
             try {
                 if (!el1.attr("href").contains("alex.onb.")) {
-                    Document subPage = Jsoup.connect(
+                    Document subPage = CrawlerRuntime.connect(
                             el1.attr("href").startsWith("https://") ? el1.attr("href") : sDownladBasePath + el1.attr("href")).sslSocketFactory(socketFactory()).ignoreContentType(true).get();
 
                     Elements pSubElements = subPage.select("li.link-extern");
@@ -60,7 +61,7 @@ public class Oberoestereich {
                         System.out.println(el2.select("a").get(0).text());
 
                         try {
-                            Document intDocument = Jsoup.connect(el2.select("a").get(0).attr("href")).get();
+                            Document intDocument = CrawlerRuntime.connect(el2.select("a").get(0).attr("href")).get();
 
                             Elements pLinks = intDocument.select("div.beilagenElement ul li a");
 
@@ -70,7 +71,7 @@ public class Oberoestereich {
 
                                     sURL = sURL.substring(0, sURL.indexOf("#page="));
                                     try {
-                                        Document pPDF = Jsoup.connect(sURL).ignoreContentType(true).get();
+                                        Document pPDF = CrawlerRuntime.connect(sURL).ignoreContentType(true).get();
                                         //FileUtils.writeContent(pPDF.body().text(), new File("/tmp"))
                                         System.out.println(pPDF);
                                     } catch (IOException e) {
@@ -79,11 +80,7 @@ public class Oberoestereich {
 
                                     File dFile = new File(sOutpath + finalSTitle + "/" + el2.select("a").get(0).text() + ".pdf");
                                     if (!dFile.exists()) {
-                                        try {
-                                            FileUtils.downloadFile(dFile, sURL);
-                                        } catch (IOException e) {
-                                            throw new RuntimeException(e);
-                                        }
+                                        DownloadEngine.getDefault().submit(dFile, sURL);
                                     }
 
                                 }
@@ -103,7 +100,7 @@ public class Oberoestereich {
 
                             try {
 
-                                Document intDocument = Jsoup.connect(el2.select("a").attr("href")).get();
+                                Document intDocument = CrawlerRuntime.connect(el2.select("a").attr("href")).get();
                                 String sDownloadLink = "https://www2.land-oberoesterreich.gv.at/internetltgbeilagen/"+intDocument.select("div.beilagenElement li a").get(0).attr("href");
                                 System.out.println(StringEscapeUtils.escapeHtml(sDownloadLink));
 
@@ -128,7 +125,7 @@ public class Oberoestereich {
 
         });
 
-
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
@@ -163,9 +160,11 @@ public class Oberoestereich {
         String sBaseURI = "https://alex.onb.ac.at";
         String sBaseTmp = "/storage/projects/abrami/GerParCor/pdf/Austria/Oberoestereich/";
 
+        HostRateLimiter.getDefault().setRate("alex.onb.ac.at", 1, 1);
+
         for(int iRunCount = 23; iRunCount<24; iRunCount++) {
             try {
-                Document pDocument = Jsoup.connect(sURL.replace("ID", iRunCount+"")).get();
+                Document pDocument = CrawlerRuntime.connect(sURL.replace("ID", iRunCount+"")).get();
 
                 String sTitle = pDocument.select("#content h2").text();
                 sTitle = sTitle.replaceAll("/", "_");
@@ -185,13 +184,13 @@ public class Oberoestereich {
 
                     int iMax = 0;
                     try {
-                        Document pImages = Jsoup.connect(sBaseURI + sLink).get();
+                        Document pImages = CrawlerRuntime.connect(sBaseURI + sLink).get();
                         Elements elImages =  pImages.select("div.prevws a");
 
                         elImages.stream().forEach(image->{
                             try {
                                 System.out.println(sBaseURI+image.attr("href"));
-                                Document pImage = Jsoup.connect(sBaseURI + image.attr("href")).followRedirects(true).ignoreHttpErrors(true).ignoreContentType(true).get();
+                                Document pImage = CrawlerRuntime.connect(sBaseURI + image.attr("href")).followRedirects(true).ignoreHttpErrors(true).ignoreContentType(true).get();
                                 System.out.println(pImage.select("#content img").get(0).attr("src"));
                                 String sDownloadLink = pImage.select("#content img").get(0).attr("src");
                                 sDownloadLink = sDownloadLink.replaceAll("tif", "jpg");
@@ -216,13 +215,8 @@ public class Oberoestereich {
                                 try {
                                     File dFile = new File(sTempDir + "/" + sName + ".jpg");
                                     if (!dFile.exists()) {
-                                        try {
-                                            Thread.sleep(1000l);
-                                        } catch (InterruptedException e) {
-                                            throw new RuntimeException(e);
-                                        }
                                         System.out.println(sDownloadLink);
-                                        FileUtils.downloadFile(dFile, "https://alex.onb.ac.at/cgi-content/"+sDownloadLink);
+                                        DownloadEngine.getDefault().download(dFile, "https://alex.onb.ac.at/cgi-content/"+sDownloadLink);
                                     }
                                 } catch (IOException e) {
                                     throw new RuntimeException(e);
@@ -2,10 +2,10 @@ package org.texttechnologylab.parliament.crawler.divisions.austria;
 
 import com.goebl.david.Request;
 import com.goebl.david.Webb;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
 
 import javax.net.ssl.*;
 import java.io.File;
@@ -16,7 +16,7 @@ import java.security.cert.X509Certificate;
 
 public class Salzburg {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOutpath = args[0];
         new File(sOutpath).mkdir();
@@ -27,7 +27,7 @@ public class Salzburg {
 
             new File(sOutpath+""+iPeriode).mkdir();
 
-            Document pDocument = Jsoup.connect("https://service.salzburg.gv.at/lpi/searchExtern?datumVon=&datumBis=&artId=4&fraktionId=&periode="+iPeriode+"&session=&beilage=&titel=&text=&search=").sslSocketFactory(socketFactory()).get();
+            Document pDocument = CrawlerRuntime.connect("https://service.salzburg.gv.at/lpi/searchExtern?datumVon=&datumBis=&artId=4&fraktionId=&periode="+iPeriode+"&session=&beilage=&titel=&text=&search=").sslSocketFactory(socketFactory()).get();
 
             HttpsURLConnection.setDefaultSSLSocketFactory(socketFactory());
 
@@ -46,11 +46,7 @@ public class Salzburg {
                         File dFile = new File(sOutpath + finalIPeriode + "/" + finalSTitle1 + ".pdf");
 
                         if(!dFile.exists()){
-                            try {
-                                FileUtils.downloadFile(dFile, "https://"+a.attr("href").replace("http://", ""));
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
+                            DownloadEngine.getDefault().submit(dFile, "https://"+a.attr("href").replace("http://", ""));
 
                         }
 
@@ -61,6 +57,8 @@ public class Salzburg {
 
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
+
     }
 
     static private SSLSocketFactory socketFactory() {
@@ -1,11 +1,12 @@
 package org.texttechnologylab.parliament.crawler.divisions.austria;
 
 import org.json.JSONObject;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.PageCache;
 
 import javax.net.ssl.*;
 import java.io.File;
@@ -16,14 +17,14 @@ import java.security.cert.X509Certificate;
 
 public class Steiermark {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOutpath = args[0];
         new File(sOutpath).mkdir();
 
         String sDownladBasePath = "https://www.landesarchiv.steiermark.at";
 
-        Document pDocument = Jsoup.connect("https://www.landesarchiv.steiermark.at/cms/ziel/111284715/DE/").sslSocketFactory(socketFactory()).get();
+        Document pDocument = PageCache.getDefault().get(CrawlerRuntime.connect("https://www.landesarchiv.steiermark.at/cms/ziel/111284715/DE/").sslSocketFactory(socketFactory()));
 
         HttpsURLConnection.setDefaultSSLSocketFactory(socketFactory());
 
@@ -36,7 +37,7 @@ public class Steiermark {
             System.out.println(sTitle);
 
             try {
-                Document subPage = Jsoup.connect(el1.attr("href")).sslSocketFactory(socketFactory()).ignoreContentType(true).get();
+                Document subPage = PageCache.getDefault().get(CrawlerRuntime.connect(el1.attr("href")).sslSocketFactory(socketFactory()).ignoreContentType(true));
 
                 Elements pSubElements = subPage.select(".txtblock-wrapper h2 a");
 
@@ -47,7 +48,7 @@ public class Steiermark {
                     dPath.mkdir();
 
                     try {
-                        Document subSubPage = Jsoup.connect(el2.attr("href")).sslSocketFactory(socketFactory()).ignoreContentType(true).get();
+                        Document subSubPage = PageCache.getDefault().get(CrawlerRuntime.connect(el2.attr("href")).sslSocketFactory(socketFactory()).ignoreContentType(true));
 
                         Elements subsubElements = subSubPage.select(".txtblock-wrapper");
                         subsubElements.stream().forEach(el3->{
@@ -57,11 +58,7 @@ public class Steiermark {
 
                                     File dFile = new File(dPath.getAbsolutePath()+"/"+el4.text()+".pdf");
                                     if(!dFile.exists()) {
-                                        try {
-                                            FileUtils.downloadFile(dFile, sDownladBasePath + el4.attr("href"));
-                                        } catch (IOException e) {
-                                            throw new RuntimeException(e);
-                                        }
+                                        DownloadEngine.getDefault().submit(dFile, sDownladBasePath + el4.attr("href"));
                                     }
 
 
@@ -100,7 +97,7 @@ public class Steiermark {
 
         });
 
-
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
@@ -5,29 +5,36 @@ import it.unimi.dsi.fastutil.Hash;
 import org.apache.http.util.EntityUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.tools.ant.filters.StringInputStream;
-import org.jsoup.Jsoup;
+import org.jsoup.Connection;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.PdfValidator;
 import org.texttechnologylab.utilities.helper.FileUtils;
 import sun.misc.BASE64Decoder;
 
 import javax.net.ssl.*;
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Tirol {
 
+    private static final byte[] PDF_HEADER = "%PDF".getBytes(StandardCharsets.US_ASCII);
+
     public static void main(String[] args) throws IOException {
 
         String sOutpath = args[0];
@@ -36,17 +43,18 @@ public class Tirol {
 
         String sDownladBasePath = "https://service.salzburg.gv.at";
 
-        Document pDocument = Jsoup.connect("https://portal.tirol.gv.at/LteWeb/public/sitzung/landtag/landtagsSitzungList.xhtml?cid=4").sslSocketFactory(socketFactory()).get();
+        HostRateLimiter.getDefault().setRate("portal.tirol.gv.at", 1, 1);
+
+        Document pDocument = CrawlerRuntime.connect("https://portal.tirol.gv.at/LteWeb/public/sitzung/landtag/landtagsSitzungList.xhtml?cid=4").sslSocketFactory(socketFactory()).get();
 
         pDocument.select("#c_listContent_j_id_4g_menu select option").forEach(option->{
             if(option.text().length()>6){
                 int iValue = Integer.parseInt(option.attr("value"));
 
-                try {
-                    Thread.sleep(1000l);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
+                File pPeriod = new File(sOutpath, option.text().replaceAll("[^\\w.-]+", "_"));
+                pPeriod.mkdirs();
+
+                HostRateLimiter.getDefault().acquireUninterruptibly("https://portal.tirol.gv.at");
 
                 try {
                     Map<String, String> cookies = new HashMap<>(0);
@@ -62,7 +70,7 @@ public class Tirol {
                     params.put("javax.faces.partial.render", "listContent:fid+listContent:resultForm+actionbar");
                     params.put("listContent:j_id_4v_9", "listContent:j_id_4v_9");
                     params.put("javax.faces.ViewState", "IjE91vsAOdMhnRJmNWPYWMLubKkuFt7XLq1xo0CdDef0kawzS+T08+AivhoAsmS3iASyIg==");
-                    Document subDocument = Jsoup.connect("https://portal.tirol.gv.at/LteWeb/public/sitzung/sitzungsbericht/sitzungsberichtList.xhtml?cid=4").sslSocketFactory(socketFactory()).cookies(cookies).data(params).followRedirects(true).ignoreContentType(true).post();
+                    Document subDocument = CrawlerRuntime.connect("https://portal.tirol.gv.at/LteWeb/public/sitzung/sitzungsbericht/sitzungsberichtList.xhtml?cid=4").sslSocketFactory(socketFactory()).cookies(cookies).data(params).followRedirects(true).ignoreContentType(true).post();
 
 //                    System.out.println(subDocument);
 
@@ -77,30 +85,25 @@ public class Tirol {
                             paramsDownload.put("javax.faces.ViewState", params.get("javax.faces.ViewState"));
                             paramsDownload.put(a.id(), a.id());
 
-                            Document dJsoup = Jsoup.connect("https://portal.tirol.gv.at/LteWeb/public/sitzung/sitzungsbericht/sitzungsberichtList.xhtml?cid=4").cookies(cookies).data(paramsDownload).ignoreContentType(true).ignoreHttpErrors(true).followRedirects(true).userAgent("Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/116.0").header("Content-Disposition",
-                                    "attachment; filename=\"Sitzungsbericht_vom_22._und_23._M_C3_A4rz_2023.pdf\"").post();
-
-
-
-//                            System.out.println(dJsoup);
-//                            FileUtils.writeContent(, new File("/tmp/test.pdf"));
-
-//                            FileUtils.writeContent(dJsoup.toString(), new File("/tmp/test.pdf"));
-
-
+                            HostRateLimiter.getDefault().acquireUninterruptibly("https://portal.tirol.gv.at");
 
-                            byte[] decoder = Base64.getMimeDecoder().decode(dJsoup.body().text());
+                            Connection.Response pResponse = CrawlerRuntime.connect("https://portal.tirol.gv.at/LteWeb/public/sitzung/sitzungsbericht/sitzungsberichtList.xhtml?cid=4").cookies(cookies).data(paramsDownload).ignoreContentType(true).ignoreHttpErrors(true).followRedirects(true).userAgent("Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/116.0").header("Content-Disposition",
+                                    "attachment; filename=\"Sitzungsbericht_vom_22._und_23._M_C3_A4rz_2023.pdf\"").maxBodySize(0).method(Connection.Method.POST).execute();
 
-                            File file = new File("/tmp/test.pdf");
-                            FileOutputStream fop = new FileOutputStream(file);
+                            if (pResponse.statusCode() != 200) {
+                                System.out.println(tr.text() + "\t" + pResponse.statusCode() + " " + pResponse.statusMessage());
+                                return;
+                            }
 
-                            fop.write(decoder);
-                            fop.flush();
-                            fop.close();
+                            File pTarget = new File(pPeriod, getFileName(pResponse, tr.text()));
+                            if (pTarget.exists()) {
+                                return;
+                            }
 
-//                            byte[] entityBytes = dJsoup.text().getBytes(Charset.forName("UTF-8"));
-//                            Files.write(Paths.get("/tmp/test.pdf"), entityBytes);
+                            // the PDF is sent Base64 encoded and is decoded while reading, so only a buffer is kept in memory
+                            write(pResponse.bodyStream(), pTarget);
 
+                            System.out.println(pTarget.getName());
 
                         } catch (IOException e) {
                             throw new RuntimeException(e);
@@ -148,6 +151,57 @@ public class Tirol {
 
     }
 
+    /**
+     * Method to get the name of the file of a Sitzungsbericht, from the Content-Disposition of the response or the row of the list
+     * @param pResponse
+     * @param sRow
+     * @return
+     */
+    private static String getFileName(Connection.Response pResponse, String sRow) {
+        String sName = sRow;
+        String sDisposition = pResponse.header("Content-Disposition");
+        if (sDisposition != null && sDisposition.contains("filename=")) {
+            sName = sDisposition.substring(sDisposition.indexOf("filename=") + 9).replace("\"", "").trim();
+        }
+        sName = sName.replaceAll("(?i)\\.pdf$", "").replaceAll("[^\\w.-]+", "_");
+        return sName + ".pdf";
+    }
+
+    /**
+     * Method to write a response to a file, a Base64 encoded body is decoded on the fly.
+     * The file is written to a temporary file which is moved to the target when it is complete.
+     * @param pBody
+     * @param pTarget
+     * @throws IOException
+     */
+    static void write(InputStream pBody, File pTarget) throws IOException {
+
+        File pTemp = new File(pTarget.getPath() + ".part");
+
+        try (InputStream pInput = new BufferedInputStream(pBody)) {
+            // a response which is no Base64 but the PDF itself is written unchanged
+            pInput.mark(PDF_HEADER.length);
+            byte[] bHeader = new byte[PDF_HEADER.length];
+            int iRead = 0;
+            int iLength;
+            while (iRead < bHeader.length && (iLength = pInput.read(bHeader, iRead, bHeader.length - iRead)) > 0) {
+                iRead += iLength;
+            }
+            pInput.reset();
+
+            InputStream pDecoded = Arrays.equals(bHeader, PDF_HEADER) ? pInput : Base64.getMimeDecoder().wrap(pInput);
+            Files.copy(pDecoded, pTemp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (!PdfValidator.isValid(pTemp)) {
+            pTemp.delete();
+            throw new IOException(pTarget.getName() + " is no complete PDF");
+        }
+
+        Files.move(pTemp.toPath(), pTarget.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    }
+
     static private SSLSocketFactory socketFactory() {
         TrustManager[] trustAllCerts = new TrustManager[]{new X509TrustManager() {
             public X509Certificate[] getAcceptedIssuers() {
@@ -1,9 +1,11 @@
 package org.texttechnologylab.parliament.crawler.divisions.austria;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
 import org.texttechnologylab.utilities.helper.FileUtils;
 
 import javax.net.ssl.*;
@@ -20,12 +22,14 @@ import java.util.Set;
 
 public class Vorarlberg {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOutpath = args[0];
         new File(sOutpath).mkdir();
         HttpsURLConnection.setDefaultSSLSocketFactory(socketFactory());
 
+        HostRateLimiter.getDefault().setRate("suche.vorarlberg.at", 1, 1);
+
         Map<String, String> cookies = new HashMap<>();
 
         cookies.put("lbpersistence", "!zTewQ61NB2TIpAtuTYmKCJtHdcwozNhtM6IpqvOdULAGENGGs36XZuaOjQeQs9/7cLzlPRS7MRDCONZrjbDniI4XkEAM+ELoBXU40Vzr");
@@ -42,7 +46,7 @@ public class Vorarlberg {
 //        blackWords.add("genehmigung");
 
         for(int a=0; a<9; a++) {
-            Document pDocument = Jsoup.connect("https://suche.vorarlberg.at/VLR/vlr_gov.nsf/alldocs_byDateDSC?SearchView=&SearchMax=0&Count=100&Start="+a+"&SearchWV=FALSE&SearchFuzzy=FALSE&SearchOrder=4&Query=FIELD fdClassificationHumanTX =Protokoll der kompletten Sitzung").userAgent("Mozilla/5.0").timeout(5000).get();
+            Document pDocument = CrawlerRuntime.connect("https://suche.vorarlberg.at/VLR/vlr_gov.nsf/alldocs_byDateDSC?SearchView=&SearchMax=0&Count=100&Start="+a+"&SearchWV=FALSE&SearchFuzzy=FALSE&SearchOrder=4&Query=FIELD fdClassificationHumanTX =Protokoll der kompletten Sitzung").userAgent("Mozilla/5.0").timeout(5000).get();
 
             Elements pElements = pDocument.select("table.rfont tr");
             for (Element pElement : pElements) {
@@ -66,7 +70,7 @@ public class Vorarlberg {
 //                    if(!sName.toLowerCase().contains("top") && !sName.toLowerCase().contains("vorlage")){
 
 
-                        Document tDocument = Jsoup.connect("https://suche.vorarlberg.at" + pTD.get(1).select("a").get(0).attr("href")).timeout(1000).get();
+                        Document tDocument = CrawlerRuntime.connect("https://suche.vorarlberg.at" + pTD.get(1).select("a").get(0).attr("href")).timeout(1000).get();
 
                         if(tDocument.select("iframe").size()>0){
                             String sURI = tDocument.select("iframe").get(0).attr("src");
@@ -112,23 +116,14 @@ public class Vorarlberg {
                                     sLink = sLink.replace("javascript:OpenPDF(\"", "");
                                     sLink = sLink.replace("\")", "");
                                     System.out.println(sLink);
-                                    try {
-                                        Thread.sleep(1000l);
-
-                                        String sFinalName = sName.replace("/", "__");
-                                        if (sFinalName.length() > 20) {
-                                            sFinalName = sShortDate;
-                                        }
-                                        new File(sOutpath + sYear).mkdir();
-                                        File dFile = new File(sOutpath + sYear + "/" + sFinalName + ".pdf");
-                                        if (!dFile.exists()) {
-                                            FileUtils.downloadFile(dFile, sLink);
-                                        }
-
-                                    } catch (IOException e) {
-                                        throw new RuntimeException(e);
-                                    } catch (InterruptedException e) {
-                                        throw new RuntimeException(e);
+                                    String sFinalName = sName.replace("/", "__");
+                                    if (sFinalName.length() > 20) {
+                                        sFinalName = sShortDate;
+                                    }
+                                    new File(sOutpath + sYear).mkdir();
+                                    File dFile = new File(sOutpath + sYear + "/" + sFinalName + ".pdf");
+                                    if (!dFile.exists()) {
+                                        DownloadEngine.getDefault().submit(dFile, sLink);
                                     }
                                 }
 
@@ -142,7 +137,7 @@ public class Vorarlberg {
 
         FileUtils.writeContent(sb.toString(), new File("/tmp/vorarlberg.tsv"));
 
-
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
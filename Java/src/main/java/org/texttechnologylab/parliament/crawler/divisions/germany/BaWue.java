@@ -4,21 +4,25 @@ import com.goebl.david.Request;
 import com.goebl.david.Webb;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.junit.jupiter.api.Test;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.PdfValidator;
+import org.texttechnologylab.parliament.crawler.download.Watermark;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -28,7 +32,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class BaWue {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException, IOException {
 
         String sBaseSavePath = args[0];
 
@@ -39,11 +43,18 @@ public class BaWue {
 
         String sLP = "17";
 
+        new File(sBaseSavePath).mkdirs();
+
+        // the number of the last fetched Plenarprotokoll of every Wahlperiode, in incremental mode the search starts behind it
+        Watermark pWatermark = new Watermark(new File(sBaseSavePath));
+
         for (String s : sLP.split(",")) {
 
             new File(sBaseSavePath + s).mkdir();
 
-            int a = 1;
+            Map<Integer, Future<File>> pSessions = new TreeMap<>();
+
+            int a = (int) pWatermark.getStart("lp." + s, 1);
             boolean itemsLeft = true;
             while (itemsLeft) {
 
@@ -58,7 +69,7 @@ public class BaWue {
                     String sID = rObject.getString("report_id");
 
                     try {
-                        Document pEntry = Jsoup.connect(sBaseResult + sID).get();
+                        Document pEntry = CrawlerRuntime.connect(sBaseResult + sID).get();
 //                    System.out.println(pEntry);
 
                         Element e = pEntry.select("section").select("span a").get(0);
@@ -66,12 +77,15 @@ public class BaWue {
                         File dFile = new File(sBaseSavePath + s + "/" + e.text().replace("/", "_") + ".pdf");
 
                         if (!dFile.exists()) {
-                            FileUtils.downloadFile(dFile, e.attr("href"));
+                            pSessions.put(a, DownloadEngine.getDefault().submit(dFile, e.attr("href")));
+                        } else {
+                            pSessions.put(a, CompletableFuture.completedFuture(dFile));
                         }
 
                         System.out.println(e);
                     } catch (IOException e) {
                         e.printStackTrace();
+                        pSessions.put(a, null);
                     }
 
                 } else {
@@ -81,9 +95,26 @@ public class BaWue {
                 a++;
             }
 
+            // the watermark only passes numbers which are fetched completely
+            for (Map.Entry<Integer, Future<File>> pSession : pSessions.entrySet()) {
+                if (pSession.getValue() == null) {
+                    break;
+                }
+                try {
+                    pSession.getValue().get();
+                    pWatermark.advance("lp." + s, pSession.getKey());
+                } catch (ExecutionException e) {
+                    System.out.println(s + "/" + pSession.getKey() + "\t" + e.getCause().getMessage());
+                    break;
+                }
+            }
+
 
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
+
+        pWatermark.close();
 
     }
 
@@ -91,6 +122,8 @@ public class BaWue {
     @Test
     public void getOld() {
 
+        HostRateLimiter.getDefault().setRate("www.landtag-bw.de", 3, 3);
+
 //        System.getProperties().put("http.proxySet", "true");
 //        System.getProperties().put("http.proxyHost", "203.243.63.16");
 //        System.getProperties().put("http.proxyPort", "80"); //port is
@@ -158,16 +191,8 @@ public class BaWue {
                                 }
 
                                 if(!pFile.exists()) {
-
-                                    if (finalA % 3 == 0) {
-                                        try {
-                                            Thread.sleep(1000l);
-                                        } catch (InterruptedException e) {
-                                            throw new RuntimeException(e);
-                                        }
-                                    }
                                     System.out.println("Download: "+pFile.getName());
-                                    FileUtils.downloadFile(pFile, sBaseLink + sLink);
+                                    DownloadEngine.getDefault().download(pFile, sBaseLink + sLink);
 
                                 }
 //                                else{
@@ -196,6 +221,9 @@ public class BaWue {
 
     @Test
     public void preLegislatur(){
+
+        HostRateLimiter.getDefault().setRate("www.landtag-bw.de", 3, 3);
+
         String sPath = "/storage/projects/abrami/GerParCor/pdf/BadenWuertemmberg/";
         new File(sPath).mkdir();
 
@@ -259,16 +287,8 @@ public class BaWue {
                                 }
 
                                 if(!pFile.exists()) {
-
-                                    if (finalA % 3 == 0) {
-                                        try {
-                                            Thread.sleep(1000l);
-                                        } catch (InterruptedException e) {
-                                            throw new RuntimeException(e);
-                                        }
-                                    }
                                     System.out.println("Download: "+pFile.getName());
-                                    FileUtils.downloadFile(pFile, sBaseLink + sLink);
+                                    DownloadEngine.getDefault().download(pFile, sBaseLink + sLink);
 
                                 }
 //                                else{
@@ -297,38 +317,19 @@ public class BaWue {
 
     private boolean checkBroken(File pFile) {
 
-        boolean bBroken = false;
-        List<String> results = new ArrayList<>();
+        // positional reads of header and trailer instead of running pdfinfo for every file
+        String sReason = PdfValidator.validate(pFile, -1);
 
-        try {
-            Process process = new ProcessBuilder("pdfinfo", pFile.getAbsolutePath()).start();
-            String line = null;
-            BufferedReader reader =
-                    new BufferedReader(new InputStreamReader(process.getInputStream()));
-            while ( (line = reader.readLine()) != null) {
-                results.add(line);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        if(sReason!=null){
+            System.out.println("Broken: "+pFile.getAbsolutePath()+"\t"+sReason);
         }
 
-        if(results.size()==1){
-            bBroken = true;
-        }
-        if(results.size()==0){
-            bBroken = true;
-        }
-
-        if(bBroken){
-            System.out.println("Broken: "+pFile.getAbsolutePath());
-        }
-
-        return bBroken;
+        return sReason!=null;
 
     }
 
     @Test
-    public void veryOld() throws IOException {
+    public void veryOld() throws IOException, InterruptedException {
 
         String sPath = "/tmp/old/";
         File nFile = new File(sPath);
@@ -336,7 +337,7 @@ public class BaWue {
 
         String sFile = "https://www.wlb-stuttgart.de/literatursuche/digitale-bibliothek/digitale-sammlungen/landtagsprotokolle/digitale-praesentation/zeitliche-gliederung/zeitraum-1952-1996/";
 
-        Document pPage = Jsoup.connect(sFile).get();
+        Document pPage = CrawlerRuntime.connect(sFile).get();
         AtomicBoolean doRun = new AtomicBoolean(false);
         pPage.select("#c15879 table tbody tr a").forEach(e->{
             if(e.text().contains("1979")){
@@ -346,16 +347,12 @@ public class BaWue {
                 System.out.println(e.text());
                 System.out.println(e.attr("href"));
                 try {
-                    Document internalPage = Jsoup.connect(e.attr("href")).get();
+                    Document internalPage = CrawlerRuntime.connect(e.attr("href")).get();
 
                     internalPage.select(".tx-dlf-tools-pdf-work a").forEach(el -> {
                         System.out.println(el.attr("href"));
 
-                        try {
-                            FileUtils.downloadFile(new File(sPath+e.text()+".pdf"), el.attr("href"));
-                        } catch (IOException ex) {
-                            throw new RuntimeException(ex);
-                        }
+                        DownloadEngine.getDefault().submit(new File(sPath+e.text()+".pdf"), el.attr("href"));
 
                     });
 
@@ -366,11 +363,12 @@ public class BaWue {
 
         });
 
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
     @Test
-    public void veryOldStructure() throws IOException {
+    public void veryOldStructure() throws IOException, InterruptedException {
 
         String sPath = "/storage/projects/abrami/GerParCor/pdf/BadenWuertemmberg/oldNew/";
         File nFile = new File(sPath);
@@ -380,7 +378,7 @@ public class BaWue {
 
         String sFile = "https://www.wlb-stuttgart.de/literatursuche/digitale-bibliothek/digitale-sammlungen/landtagsprotokolle/digitale-praesentation/formal-institutionelle-gliederung/";
 
-        Document pPage = Jsoup.connect(sFile).get();
+        Document pPage = CrawlerRuntime.connect(sFile).get();
         AtomicBoolean doRun = new AtomicBoolean(false);
         pPage.select("#c15364 li a").forEach(e->{
 
@@ -388,7 +386,7 @@ public class BaWue {
                 new File(sPath+""+e.text()).mkdir();
 
                 try {
-                    Document internalPage = Jsoup.connect(sBasePath+e.attr("href")).get();
+                    Document internalPage = CrawlerRuntime.connect(sBasePath+e.attr("href")).get();
 
                     AtomicBoolean foundProtocol = new AtomicBoolean(false);
 
@@ -413,18 +411,14 @@ public class BaWue {
                             try {
 
                                 System.out.println(pTD.get(1).getElementsByTag("a").text());
-                                Document downloadPage = Jsoup.connect(pTD.get(1).getElementsByTag("a").get(0).attr("href")).get();
+                                Document downloadPage = CrawlerRuntime.connect(pTD.get(1).getElementsByTag("a").get(0).attr("href")).get();
 
                                 downloadPage.select(".tx-dlf-tools-pdf-work a").forEach(el -> {
                                     System.out.println(el.attr("href"));
 
-                                    try {
-                                        File dFile = new File(sPath+""+e.text()+"/"+ pTD.get(1).text() + ".pdf");
-                                        if(!dFile.exists()) {
-                                            FileUtils.downloadFile(new File(sPath + "" + e.text() + "/" + pTD.get(1).text() + ".pdf"), el.attr("href"));
-                                        }
-                                    } catch (IOException ex) {
-                                        throw new RuntimeException(ex);
+                                    File dFile = new File(sPath+""+e.text()+"/"+ pTD.get(1).text() + ".pdf");
+                                    if(!dFile.exists()) {
+                                        DownloadEngine.getDefault().submit(dFile, el.attr("href"));
                                     }
 
                                 });
@@ -442,6 +436,7 @@ public class BaWue {
                 }
         });
 
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 }
@@ -1,10 +1,10 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
 
 import java.io.File;
 import java.io.IOException;
@@ -16,7 +16,7 @@ import java.io.IOException;
  */
 public class Bayern {
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws InterruptedException {
 
         String sOut = args[0];
 
@@ -27,7 +27,7 @@ public class Bayern {
             new File(sOut+s).mkdir();
 
         try {
-            Document pDocument = Jsoup.connect(sURL).get();
+            Document pDocument = CrawlerRuntime.connect(sURL).get();
 
             pDocument.select("table tbody tr").stream().forEach(tr->{
 
@@ -53,11 +53,7 @@ public class Bayern {
                     File dFile = new File(sOut+s+"/"+e2.text()+"_"+e1.text()+".pdf");
                     if(!dFile.exists()){
 
-                        try {
-                            FileUtils.downloadFile(dFile, e3.select("a").get(1).attr("href"));
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
+                        DownloadEngine.getDefault().submit(dFile, e3.select("a").get(1).attr("href"));
 
                     }
 
@@ -69,6 +65,7 @@ public class Bayern {
             throw new RuntimeException(e);
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
@@ -1,6 +1,6 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
 
 import java.io.File;
 import java.io.IOException;
@@ -42,14 +42,14 @@ public class Berlin {
                 try {
                     File dFile = new File(sOut+s+"/"+s+"_"+sID+".pdf");
                     if(!dFile.exists()){
-                        FileUtils.downloadFile(dFile, sDownload);
+                        DownloadEngine.getDefault().download(dFile, sDownload);
                     }
                 } catch (IOException e) {
 
                     sDownload = sDownload.replace("-wp", "");
                     File dFile = new File(sOut + s + "/" + s + "_" + sID + ".pdf");
                     try {
-                        FileUtils.downloadFile(dFile, sDownload);
+                        DownloadEngine.getDefault().download(dFile, sDownload);
                     }
                     catch (Exception e1){
 
@@ -57,14 +57,14 @@ public class Berlin {
                         sDownload = sURIBackup.replace("{WP}", s);
                         sDownload = sDownload.replace("{ID}", sID);
                         try {
-                            FileUtils.downloadFile(dFile, sDownload);
+                            DownloadEngine.getDefault().download(dFile, sDownload);
                         } catch (IOException ex) {
 
                             sURIBackup = "https://pardok.parlament-berlin.de/starweb/adis/citat/VT/{WP}/PlenarPr/p{WP}-{ID}.pdf";
                             sDownload = sURIBackup.replace("{WP}", s);
                             sDownload = sDownload.replace("{ID}", sID);
                             try {
-                                FileUtils.downloadFile(dFile, sDownload);
+                                DownloadEngine.getDefault().download(dFile, sDownload);
                             } catch (IOException ex2) {
                                 ex2.printStackTrace();
                                 break;
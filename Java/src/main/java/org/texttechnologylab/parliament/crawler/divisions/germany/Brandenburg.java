@@ -4,38 +4,66 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.SequenceProber;
+import org.texttechnologylab.parliament.crawler.schedule.ParliamentCrawler;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
 
 /**
  * Class for Parsing Minutes of Berlin
  * @author Giuseppe Abrami
  * @date 2021-12-01
  */
-public class Brandenburg {
+public class Brandenburg implements ParliamentCrawler {
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOut = args[0];
         new File(sOut).mkdir();
+
+        for (DownloadJob pJob : new Brandenburg().discover(new File(sOut))) {
+            DownloadEngine.getDefault().submit(pJob);
+        }
+
+        DownloadEngine.getDefault().awaitCompletion();
+
+    }
+
+    @Override
+    public String getName() {
+        return "Brandenburg";
+    }
+
+    @Override
+    public List<DownloadJob> discover(File pOutput) throws IOException {
+
+        String sOut = pOutput.getAbsolutePath() + "/";
         String sURI = "https://www.parlamentsdokumentation.brandenburg.de/starweb/LBB/ELVIS/parladoku/w7/plpr/{ID}.pdf";
 
         new File(sOut+7).mkdir();
 
-        for(int a=1; a<100; a++){
+        IntFunction<String> pURL = a -> sURI.replace("{ID}", a+"");
+
+        // instead of a fixed limit of 100 sessions the last session is probed
+        int iLast = new SequenceProber(pURL).findLast(1);
+
+        List<DownloadJob> rList = new ArrayList<>(0);
+
+        for(int a=1; a<=iLast; a++){
 
             File dFile = new File(sOut+"7/"+a+".pdf");
 
-            try {
-                FileUtils.downloadFile(dFile, sURI.replace("{ID}", a+""));
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            rList.add(new DownloadJob(dFile, pURL.apply(a)).store("Brandenburg", "7", ""+a));
 
         }
 
+        return rList;
 
     }
 
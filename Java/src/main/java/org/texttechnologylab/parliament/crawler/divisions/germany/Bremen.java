@@ -1,83 +1,100 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.schedule.ParliamentCrawler;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class for Parsing Minutes of Bremen
  * @author Giuseppe Abrami
  * @date 2021-12-01
  */
-public class Bremen {
+public class Bremen implements ParliamentCrawler {
 
-    public static void main(String[] args) throws IOException {
+    private static final String USER_AGENT = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_6_8) AppleWebKit/534.30 (KHTML, like Gecko) Chrome/12.0.742.122 Safari/534.30";
 
-        String sPath = "https://paris.bremische-buergerschaft.de/starweb/paris/servlet.starweb?path=paris/LISSHPLPRList.web&search=WP=KEY AND PARL=L AND DART=P";
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOut = args[0];
+        new File(sOut).mkdir();
+
+        for (DownloadJob pJob : new Bremen().discover(new File(sOut))) {
+            DownloadEngine.getDefault().submit(pJob);
+        }
+
+        DownloadEngine.getDefault().awaitCompletion();
+
+    }
+
+    @Override
+    public String getName() {
+        return "Bremen";
+    }
+
+    @Override
+    public List<DownloadJob> discover(File pOutput) throws IOException {
+
+        HostRateLimiter.getDefault().setRate("paris.bremische-buergerschaft.de", 1, 1);
+
+        String sPath = "https://paris.bremische-buergerschaft.de/starweb/paris/servlet.starweb?path=paris/LISSHPLPRList.web&search=WP=KEY AND PARL=L AND DART=P";
+
+        String sOut = pOutput.getAbsolutePath() + "/";
 
         String sWP = "20";
 
+        List<DownloadJob> rList = new ArrayList<>(0);
+
         for (String s : sWP.split(",")) {
 
-            String ua = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_6_8) AppleWebKit/534.30 (KHTML, like Gecko) Chrome/12.0.742.122 Safari/534.30";
             URL nURL = new URL(sPath.replaceAll("KEY", s).replaceAll(" ", "%20"));
 
             new File(sOut+s).mkdir();
 
-            //Document pDocument = Jsoup.parse(nURL, 5000);
-            String sHTML = Jsoup.connect(nURL.toString()).userAgent(ua).get().html();
-            Document d = Jsoup.parse(sHTML);
+            Document d = CrawlerRuntime.connect(nURL.toString()).userAgent(USER_AGENT).get();
             Elements options = d.select("select option");
 
-            options.forEach(o->{
+            for (Element o : options) {
+
                 String sValue = o.attr("value");
-                String sResult = null;
+
                 try {
-                    sResult = Jsoup.connect("https://paris.bremische-buergerschaft.de/"+sValue).userAgent(ua).get().html();
-                    //System.out.println(sResult);
+                    Document resultDocument = CrawlerRuntime.connect("https://paris.bremische-buergerschaft.de/"+sValue).userAgent(USER_AGENT).get();
 
-                    Document resultDocument = Jsoup.parse(sResult);
-                    resultDocument.select("td a").forEach(el->{
+                    for (Element el : resultDocument.select("td a")) {
                         if(el.text().equalsIgnoreCase("PDF")){
-                            //System.out.println(el.attr("href"));
-
-                            try {
-                                File pFile = new File(sOut+s+"/"+el.attr("href").substring(el.attr("href").lastIndexOf("/")+1));
 
-                                if(!pFile.exists()){
-                                    Thread.sleep(1000l);
-                                    FileUtils.downloadFile(pFile, el.attr("href").replace("http://", "https://"));
-                                }
+                            String sHref = el.attr("href");
+                            String sName = sHref.substring(sHref.lastIndexOf("/")+1);
+                            File pFile = new File(sOut+s+"/"+sName);
 
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
+                            if(!pFile.exists()){
+                                rList.add(new DownloadJob(pFile, sHref.replace("http://", "https://")).store("Bremen", s, sName.replace(".pdf", "")));
                             }
 
                         }
-
-                    });
+                    }
 
                 } catch (IOException e) {
+                    // a missing result page only loses its own documents
                     e.printStackTrace();
                 }
 
-
-
-            });
-
-
+            }
 
         }
 
+        return rList;
 
     }
 
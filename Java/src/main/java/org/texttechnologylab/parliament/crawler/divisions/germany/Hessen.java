@@ -1,78 +1,80 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.SequenceProber;
+import org.texttechnologylab.parliament.crawler.schedule.ParliamentCrawler;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
 
 /**
  * Class for Parsing Minutes of Hessen
  * @author Giuseppe Abrami
  * @date 2021-12-01
  */
-public class Hessen {
+public class Hessen implements ParliamentCrawler {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         String sOutPath = args[0];
+        new File(sOutPath).mkdir();
 
-        String sURL = "https://starweb.hessen.de/cache/PLPR/{WP}/{NR}/{NRLONG}.pdf";
+        for (DownloadJob pJob : new Hessen().discover(new File(sOutPath))) {
+            DownloadEngine.getDefault().submit(pJob);
+        }
 
-        new File(sOutPath).mkdir();
+        DownloadEngine.getDefault().awaitCompletion();
 
+    }
+
+    @Override
+    public String getName() {
+        return "Hessen";
+    }
 
-            for (int a = 16; a <= 20; a++) {
+    @Override
+    public List<DownloadJob> discover(File pOutput) throws IOException {
 
-                boolean isRunning = true;
+        HostRateLimiter.getDefault().setRate("starweb.hessen.de", 1, 1);
 
-                new File(sOutPath + a).mkdir();
+        String sOutPath = pOutput.getAbsolutePath() + "/";
 
-                int b = 1;
-                while (isRunning) {
+        String sURL = "https://starweb.hessen.de/cache/PLPR/{WP}/{NR}/{NRLONG}.pdf";
 
-                    String sNumber = "";
-                    String sWP = ""+a;
+        List<DownloadJob> rList = new ArrayList<>(0);
 
-                    if(a<10){
-                        sWP = "0"+a;
-                    }
+        for (int a = 16; a <= 20; a++) {
 
-                    if(b<10){
-                        sNumber="0000"+b;
-                    }
-                    else if(b<100){
-                        sNumber="000"+b;
-                    }
-                    else if(b<1000){
-                        sNumber="00"+b;
-                    }
+            new File(sOutPath + a).mkdir();
 
-                    String sDetailNumber = sNumber.substring(sNumber.length()-1);
+            String sWP = a < 10 ? "0" + a : "" + a;
 
-                    try {
-                        Thread.sleep(1000l);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+            IntFunction<String> pURL = b -> {
+                String sNumber = String.format("%05d", b);
+                return sURL.replace("{WP}", sWP).replace("{NR}", sNumber.substring(sNumber.length() - 1)).replace("{NRLONG}", sNumber);
+            };
 
-                    File dFile = new File(sOutPath + a + "/" + b + ".pdf");
+            // the last session is probed instead of downloading until the first error
+            int iLast = new SequenceProber(pURL).findLast(1);
 
-                    if (!dFile.exists()) {
-                        try {
-                            FileUtils.downloadFile(dFile, sURL.replace("{WP}", "" + sWP).replace("{NR}", sDetailNumber).replace("{NRLONG}", sNumber));
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            isRunning = false;
-                        }
-                    }
+            for (int b = 1; b <= iLast; b++) {
 
-                    b++;
+                File dFile = new File(sOutPath + a + "/" + b + ".pdf");
 
+                if (!dFile.exists()) {
+                    rList.add(new DownloadJob(dFile, pURL.apply(b)).store("Hessen", "" + a, "" + b));
                 }
 
+            }
 
         }
 
+        return rList;
 
     }
 
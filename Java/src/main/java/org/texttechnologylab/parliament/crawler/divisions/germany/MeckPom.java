@@ -1,18 +1,18 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.junit.Test;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.Watermark;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Class for Parsing Minutes of Mecklenburg-Vorpommern
@@ -22,7 +22,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class MeckPom {
 
     @Test
-    public void current2() throws MalformedURLException {
+    public void current2() throws InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("www.dokumentation.landtag-mv.de", 1, 1);
+
 //        System.getProperties().put("http.proxySet", "true");
 //        System.getProperties().put("http.proxyHost", "203.243.63.16");
 //        System.getProperties().put("http.proxyPort", "80"); //port is
@@ -34,122 +37,115 @@ public class MeckPom {
 
         int iPeriode = 8;
         int a = 14;
-        AtomicBoolean isRunning = new AtomicBoolean(true);
-        while (isRunning.get()) {
-            new File(sOutPath+""+iPeriode).mkdir();
-            Map<String, String> cookies = new HashMap<>();
-            cookies.put("ASP.NET_SessionId", "ok5fjgr1pyx3bwhe5kwh5av0");
-            try {
+        new File(sOutPath+""+iPeriode).mkdir();
 
-                Document pElement = Jsoup.connect("https://www.dokumentation.landtag-mv.de/parldok/dokumentennummer?LegislaturPeriodenNummer="+iPeriode+"&DokumentenArtId=2&PDFSelect=0&DokumentenNummer="+a).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").cookies(cookies).followRedirects(true).post();
+        // the client opens the ASP.NET sessions itself and replaces them when they expire
+        ParlDokClient pClient = new ParlDokClient("https://www.dokumentation.landtag-mv.de/parldok", 4).param("PDFSelect", "0");
 
-                try {
-                    Thread.sleep(1000l);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
+        pClient.enumerate(iPeriode, 2, a, (iNumber, pElement) -> {
 
-                Elements pElements = pElement.select("table#parldokresult tr");
+            Elements pElements = pElement.select("table#parldokresult tr");
 
-                if(pElements.size()>0){
+            if(pElements.size()<=7){
+                return false;
+            }
 
+            Element download = pElements.get(5);
+            Element metaInfos = pElements.get(7);
 
-                Element download = pElements.get(5);
-                Element metaInfos = pElements.get(7);
+            Elements metaInfos_content = metaInfos.getElementsByTag("td");
 
-                Elements metaInfos_content = metaInfos.getElementsByTag("td");
+            String sURL = download.select("a").get(0).attr("href");
 
-                String sURL = download.select("a").get(0).attr("href");
+            File pDownload = new File(sOutPath + ""+ iPeriode +"/" + metaInfos_content.get(0).text().replace("/", "_")+"_"+metaInfos_content.get(2).text()+"_".replace("/", "_") + ".pdf");
 
-                File pDownload = new File(sOutPath + ""+ iPeriode +"/" + metaInfos_content.get(0).text().replace("/", "_")+"_"+metaInfos_content.get(2).text()+"_".replace("/", "_") + ".pdf");
+            if(!pDownload.exists()) {
+                DownloadEngine.getDefault().submit(pDownload, "https://www.dokumentation.landtag-mv.de/" + sURL);
+            }
 
-                    if(!pDownload.exists()) {
-                        FileUtils.downloadFile(pDownload, "https://www.dokumentation.landtag-mv.de/" + sURL);
-                    }
+            return true;
 
-                }
+        });
 
-//                pElement.select("td.title a").forEach(el -> {
-//
-//                    String sURL = el.attr("href");
-//
-//                    try {
-//
-//                        FileUtils.downloadFile(new File(sOutPath + el.text().replaceAll(" ", "_").replaceAll("/", "_") + ".pdf"), "https://www.dokumentation.landtag-mv.de/" + sURL);
-//                    } catch (IOException e) {
-//                        e.printStackTrace();
-//                        isRunning.set(false);
-//                    }
-//
-//                });
-
-
-            } catch (IOException e) {
-                e.printStackTrace();
-                try {
-                    Thread.sleep(10000l);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
-            }
-
-            a++;
-        }
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
 
     @Test
-    public void current() throws MalformedURLException {
+    public void current() throws IOException, InterruptedException {
 
         // https://www.dokumentation.landtag-mv.de/parldok/neuedokumente/1
 
-        String sOutPath = "/tmp/mypath";
+        HostRateLimiter.getDefault().setRate("www.dokumentation.landtag-mv.de", 1, 1);
 
-        new File(sOutPath).mkdir();
+        String sOutPath = "/tmp/mypath/";
 
-        String sSession = "avzlw4x0u02pp2uh4vx2nq4e";
+        new File(sOutPath).mkdirs();
 
-        int a = 10;
-        AtomicBoolean isRunning = new AtomicBoolean(true);
-        while (isRunning.get()) {
+        // the list of new documents starts with the newest one, in incremental mode it is read until the newest document of the last run
+        Watermark pWatermark = new Watermark(new File(sOutPath));
+        String sLast = pWatermark.get("neuedokumente", "");
+        String sNewest = null;
 
+        ParlDokClient pClient = new ParlDokClient("https://www.dokumentation.landtag-mv.de/parldok", 1);
 
-            Map<String, String> cookies = new HashMap<>();
-            cookies.put("ASP.NET_SessionId", sSession);
-            try {
-                Document pElement = Jsoup.connect("https://www.dokumentation.landtag-mv.de/parldok/neuedokumente/" + a + "?DokumentenArtId=2&PDFSelect=1").userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").cookies(cookies).followRedirects(true).get();
+        List<Future<File>> pDownloads = new ArrayList<>(0);
 
-                pElement.select("td.title a").forEach(el -> {
+        boolean isRunning = true;
+        for (int a = 1; isRunning; a++) {
 
-                    String sURL = el.attr("href");
+            Elements pTitles = pClient.get("/neuedokumente/" + a + "?DokumentenArtId=2&PDFSelect=1").select("td.title a");
 
-                    try {
+            if (pTitles.isEmpty()) {
+                break;
+            }
 
-                        FileUtils.downloadFile(new File(sOutPath + el.text().replaceAll(" ", "_").replaceAll("/", "_") + ".pdf"), "https://www.dokumentation.landtag-mv.de/" + sURL);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+            for (Element el : pTitles) {
+
+                String sURL = el.attr("href");
+
+                if (sNewest == null) {
+                    sNewest = sURL;
+                }
 
-                });
+                if (Watermark.isIncremental() && sURL.equals(sLast)) {
+                    isRunning = false;
+                    break;
+                }
 
+                File pDownload = new File(sOutPath + el.text().replaceAll(" ", "_").replaceAll("/", "_") + ".pdf");
 
-            } catch (IOException e) {
-                e.printStackTrace();
-                try {
-                    Thread.sleep(10000l);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
+                if (!pDownload.exists()) {
+                    pDownloads.add(DownloadEngine.getDefault().submit(pDownload, pClient.resolve(sURL)));
                 }
+
+            }
+
+        }
+
+        boolean bComplete = true;
+        for (Future<File> pFuture : pDownloads) {
+            try {
+                pFuture.get();
+            } catch (ExecutionException e) {
+                bComplete = false;
+                System.out.println(e.getCause().getMessage());
             }
+        }
 
-            a++;
+        // the watermark is only moved if every new document was fetched, otherwise the next run reads the list again
+        if (bComplete && sNewest != null) {
+            pWatermark.set("neuedokumente", sNewest);
         }
+        pWatermark.close();
 
     }
 
     public static void main(String[] args) {
 
+        HostRateLimiter.getDefault().setRate("www.landtag.nrw.de", 1, 1);
+
         String sOutPath = args[0];
 
         String sURL = "https://www.landtag.nrw.de/portal/WWW/dokumentenarchiv/Dokument/KVP0[WP]-[NR].pdf";
@@ -166,17 +162,11 @@ public class MeckPom {
             int b = 1;
             while (isRunning) {
 
-                try {
-                    Thread.sleep(1000l);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-
                 File dFile = new File(sOutPath + a + "/" + b + ".pdf");
 
                 if (!dFile.exists()) {
                     try {
-                        FileUtils.downloadFile(dFile, sURL.replace("[WP]", "" + a).replace("[NR]", "" + b));
+                        DownloadEngine.getDefault().download(dFile, sURL.replace("[WP]", "" + a).replace("[NR]", "" + b));
                     } catch (IOException e) {
                         e.printStackTrace();
                         isRunning = false;
@@ -1,6 +1,6 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
 
 import java.io.File;
 import java.io.IOException;
@@ -43,7 +43,7 @@ public class Niedersachsen {
 
                 if(!dFile.exists()){
                     try {
-                        FileUtils.downloadFile(dFile, sURL.replace("ID", ""+a).replace("INDEX", sID));
+                        DownloadEngine.getDefault().download(dFile, sURL.replace("ID", ""+a).replace("INDEX", sID));
                     } catch (IOException e) {
                         e.printStackTrace();
                         isRunning=false;
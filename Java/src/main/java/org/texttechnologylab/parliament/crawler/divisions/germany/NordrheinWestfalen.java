@@ -1,65 +1,86 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.junit.Test;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.SequenceProber;
+import org.texttechnologylab.parliament.crawler.schedule.ParliamentCrawler;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
 
 /**
  * Class for Parsing Minutes of NordrheinWestfalen
  * @author Giuseppe Abrami
  * @date 2021-12-01
  */
-public class NordrheinWestfalen {
+public class NordrheinWestfalen implements ParliamentCrawler {
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws IOException, InterruptedException {
 
-//        String sURL = "https://www.landtag.nrw.de/portal/WWW/dokumentenarchiv/Dokument?pl=MM&pnr=WP/NR&part=P&quelle=parla&ref=dok_verw";
-        String sURL = "https://www.landtag.nrw.de/portal/WWW/dokumentenarchiv/Dokument/MMP{WP}-{NR}.pdf";
         String sOut = args[0];
         new File(sOut).mkdir();
 
-        boolean isRunning = true;
+        for (DownloadJob pJob : new NordrheinWestfalen().discover(new File(sOut))) {
+            DownloadEngine.getDefault().submit(pJob);
+        }
+
+        DownloadEngine.getDefault().awaitCompletion();
+
+    }
+
+    @Override
+    public String getName() {
+        return "NordrheinWestfalen";
+    }
+
+    @Override
+    public List<DownloadJob> discover(File pOutput) throws IOException {
+
+        HostRateLimiter.getDefault().setRate("www.landtag.nrw.de", 0.66, 1);
+
+//        String sURL = "https://www.landtag.nrw.de/portal/WWW/dokumentenarchiv/Dokument?pl=MM&pnr=WP/NR&part=P&quelle=parla&ref=dok_verw";
+        String sURL = "https://www.landtag.nrw.de/portal/WWW/dokumentenarchiv/Dokument/MMP{WP}-{NR}.pdf";
+        String sOut = pOutput.getAbsolutePath() + "/";
+
+        List<DownloadJob> rList = new ArrayList<>(0);
 
         for(int a=17; a<=18; a++){
-            isRunning = true;
             new File(sOut+a).mkdir();
 
-            int b=1;
+            String sPeriode = sURL.replace("{WP}", ""+a);
+            IntFunction<String> pURL = b -> sPeriode.replace("{NR}", ""+b);
 
-            while(isRunning){
+            // the last session is probed, so a missing session does not end the period
+            int iLast = new SequenceProber(pURL).findLast(1);
 
+            for (int b = 1; b <= iLast; b++) {
 
                 File dFile = new File(sOut+a+"/"+b+".pdf");
 
                 if(!dFile.exists()){
-                    try {
-                        FileUtils.downloadFile(dFile, sURL.replace("{WP}", ""+a).replace("{NR}", ""+b));
-                        try {
-                            Thread.sleep(1500l);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        isRunning=false;
-                    }
+                    rList.add(new DownloadJob(dFile, pURL.apply(b)).store("NordrheinWestfalen", ""+a, ""+b));
                 }
 
-                b++;
-
             }
 
         }
 
+        return rList;
+
     }
 
     @Test
     public void from4thPeriod(){
 
+        HostRateLimiter.getDefault().setRate("ws.landtag.sachsen.de", 0.04, 1);
+
         String sURL = "https://edas.landtag.sachsen.de/viewer.aspx?dok_nr=[NR]&dok_art=PlPr&leg_per=[PER]&pos_dok=201&dok_id=";
 
         String sOut = "/tmp/mypath";
@@ -82,14 +103,14 @@ public class NordrheinWestfalen {
 
                     try {
 
-                        Document doc = Jsoup.connect(sURL.replace("[NR]", ""+b).replace("[PER]", ""+a)).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").execute().parse();
+                        Document doc = CrawlerRuntime.connect(sURL.replace("[NR]", ""+b).replace("[PER]", ""+a)).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").execute().parse();
 
                         doc.select("frame[name=anzeige]").forEach(i->{
 
                             String sSRC = i.attr("src");
 
                             try {
-                                Document doc2 = Jsoup.connect("https://edas.landtag.sachsen.de/"+sSRC).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").followRedirects(true).execute().parse();
+                                Document doc2 = CrawlerRuntime.connect("https://edas.landtag.sachsen.de/"+sSRC).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").followRedirects(true).execute().parse();
 
                                 doc2.getElementsByTag("iframe").forEach(t->{
 
@@ -106,16 +127,10 @@ public class NordrheinWestfalen {
 
                         System.out.println(doc);
 
-                        try {
-                            Thread.sleep(25000l);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
                         String sDownload = "https://ws.landtag.sachsen.de/images/[PER]_PlPr_[NR]_201_1_1_.pdf";
 
                         try {
-                            FileUtils.downloadFile(dFile, sDownload.replace("[PER]", ""+a).replace("[NR]", ""+b));
+                            DownloadEngine.getDefault().download(dFile, sDownload.replace("[PER]", ""+a).replace("[NR]", ""+b));
                         } catch (IOException e) {
                             e.printStackTrace();
                             isRunning=false;
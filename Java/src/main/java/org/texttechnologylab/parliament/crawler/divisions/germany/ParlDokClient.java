@@ -0,0 +1,409 @@
+package org.texttechnologylab.parliament.crawler.divisions.germany;
+
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.metrics.CrawlerMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class for the ParlDok portals (Hamburg, Mecklenburg-Vorpommern, Thüringen).
+ * The search by document number (/dokumentennummer with LegislaturPeriodenNummer, DokumentenArtId and DokumentenNummer)
+ * needs an ASP.NET session and, depending on the installation, the anti forgery token AFHTOKE of the search form.
+ * The client opens the sessions itself, keeps a small pool of them and replaces a session as soon as it expired.
+ * The document numbers of a period are searched in parallel, one worker per session, until a gap of numbers without result.
+ */
+public class ParlDokClient {
+
+    public static final String TOKEN = "AFHTOKE";
+
+    /**
+     * Number of consecutive numbers without result after which the enumeration stops
+     */
+    public static final int DEFAULT_GAP = 5;
+
+    /**
+     * Number of searches of a document number before it is given up
+     */
+    public static final int MAX_ATTEMPTS = 3;
+
+    private final String sBaseURL;
+
+    private final Map<String, String> pDefaultCookies = new HashMap<>(0);
+
+    private final Map<String, String> pDefaultParams = new HashMap<>(0);
+
+    private final BlockingQueue<Session> pSessions;
+
+    private final int iSessions;
+
+    private final AtomicInteger iOpened = new AtomicInteger(0);
+
+    private HostRateLimiter pRateLimiter = HostRateLimiter.getDefault();
+
+    private int iGap = DEFAULT_GAP;
+
+    /**
+     * Constructor
+     * @param sBaseURL URL of the ParlDok application, e.g. https://www.buergerschaft-hh.de/parldok
+     * @param iSessions number of parallel sessions
+     */
+    public ParlDokClient(String sBaseURL, int iSessions) {
+        this.sBaseURL = sBaseURL.replaceAll("/+$", "");
+        this.iSessions = Math.max(1, iSessions);
+        this.pSessions = new ArrayBlockingQueue<>(this.iSessions);
+    }
+
+    /**
+     * Method to add a cookie which is sent with every session, e.g. the consent cookie of the portal
+     * @param sName
+     * @param sValue
+     * @return
+     */
+    public ParlDokClient cookie(String sName, String sValue) {
+        pDefaultCookies.put(sName, sValue);
+        return this;
+    }
+
+    /**
+     * Method to add a parameter which is sent with every search, e.g. PDFSelect
+     * @param sName
+     * @param sValue
+     * @return
+     */
+    public ParlDokClient param(String sName, String sValue) {
+        pDefaultParams.put(sName, sValue);
+        return this;
+    }
+
+    public void setRateLimiter(HostRateLimiter pRateLimiter) {
+        this.pRateLimiter = pRateLimiter;
+    }
+
+    /**
+     * Method to set the number of consecutive numbers without result after which the enumeration stops
+     * @param iGap
+     */
+    public void setGap(int iGap) {
+        this.iGap = Math.max(1, iGap);
+    }
+
+    public String getBaseURL() {
+        return sBaseURL;
+    }
+
+    /**
+     * Method to get the URL of the portal for a link of a result page
+     * @param sHref
+     * @return
+     */
+    public String resolve(String sHref) {
+        if (sHref.startsWith("http")) {
+            return sHref;
+        }
+        String sHost = sBaseURL.substring(0, sBaseURL.indexOf('/', sBaseURL.indexOf("://") + 3));
+        return sHost + (sHref.startsWith("/") ? "" : "/") + sHref;
+    }
+
+    /**
+     * Method to search a single document number
+     * @param iPeriod LegislaturPeriodenNummer
+     * @param iType DokumentenArtId (e.g. 2 for Plenarprotokolle in Hamburg, 3 in Thüringen)
+     * @param iNumber DokumentenNummer
+     * @return the result page
+     * @throws IOException
+     */
+    public Document search(int iPeriod, int iType, int iNumber) throws IOException {
+
+        Session pSession = borrow();
+        boolean bValid = false;
+        try {
+            for (int iAttempt = 1; ; iAttempt++) {
+                try {
+                    Document rDocument = search(pSession, iPeriod, iType, iNumber);
+                    bValid = true;
+                    return rDocument;
+                } catch (SessionExpiredException | HttpStatusException e) {
+                    if (e instanceof HttpStatusException && ((HttpStatusException) e).getStatusCode() == 404) {
+                        throw e;
+                    }
+                    if (iAttempt >= 2) {
+                        throw e;
+                    }
+                    System.out.println(sBaseURL + "\tsession expired (" + e.getMessage() + "), opening a new one");
+                    pSession = open();
+                }
+            }
+        } finally {
+            if (bValid) {
+                pSessions.offer(pSession);
+            } else {
+                iOpened.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * Method to get a page of the portal with one of the sessions, e.g. the list of new documents
+     * @param sPath path below the base URL, e.g. /neuedokumente/1?DokumentenArtId=2
+     * @return
+     * @throws IOException
+     */
+    public Document get(String sPath) throws IOException {
+
+        Session pSession = borrow();
+        boolean bValid = false;
+        try {
+            Document rDocument = execute(pSession, connect(pSession, sBaseURL + sPath).method(Connection.Method.GET)).parse();
+            bValid = true;
+            return rDocument;
+        } finally {
+            if (bValid) {
+                pSessions.offer(pSession);
+            } else {
+                iOpened.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * Method to search all document numbers of a period and type in parallel, starting with iFirst, until
+     * the handler did not find a document for a gap of consecutive numbers
+     * @param iPeriod LegislaturPeriodenNummer
+     * @param iType DokumentenArtId
+     * @param iFirst first DokumentenNummer
+     * @param pHandler
+     * @return the highest number with a result, iFirst - 1 if there is none
+     * @throws InterruptedException
+     */
+    public int enumerate(int iPeriod, int iType, int iFirst, ResultHandler pHandler) throws InterruptedException {
+        List<Integer> pFailed = Collections.synchronizedList(new ArrayList<>(0));
+        int rHighest = enumerate(iPeriod, iType, iFirst, pHandler, pFailed);
+        if (!pFailed.isEmpty()) {
+            System.out.println(sBaseURL + "\t" + iPeriod + "\tfailed after " + MAX_ATTEMPTS + " attempts, search again: " + pFailed);
+        }
+        return rHighest;
+    }
+
+    /**
+     * Method to search all document numbers of a period and type in parallel, starting with iFirst, until
+     * the handler did not find a document for a gap of consecutive numbers.
+     * A number whose search fails is searched again, up to MAX_ATTEMPTS times.
+     * @param iPeriod LegislaturPeriodenNummer
+     * @param iType DokumentenArtId
+     * @param iFirst first DokumentenNummer
+     * @param pHandler
+     * @param pFailed gets the numbers which failed MAX_ATTEMPTS times, so they can be searched again in a later run
+     * @return the highest number with a result, iFirst - 1 if there is none
+     * @throws InterruptedException
+     */
+    public int enumerate(int iPeriod, int iType, int iFirst, ResultHandler pHandler, Collection<Integer> pFailed) throws InterruptedException {
+
+        AtomicInteger iNext = new AtomicInteger(iFirst);
+        AtomicInteger iHighest = new AtomicInteger(iFirst - 1);
+
+        // failed numbers with their number of attempts
+        Queue<int[]> pRetries = new ConcurrentLinkedQueue<>();
+
+        ExecutorService pWorkers = CrawlerRuntime.newExecutor("parldok", iSessions);
+
+        for (int w = 0; w < iSessions; w++) {
+            pWorkers.execute(() -> {
+                while (true) {
+                    int[] iTask = pRetries.poll();
+                    if (iTask == null) {
+                        // a number is only taken if it is within the gap, so no number is taken and then dropped;
+                        // numbers beyond the gap are only searched if a worker found a document in the meantime
+                        int iNumber = iNext.get();
+                        if (iNumber > iHighest.get() + iGap) {
+                            return;
+                        }
+                        if (!iNext.compareAndSet(iNumber, iNumber + 1)) {
+                            continue;
+                        }
+                        iTask = new int[]{iNumber, 0};
+                    }
+                    try {
+                        Document pDocument = search(iPeriod, iType, iTask[0]);
+                        if (pHandler.handle(iTask[0], pDocument)) {
+                            iHighest.accumulateAndGet(iTask[0], Math::max);
+                        }
+                    } catch (IOException e) {
+                        System.out.println(sBaseURL + "\t" + iPeriod + "/" + iTask[0] + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage());
+                        // this worker keeps running, so it takes the retry itself if no other worker does
+                        if (++iTask[1] < MAX_ATTEMPTS) {
+                            pRetries.add(iTask);
+                        } else {
+                            pFailed.add(iTask[0]);
+                        }
+                    }
+                }
+            });
+        }
+
+        pWorkers.shutdown();
+        pWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        return iHighest.get();
+
+    }
+
+    private Document search(Session pSession, int iPeriod, int iType, int iNumber) throws IOException {
+
+        Map<String, String> pParams = new HashMap<>(pDefaultParams);
+        pParams.put("LegislaturPeriodenNummer", String.valueOf(iPeriod));
+        pParams.put("DokumentenArtId", String.valueOf(iType));
+        pParams.put("DokumentenNummer", String.valueOf(iNumber));
+        if (pSession.sToken != null) {
+            pParams.put(TOKEN, pSession.sToken);
+        }
+
+        Connection.Response pResponse = execute(pSession, connect(pSession, sBaseURL + "/dokumentennummer").data(pParams).method(Connection.Method.POST));
+        Document pDocument = pResponse.parse();
+
+        if (!hasResult(pDocument)) {
+            // some installations redirect to the form again and show the results on the first result page
+            pResponse = execute(pSession, connect(pSession, sBaseURL + "/dokumentennummer/1").method(Connection.Method.GET));
+            pDocument = pResponse.parse();
+        }
+
+        if (!pResponse.url().getPath().toLowerCase().contains("/dokumentennummer")) {
+            throw new SessionExpiredException("redirected to " + pResponse.url());
+        }
+
+        updateToken(pSession, pDocument);
+        return pDocument;
+
+    }
+
+    /**
+     * Method to check if a page shows results, an empty result list also counts as result
+     * @param pDocument
+     * @return
+     */
+    private static boolean hasResult(Document pDocument) {
+        return !pDocument.select("table#parldokresult, div.resultinfo, div.col-12 a[href$=.pdf]").isEmpty()
+                || pDocument.text().contains("keine Dokumente") || pDocument.text().contains("keine Treffer");
+    }
+
+    private Session borrow() throws IOException {
+        Session pSession = pSessions.poll();
+        if (pSession != null) {
+            return pSession;
+        }
+        if (iOpened.incrementAndGet() <= iSessions) {
+            try {
+                return open();
+            } catch (IOException | RuntimeException e) {
+                iOpened.decrementAndGet();
+                throw e;
+            }
+        }
+        iOpened.decrementAndGet();
+        try {
+            return pSessions.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a session of " + sBaseURL);
+        }
+    }
+
+    /**
+     * Method to open a new session: the search form sets the session cookies and contains the token
+     * @return
+     * @throws IOException
+     */
+    private Session open() throws IOException {
+        Session pSession = new Session(pDefaultCookies);
+        Connection.Response pResponse = execute(pSession, connect(pSession, sBaseURL + "/dokumentennummer").method(Connection.Method.GET));
+        updateToken(pSession, pResponse.parse());
+        CrawlerMetrics.getDefault().counter("gerparcor_parldok_sessions_total", "Sessions opened at ParlDok portals", "host", HostRateLimiter.getHost(sBaseURL)).increment();
+        return pSession;
+    }
+
+    private Connection connect(Session pSession, String sURL) {
+        return CrawlerRuntime.connect(sURL)
+                .userAgent(DownloadEngine.DEFAULT_USER_AGENT)
+                .cookies(pSession.pCookies)
+                .followRedirects(true)
+                .timeout(60000);
+    }
+
+    private Connection.Response execute(Session pSession, Connection pConnection) throws IOException {
+        String sURL = pConnection.request().url().toString();
+        pRateLimiter.acquireUninterruptibly(sURL);
+        Connection.Response rResponse = pConnection.execute();
+        pSession.pCookies.putAll(rResponse.cookies());
+        return rResponse;
+    }
+
+    private static void updateToken(Session pSession, Document pDocument) {
+        Element pToken = pDocument.selectFirst("input[name=" + TOKEN + "]");
+        if (pToken != null && !pToken.val().isEmpty()) {
+            pSession.sToken = pToken.val();
+        }
+    }
+
+    /**
+     * Interface for the processing of a result page
+     */
+    public interface ResultHandler {
+
+        /**
+         * Method to process the result page of a document number
+         * @param iNumber
+         * @param pDocument
+         * @return true if the page contains a document
+         * @throws IOException
+         */
+        boolean handle(int iNumber, Document pDocument) throws IOException;
+
+    }
+
+    /**
+     * Class for the cookies and the token of a session
+     */
+    private static class Session {
+
+        private final Map<String, String> pCookies;
+
+        private volatile String sToken = null;
+
+        Session(Map<String, String> pDefaultCookies) {
+            this.pCookies = new HashMap<>(pDefaultCookies);
+        }
+
+    }
+
+    /**
+     * Class for a session which is not accepted by the portal anymore
+     */
+    private static class SessionExpiredException extends IOException {
+
+        SessionExpiredException(String sMessage) {
+            super(sMessage);
+        }
+
+    }
+
+}
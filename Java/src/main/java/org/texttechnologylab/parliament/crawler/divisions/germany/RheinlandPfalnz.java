@@ -1,13 +1,17 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.junit.Test;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.SequenceProber;
 import org.texttechnologylab.utilities.helper.RESTUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.function.IntFunction;
 
 /**
  * Class for Parsing Minutes of RheinlandPfalz
@@ -17,149 +21,112 @@ import java.io.IOException;
 public class RheinlandPfalnz {
 
     @Test
-    public void from15th(){
+    public void from15th() throws IOException, InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("dokumente.landtag.rlp.de", 1, 1);
 
         RESTUtils.enableSSLTrustCertificates();
 
         String sURL = "https://dokumente.landtag.rlp.de/landtag/plenarprotokolle/PLPR-Sitzung-WP-NR.pdf";
 
         String sOut = "/tmp/mypath";
-        boolean isRunning = true;
 
         for(int a=15; a<=18; a++) {
-            isRunning = true;
             new File(sOut + a).mkdir();
 
-            int b = 1;
-
-            while (isRunning) {
+            String sPeriode = sURL.replace("WP", ""+a);
+            IntFunction<String> pURL = b -> sPeriode.replace("NR", String.format("%03d", b));
 
-                String sID = "";
-                if(b<10){
-                    sID = "00"+b;
-                }
-                else if(b<100){
-                    sID = "0"+b;
-                }
-                else{
-                    sID = ""+b;
-                }
+            // the last session is probed, so a missing session does not end the period
+            int iLast = new SequenceProber(pURL).findLast(1);
 
-                String sDownload = sURL.replace("WP", ""+a);
-                sDownload = sDownload.replace("NR", sID);
+            for (int b = 1; b <= iLast; b++) {
 
                 File dFile = new File(sOut+a+"/"+b+".pdf");
 
                 if(!dFile.exists()){
-                    try {
-                        FileUtils.downloadFile(dFile, sDownload);
-                        try {
-                            Thread.sleep(1000l);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        isRunning=false;
-                    }
+                    DownloadEngine.getDefault().submit(new DownloadJob(dFile, pURL.apply(b)).store("RheinlandPfalz", ""+a, ""+b));
                 }
 
-                b++;
-
             }
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
+
     }
 
     @Test
-    public void from17th(){
+    public void from17th() throws IOException, InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("dokumente.landtag.rlp.de", 1, 1);
 
         RESTUtils.enableSSLTrustCertificates();
 
         String sURL = "https://dokumente.landtag.rlp.de/landtag/plenarprotokolle/NR-P-WP.pdf";
 
         String sOut = "/tmp/gerparcor/rlp/";
-        boolean isRunning = true;
 
         for(int a=18; a<=18; a++) {
-            isRunning = true;
             new File(sOut + a).mkdir();
 
-            int b = 1;
+            String sPeriode = sURL.replace("WP", ""+a);
+            IntFunction<String> pURL = b -> sPeriode.replace("NR", ""+b);
 
-            while (isRunning) {
+            int iLast = new SequenceProber(pURL).findLast(1);
 
-                String sDownload = sURL.replace("WP", ""+a);
-                sDownload = sDownload.replace("NR", ""+b);
+            for (int b = 1; b <= iLast; b++) {
 
                 File dFile = new File(sOut+a+"/"+b+".pdf");
 
                 if(!dFile.exists()){
-                    try {
-                        FileUtils.downloadFile(dFile, sDownload);
-                        try {
-                            Thread.sleep(1000l);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        isRunning=false;
-                    }
+                    DownloadEngine.getDefault().submit(new DownloadJob(dFile, pURL.apply(b)).store("RheinlandPfalz", ""+a, ""+b));
                 }
 
-                b++;
-
             }
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
+
     }
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("www.landtag.nrw.de", 1, 1);
 
         String sURL = "https://www.landtag.nrw.de/portal/WWW/dokumentenarchiv/Dokument?pl=RPF&pnr=WP/NR&part=P&quelle=parla&ref=dok_verw";
 
         String sOut = args[0];
         new File(sOut).mkdir();
 
-        boolean isRunning = true;
-
         for(int a=15; a<=18; a++){
-            isRunning = true;
             new File(sOut+a).mkdir();
 
-            int b=1;
+            String sPeriode = sURL.replace("WP", ""+a);
+            IntFunction<String> pURL = b -> sPeriode.replace("NR", ""+b);
 
-            while(isRunning){
+            int iLast = new SequenceProber(pURL).findLast(1);
 
+            for (int b = 1; b <= iLast; b++) {
 
                 File dFile = new File(sOut+a+"/"+b+".pdf");
 
                 if(!dFile.exists()){
-                    try {
-                        FileUtils.downloadFile(dFile, sURL.replace("WP", ""+a).replace("NR", ""+b));
-                        try {
-                            Thread.sleep(1000l);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        isRunning=false;
-                    }
+                    DownloadEngine.getDefault().submit(new DownloadJob(dFile, pURL.apply(b)).store("RheinlandPfalz", ""+a, ""+b));
                 }
 
-                b++;
-
             }
 
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
+
     }
 
     @Test
     public void from4thPeriod(){
 
+        HostRateLimiter.getDefault().setRate("ws.landtag.sachsen.de", 0.04, 1);
+
         String sURL = "https://edas.landtag.sachsen.de/viewer.aspx?dok_nr=[NR]&dok_art=PlPr&leg_per=[PER]&pos_dok=201&dok_id=";
 
         String sOut = "/tmp/mypath";
@@ -182,14 +149,14 @@ public class RheinlandPfalnz {
 
                     try {
 
-                        Document doc = Jsoup.connect(sURL.replace("[NR]", ""+b).replace("[PER]", ""+a)).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").execute().parse();
+                        Document doc = CrawlerRuntime.connect(sURL.replace("[NR]", ""+b).replace("[PER]", ""+a)).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").execute().parse();
 
                         doc.select("frame[name=anzeige]").forEach(i->{
 
                             String sSRC = i.attr("src");
 
                             try {
-                                Document doc2 = Jsoup.connect("https://edas.landtag.sachsen.de/"+sSRC).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").followRedirects(true).execute().parse();
+                                Document doc2 = CrawlerRuntime.connect("https://edas.landtag.sachsen.de/"+sSRC).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").followRedirects(true).execute().parse();
 
                                 doc2.getElementsByTag("iframe").forEach(t->{
 
@@ -204,16 +171,10 @@ public class RheinlandPfalnz {
 
                         });
 
-                        try {
-                            Thread.sleep(25000l);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
                         String sDownload = "https://ws.landtag.sachsen.de/images/[PER]_PlPr_[NR]_201_1_1_.pdf";
 
                         try {
-                            FileUtils.downloadFile(dFile, sDownload.replace("[PER]", ""+a).replace("[NR]", ""+b));
+                            DownloadEngine.getDefault().download(dFile, sDownload.replace("[PER]", ""+a).replace("[NR]", ""+b));
                         } catch (IOException e) {
                             e.printStackTrace();
                             isRunning=false;
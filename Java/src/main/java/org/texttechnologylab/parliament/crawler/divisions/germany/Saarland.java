@@ -4,7 +4,8 @@ import com.goebl.david.Request;
 import com.goebl.david.Webb;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
 
 import java.io.File;
 import java.io.IOException;
@@ -17,7 +18,9 @@ import java.sql.Date;
  */
 public class Saarland {
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("www.landtag-saar.de", 0.33, 1);
 
         String sOutPath = args[0];
 
@@ -29,11 +32,7 @@ public class Saarland {
 
         while(isRunning) {
 
-            try {
-                Thread.sleep(3000l);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            HostRateLimiter.getDefault().acquire("https://www.landtag-saar.de");
 
             String stringJSONRequest = "{\"Filter\":{\"Periods\":[]},\"Pageination\":{\"Skip\":"+(c*iLimitSkip)+",\"Take\":"+iLimitSkip+"},\"Sections\":{\"Print\":false,\"PlenaryProtocol\":true,\"Law\":false,\"PublicConsultation\":false,\"Operations\":false},\"Sort\":{\"SortType\":0,\"SortValue\":0},\"OnlyTitle\":false,\"Value\":\"\",\"CurrentSearchTab\":2,\"KendoFilter\":null}";
 
@@ -64,11 +63,7 @@ public class Saarland {
                 File dFile = new File(sOutPath+sNumber.split("/")[0]+"/"+sNumber.replace("/", "_")+"_"+pDate.toString()+".pdf");
 
                 if(!dFile.exists()){
-                    try {
-                        FileUtils.downloadFile(dFile, "https://www.landtag-saar.de/Downloadfile.ashx?"+tObject.getString("FilePath").replace("/file.ashx?", "")+"&directDL=true");
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                    DownloadEngine.getDefault().submit(dFile, "https://www.landtag-saar.de/Downloadfile.ashx?"+tObject.getString("FilePath").replace("/file.ashx?", "")+"&directDL=true");
                 }
 
 
@@ -78,6 +73,7 @@ public class Saarland {
             c++;
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
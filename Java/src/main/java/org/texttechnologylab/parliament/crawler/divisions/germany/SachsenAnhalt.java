@@ -1,9 +1,10 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.junit.Test;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
 
 import java.io.File;
 import java.io.IOException;
@@ -49,7 +50,7 @@ public class SachsenAnhalt {
                             else{
                                 sNR = b+"";
                             }
-                            FileUtils.downloadFile(dFile, sURL.replaceAll("\\{WP\\}", ""+a).replaceAll("\\{NR\\}", sNR));
+                            DownloadEngine.getDefault().download(dFile, sURL.replaceAll("\\{WP\\}", ""+a).replaceAll("\\{NR\\}", sNR));
                         }
                         catch (Exception ex){
                             System.out.println(ex.getMessage());
@@ -69,6 +70,8 @@ public class SachsenAnhalt {
     @Test
     public void from4thPeriod(){
 
+        HostRateLimiter.getDefault().setRate("ws.landtag.sachsen.de", 0.5, 1);
+
         String sOut = "/opt/mypath";
 
         new File(sOut).mkdir();
@@ -96,24 +99,18 @@ public class SachsenAnhalt {
 
                     String sNew = "https://edas.landtag.sachsen.de/viewer/viewer_navigation.aspx?dok_nr="+b+"&dok_art=PlPr&leg_per="+a+"&pos_dok=201&dok_id=undefined";
                     try {
-                        Document test = Jsoup.connect(sNew).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").execute().parse();
+                        Document test = CrawlerRuntime.connect(sNew).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").execute().parse();
 
                         String sDownload = "https://ws.landtag.sachsen.de/images/[PER]_PlPr_[NR]_201_1_1_.pdf";
 
                         try {
-                            FileUtils.downloadFile(dFile, sDownload.replace("[PER]", ""+a).replace("[NR]", ""+b));
+                            DownloadEngine.getDefault().download(dFile, sDownload.replace("[PER]", ""+a).replace("[NR]", ""+b));
                         } catch (IOException e) {
                             e.printStackTrace();
                             isRunning=false;
 
                         }
 
-                        try {
-                            Thread.sleep(2000l);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
                     } catch (IOException e) {
                         e.printStackTrace();
                     }
@@ -1,10 +1,11 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 import org.junit.Test;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -26,7 +27,9 @@ import java.util.Map;
  */
 public class Schleswig_Holstein {
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("www.landtag.ltsh.de", 1, 1);
 
         String sOut = args[0];
         new File(sOut).mkdir();
@@ -41,7 +44,7 @@ public class Schleswig_Holstein {
 
                 new File(sOut + c).mkdir();
 
-                Document pDocument = Jsoup.connect(sUrlNew).get();
+                Document pDocument = CrawlerRuntime.connect(sUrlNew).get();
 
                 Elements pElements = pDocument.select(".presseticker ul li.presserow");
             int finalC = c;
@@ -54,14 +57,7 @@ public class Schleswig_Holstein {
 
                         File dFile = new File(sOut + finalC + "/"+ sDatum + ".pdf");
                         if (!dFile.exists()) {
-                            try {
-                                FileUtils.downloadFile(dFile, "https://www.landtag.ltsh.de" + sDownload);
-                                Thread.sleep(1000);
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            } catch (InterruptedException e) {
-                                throw new RuntimeException(e);
-                            }
+                            DownloadEngine.getDefault().submit(dFile, "https://www.landtag.ltsh.de" + sDownload);
                         }
                     }
 
@@ -96,11 +92,15 @@ public class Schleswig_Holstein {
 
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
+
     }
 
 
     @Test
-    public void from15Th() throws IOException {
+    public void from15Th() throws IOException, InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("lissh.lvn.ltsh.de", 0.2, 1);
 
         String sOut = "/tmp/mypath";
         new File(sOut).mkdir();
@@ -109,7 +109,8 @@ public class Schleswig_Holstein {
         for(int i=-2; i<15; i++) {
             new File(sOut+i).mkdir();
 
-            Document pElement = Jsoup.connect("http://lissh.lvn.ltsh.de/cgi-bin/starfinder/0").data("path", "lisshdokfl.txt").data("id", "fastlinkdok").data("format", "WEBKURZFL3").data("search", "P").data("search", ""+i).data("search", "*").data("OK", "Suche").data("pass", "").timeout(1000000).post();
+            HostRateLimiter.getDefault().acquire("http://lissh.lvn.ltsh.de");
+            Document pElement = CrawlerRuntime.connect("http://lissh.lvn.ltsh.de/cgi-bin/starfinder/0").data("path", "lisshdokfl.txt").data("id", "fastlinkdok").data("format", "WEBKURZFL3").data("search", "P").data("search", ""+i).data("search", "*").data("OK", "Suche").data("pass", "").timeout(1000000).post();
             //.data("path=lisshdokfl.txt&id=fastlinkdok&format=WEBKURZFL3&OK=Suche&pass=&search=P&search=15&search=*").userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").post();
 
             Elements el = pElement.select("table.tabcol tr td");
@@ -128,11 +129,7 @@ public class Schleswig_Holstein {
                         File dFile = new File(sOut+ finalI +"/"+sText+".pdf");
                         String sURL = aElement.attr("href");
                         if(!dFile.exists()){
-                            try {
-                                FileUtils.downloadFile(dFile, sURL);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
+                            DownloadEngine.getDefault().submit(dFile, sURL);
                         }
 
 
@@ -141,14 +138,9 @@ public class Schleswig_Holstein {
                 }
             });
 
-            try {
-                Thread.sleep(5000l);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
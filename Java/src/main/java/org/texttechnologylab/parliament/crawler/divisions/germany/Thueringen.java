@@ -1,15 +1,14 @@
 package org.texttechnologylab.parliament.crawler.divisions.germany;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.junit.Test;
-import org.texttechnologylab.utilities.helper.FileUtils;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.SequenceProber;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 
 /**
  * Class for Parsing Minutes of Thüringen
@@ -18,7 +17,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class Thueringen {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("www.landtag.nrw.de", 1, 1);
 
         // set output path
         String sOut = args[0];
@@ -38,25 +39,18 @@ public class Thueringen {
 
             new File(sOut + sPeriode).mkdir();
 
+            String sDownload = sURL.replace("{PERIODE}", sPeriode);
+            IntFunction<String> pURL = a -> sDownload.replace("{NR}", "" + a);
 
-            for (int a = 1; a < 200; a++) {
-                String sID = "" + a;
+            // instead of a fixed limit of 200 sessions the last session is probed
+            int iLast = new SequenceProber(pURL).findLast(1);
 
-                String sDownload = sURL.replace("{PERIODE}", sPeriode);
-                sDownload = sDownload.replace("{NR}", "" + sID);
+            for (int a = 1; a <= iLast; a++) {
+                String sID = "" + a;
 
                 File dFile = new File(sOut + sPeriode + "/" + sPeriode + "_" + sID + ".pdf");
                 if (!dFile.exists()) {
-                    try {
-                        FileUtils.downloadFile(dFile, sDownload);
-                    } catch (IOException e) {
-                        System.out.println(e.getMessage());
-                        try {
-                            Thread.sleep(1000l);
-                        } catch (InterruptedException ex) {
-                            ex.printStackTrace();
-                        }
-                    }
+                    DownloadEngine.getDefault().submit(new DownloadJob(dFile, pURL.apply(a)).store("Thueringen", sPeriode, sID));
                 }
 
             }
@@ -64,76 +58,51 @@ public class Thueringen {
 
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
     @Test
-    public void from5Th(){
+    public void from5Th() throws InterruptedException {
+
+        HostRateLimiter.getDefault().setRate("parldok.thueringer-landtag.de", 1, 1);
 
         String sOut = "/storage/projects/abrami/GerParCor/pdf/Thueringen/";
         new File(sOut).mkdir();
 
-        String sSession = "z3wneg1twsedxlcmqojm2x2s";
+        // the client opens the ASP.NET sessions itself and replaces them when they expire
+        ParlDokClient pClient = new ParlDokClient("https://parldok.thueringer-landtag.de/ParlDok", 4)
+                .cookie("acceptgrt", "1")
+                .param("PDFSelect", "1");
 
         for(int iPeriode=7; iPeriode<=7; iPeriode++){
-            int a = 1;
-            AtomicBoolean isRunning = new AtomicBoolean(true);
-            while (isRunning.get()) {
-
-                String sOutPath = sOut + iPeriode + "/";
-                new File(sOutPath).mkdir();
-
-                Map<String, String> cookies = new HashMap<>();
-                cookies.put("acceptgrt", "1");
 
-                cookies.put("ASP.NET_SessionId", sSession);
-                try {
-
-                    try {
-                        Thread.sleep(1000l);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+            String sOutPath = sOut + iPeriode + "/";
+            new File(sOutPath).mkdir();
 
-                    Document pElement = Jsoup.connect("https://parldok.thueringer-landtag.de/ParlDok/dokumentennummer?LegislaturPeriodenNummer=" + iPeriode + "&DokumentenArtId=3&PDFSelect=1&DokumentenNummer=" + a).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6").cookies(cookies).followRedirects(true).post();
+            pClient.enumerate(iPeriode, 3, 1, (iNumber, pElement) -> {
 
-                    int finalA = a;
-                    if(pElement.select("div.col-12 a").size()==0){
-                        isRunning.set(false);
-                    }
-                    pElement.select("div.col-12 a").forEach(el -> {
-
-                        String sURL = el.attr("href");
+                if(pElement.select("div.col-12 a").size()==0){
+                    return false;
+                }
+                pElement.select("div.col-12 a").forEach(el -> {
 
-                        try {
+                    String sURL = el.attr("href");
 
-                            if (!el.text().contains("Vorgang")) {
-                                File dFile = new File(sOutPath + finalA+"_"+pElement.select(".row .resultinfo .row").get(0).text().replace("Dokumentdatum: ", "") + ".pdf");
-                                if(!dFile.exists()) {
-                                    FileUtils.downloadFile(dFile, "https://parldok.thueringer-landtag.de" + sURL);
-                                }
-                            }
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            isRunning.set(false);
+                    if (!el.text().contains("Vorgang")) {
+                        File dFile = new File(sOutPath + iNumber+"_"+pElement.select(".row .resultinfo .row").get(0).text().replace("Dokumentdatum: ", "") + ".pdf");
+                        if(!dFile.exists()) {
+                            DownloadEngine.getDefault().submit(dFile, pClient.resolve(sURL));
                         }
-
-                    });
-
-
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    try {
-                        Thread.sleep(10000l);
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
                     }
-                }
 
-                a++;
-            }
+                });
+                return true;
+
+            });
         }
 
+        DownloadEngine.getDefault().awaitCompletion();
 
     }
 
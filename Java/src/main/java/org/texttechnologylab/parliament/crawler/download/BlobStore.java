@@ -0,0 +1,297 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class for a content-addressed store of the downloaded documents.
+ * Every document is stored once under its SHA-256 hash (blobs/ab/cd/abcd...), the manifest maps
+ * (parliament, period, session) to hash, URL, size and fetch time.
+ * The target file of a download becomes a hard link to the blob, so the crawlers and later stages
+ * keep their paths while identical documents use the disk only once. Linked files must therefore never
+ * be written in place; the DownloadEngine replaces them with a new file.
+ * The directory can be set with -Dgerparcor.store.dir
+ */
+public class BlobStore {
+
+    public static final String MANIFEST = "manifest.tsv";
+
+    private static BlobStore pDefault = null;
+
+    private final File pDirectory;
+
+    private final Map<String, Entry> pEntries = new LinkedHashMap<>(0);
+
+    /**
+     * Method to get the store shared by all crawlers of this JVM
+     * @return
+     */
+    public static synchronized BlobStore getDefault() {
+        if (pDefault == null) {
+            try {
+                pDefault = new BlobStore(new File(System.getProperty("gerparcor.store.dir", System.getProperty("java.io.tmpdir") + "/gerparcor/store")));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return pDefault;
+    }
+
+    /**
+     * Constructor
+     * @param pDirectory
+     * @throws IOException if the manifest cannot be read
+     */
+    public BlobStore(File pDirectory) throws IOException {
+        this.pDirectory = pDirectory;
+        new File(pDirectory, "blobs").mkdirs();
+        File pManifest = new File(pDirectory, MANIFEST);
+        if (pManifest.exists()) {
+            try (BufferedReader pReader = Files.newBufferedReader(pManifest.toPath(), StandardCharsets.UTF_8)) {
+                String sLine;
+                while ((sLine = pReader.readLine()) != null) {
+                    Entry pEntry = Entry.parse(sLine);
+                    if (pEntry != null) {
+                        pEntries.put(pEntry.getKey(), pEntry);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to create the digest which is updated while a document is written
+     * @return
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Method to convert a digest into the hash of a blob
+     * @param pDigest
+     * @return
+     */
+    public static String toHex(MessageDigest pDigest) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : pDigest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method to add a file whose hash was computed while it was written
+     * @param pFile the downloaded file, it is replaced by a link to the blob
+     * @param sHash
+     * @param sParliament
+     * @param sPeriod
+     * @param sSession
+     * @param sURL
+     * @return
+     * @throws IOException
+     */
+    public Entry add(File pFile, String sHash, String sParliament, String sPeriod, String sSession, String sURL) throws IOException {
+
+        long lSize = pFile.length();
+        File pBlob = getFile(sHash);
+
+        boolean bNew;
+        synchronized (this) {
+            bNew = !pBlob.exists();
+            if (bNew) {
+                // the new blob shares the data of the file, on another file system it is copied
+                pBlob.getParentFile().mkdirs();
+                try {
+                    Files.createLink(pBlob.toPath(), pFile.toPath());
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(pFile.toPath(), pBlob.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+
+        if (!bNew) {
+            // a duplicate is replaced by a link to the blob, on another file system the copy is kept
+            File pTemp = new File(pFile.getAbsolutePath() + ".link");
+            try {
+                Files.deleteIfExists(pTemp.toPath());
+                Files.createLink(pTemp.toPath(), pBlob.toPath());
+                Files.move(pTemp.toPath(), pFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | UnsupportedOperationException e) {
+                pTemp.delete();
+            }
+        }
+
+        Entry pEntry = new Entry(sParliament, sPeriod, sSession, sHash, sURL, lSize, System.currentTimeMillis());
+        synchronized (this) {
+            pEntries.put(pEntry.getKey(), pEntry);
+            try (Writer pWriter = new OutputStreamWriter(new FileOutputStream(new File(pDirectory, MANIFEST), true), StandardCharsets.UTF_8)) {
+                pWriter.write(pEntry.toString() + "\n");
+            }
+        }
+        return pEntry;
+
+    }
+
+    /**
+     * Method to add an existing file, the hash is computed while reading it
+     * @param pFile
+     * @param sParliament
+     * @param sPeriod
+     * @param sSession
+     * @param sURL
+     * @return
+     * @throws IOException
+     */
+    public Entry add(File pFile, String sParliament, String sPeriod, String sSession, String sURL) throws IOException {
+        MessageDigest pDigest = newDigest();
+        try (InputStream pInput = new DigestInputStream(new FileInputStream(pFile), pDigest)) {
+            byte[] buffer = new byte[64 * 1024];
+            while (pInput.read(buffer) != -1) {
+                // hash only
+            }
+        }
+        return add(pFile, toHex(pDigest), sParliament, sPeriod, sSession, sURL);
+    }
+
+    /**
+     * Method to get the blob of a hash
+     * @param sHash
+     * @return
+     */
+    public File getFile(String sHash) {
+        return new File(pDirectory, "blobs/" + sHash.substring(0, 2) + "/" + sHash.substring(2, 4) + "/" + sHash);
+    }
+
+    /**
+     * Method to check if a document is stored
+     * @param sHash
+     * @return
+     */
+    public boolean contains(String sHash) {
+        return getFile(sHash).exists();
+    }
+
+    /**
+     * Method to get the latest entry of a session
+     * @param sParliament
+     * @param sPeriod
+     * @param sSession
+     * @return null if the session was not downloaded
+     */
+    public synchronized Entry get(String sParliament, String sPeriod, String sSession) {
+        return pEntries.get(sParliament + "\t" + sPeriod + "\t" + sSession);
+    }
+
+    /**
+     * Method to get the latest entries of all sessions
+     * @return
+     */
+    public synchronized Collection<Entry> getEntries() {
+        return new ArrayList<>(pEntries.values());
+    }
+
+    /**
+     * Class for a line of the manifest
+     */
+    public static class Entry {
+
+        private final String sParliament;
+        private final String sPeriod;
+        private final String sSession;
+        private final String sHash;
+        private final String sURL;
+        private final long lSize;
+        private final long lTime;
+
+        public Entry(String sParliament, String sPeriod, String sSession, String sHash, String sURL, long lSize, long lTime) {
+            this.sParliament = sParliament;
+            this.sPeriod = sPeriod;
+            this.sSession = sSession;
+            this.sHash = sHash;
+            this.sURL = sURL;
+            this.lSize = lSize;
+            this.lTime = lTime;
+        }
+
+        static Entry parse(String sLine) {
+            String[] sSplit = sLine.split("\t", -1);
+            if (sSplit.length != 7) {
+                return null;
+            }
+            try {
+                return new Entry(sSplit[0], sSplit[1], sSplit[2], sSplit[3], sSplit[4], Long.parseLong(sSplit[5]), Long.parseLong(sSplit[6]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        String getKey() {
+            return sParliament + "\t" + sPeriod + "\t" + sSession;
+        }
+
+        public String getParliament() {
+            return sParliament;
+        }
+
+        public String getPeriod() {
+            return sPeriod;
+        }
+
+        public String getSession() {
+            return sSession;
+        }
+
+        public String getHash() {
+            return sHash;
+        }
+
+        public String getURL() {
+            return sURL;
+        }
+
+        public long getSize() {
+            return lSize;
+        }
+
+        public long getTime() {
+            return lTime;
+        }
+
+        @Override
+        public String toString() {
+            List<String> sValues = new ArrayList<>(0);
+            sValues.add(sParliament);
+            sValues.add(sPeriod);
+            sValues.add(sSession);
+            sValues.add(sHash);
+            sValues.add(sURL);
+            sValues.add(String.valueOf(lSize));
+            sValues.add(String.valueOf(lTime));
+            return String.join("\t", sValues);
+        }
+
+    }
+
+}
@@ -0,0 +1,231 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class for an adaptive congestion control per host (additive increase, multiplicative decrease).
+ * Every host has a window of parallel requests. A successful request raises the window by one per
+ * window of successes, a 429 or 503 response halves it and pauses the host for the time of the
+ * Retry-After header (or an exponential backoff, if the server does not send one).
+ */
+public class CongestionController {
+
+    /**
+     * Backoff after the first throttled response without Retry-After
+     */
+    public static final long DEFAULT_BACKOFF = 10000;
+
+    /**
+     * Upper bound of the backoff
+     */
+    public static final long MAX_BACKOFF = 300000;
+
+    private static CongestionController pDefault = null;
+
+    private final Map<String, HostWindow> pWindows = new ConcurrentHashMap<>(0);
+
+    private final double dInitialWindow;
+
+    private final double dMaxWindow;
+
+    /**
+     * Method to get the controller shared by all crawlers of this JVM
+     * @return
+     */
+    public static synchronized CongestionController getDefault() {
+        if (pDefault == null) {
+            pDefault = new CongestionController(2, Integer.getInteger("gerparcor.congestion.max", DownloadEngine.DEFAULT_WORKERS));
+        }
+        return pDefault;
+    }
+
+    /**
+     * Constructor
+     * @param dInitialWindow parallel requests per host at the start
+     * @param dMaxWindow upper bound of parallel requests per host
+     */
+    public CongestionController(double dInitialWindow, double dMaxWindow) {
+        this.dInitialWindow = Math.max(1, dInitialWindow);
+        this.dMaxWindow = Math.max(this.dInitialWindow, dMaxWindow);
+    }
+
+    /**
+     * Method to wait until a request to the host may be sent. Each call must be followed by release.
+     * @param sHost
+     * @throws InterruptedException
+     */
+    public void acquire(String sHost) throws InterruptedException {
+        getWindow(sHost).acquire();
+    }
+
+    /**
+     * Method to wait until a pause of the host is over, for requests which got their slot before the pause started
+     * @param sHost
+     * @throws InterruptedException
+     */
+    public void awaitPause(String sHost) throws InterruptedException {
+        getWindow(sHost).awaitPause();
+    }
+
+    /**
+     * Method to return the slot of a finished request
+     * @param sHost
+     */
+    public void release(String sHost) {
+        getWindow(sHost).release();
+    }
+
+    /**
+     * Method to report a successful response
+     * @param sHost
+     */
+    public void onSuccess(String sHost) {
+        getWindow(sHost).increase();
+    }
+
+    /**
+     * Method to report a response with status 429 or 503
+     * @param sHost
+     * @param lRetryAfter requested delay in milliseconds, -1 if unknown
+     * @return the time the host is paused in milliseconds
+     */
+    public long onThrottle(String sHost, long lRetryAfter) {
+        return getWindow(sHost).decrease(lRetryAfter);
+    }
+
+    /**
+     * Method to get the current number of parallel requests allowed for a host
+     * @param sHost
+     * @return
+     */
+    public int getLimit(String sHost) {
+        return getWindow(sHost).getLimit();
+    }
+
+    /**
+     * Method to get the number of running requests of a host
+     * @param sHost
+     * @return
+     */
+    public int getInFlight(String sHost) {
+        return getWindow(sHost).getInFlight();
+    }
+
+    private HostWindow getWindow(String sHost) {
+        return pWindows.computeIfAbsent(sHost, h -> new HostWindow(dInitialWindow, dMaxWindow));
+    }
+
+    /**
+     * Window of a single host. A lock instead of synchronized keeps waiting virtual threads off their carrier thread.
+     */
+    static class HostWindow {
+
+        private final double dMaxWindow;
+
+        private final ReentrantLock pLock = new ReentrantLock();
+
+        private final Condition pChanged = pLock.newCondition();
+
+        private double dWindow;
+
+        private int iInFlight = 0;
+
+        private long lPausedUntil = 0;
+
+        private int iThrottled = 0;
+
+        HostWindow(double dInitialWindow, double dMaxWindow) {
+            this.dWindow = dInitialWindow;
+            this.dMaxWindow = dMaxWindow;
+        }
+
+        int getLimit() {
+            pLock.lock();
+            try {
+                return Math.max(1, (int) dWindow);
+            } finally {
+                pLock.unlock();
+            }
+        }
+
+        int getInFlight() {
+            pLock.lock();
+            try {
+                return iInFlight;
+            } finally {
+                pLock.unlock();
+            }
+        }
+
+        void acquire() throws InterruptedException {
+            pLock.lock();
+            try {
+                while (true) {
+                    long lPause = lPausedUntil - System.currentTimeMillis();
+                    if (lPause > 0) {
+                        pChanged.await(lPause, TimeUnit.MILLISECONDS);
+                    } else if (iInFlight >= getLimit()) {
+                        pChanged.await();
+                    } else {
+                        iInFlight++;
+                        return;
+                    }
+                }
+            } finally {
+                pLock.unlock();
+            }
+        }
+
+        void awaitPause() throws InterruptedException {
+            pLock.lock();
+            try {
+                long lPause;
+                while ((lPause = lPausedUntil - System.currentTimeMillis()) > 0) {
+                    pChanged.await(lPause, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                pLock.unlock();
+            }
+        }
+
+        void release() {
+            pLock.lock();
+            try {
+                iInFlight = Math.max(0, iInFlight - 1);
+                pChanged.signalAll();
+            } finally {
+                pLock.unlock();
+            }
+        }
+
+        void increase() {
+            pLock.lock();
+            try {
+                iThrottled = 0;
+                dWindow = Math.min(dMaxWindow, dWindow + 1.0 / dWindow);
+                pChanged.signalAll();
+            } finally {
+                pLock.unlock();
+            }
+        }
+
+        long decrease(long lRetryAfter) {
+            pLock.lock();
+            try {
+                dWindow = Math.max(1, dWindow / 2);
+                iThrottled++;
+                long lPause = lRetryAfter >= 0 ? lRetryAfter : Math.min(MAX_BACKOFF, DEFAULT_BACKOFF << Math.min(iThrottled - 1, 5));
+                lPausedUntil = Math.max(lPausedUntil, System.currentTimeMillis() + lPause);
+                return lPause;
+            } finally {
+                pLock.unlock();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,273 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Class for a persistent crawl frontier.
+ * The frontier records the discovered URLs, their state and the cursors of a crawler in an append-only log,
+ * so a restarted crawl can skip finished work without any request.
+ * Each line of the log is one event:
+ * <pre>
+ * U &lt;tab&gt; STATE &lt;tab&gt; URL
+ * C &lt;tab&gt; KEY &lt;tab&gt; VALUE
+ * </pre>
+ * When the frontier is opened the log is replayed and compacted. Only lines which end with a line break are replayed,
+ * so an incomplete last line of a crashed run is dropped.
+ */
+public class CrawlFrontier implements Closeable {
+
+    /**
+     * States of an URL
+     */
+    public enum State {
+        DISCOVERED, DONE, FAILED
+    }
+
+    private final File pLog;
+
+    private final Map<String, State> pStates = new LinkedHashMap<>(0);
+
+    private final Map<String, String> pCursors = new LinkedHashMap<>(0);
+
+    private Writer pWriter;
+
+    /**
+     * Constructor
+     * @param pLog file of the log, it is created if it does not exist
+     * @throws IOException
+     */
+    public CrawlFrontier(File pLog) throws IOException {
+        this.pLog = pLog;
+        if (pLog.getParentFile() != null) {
+            pLog.getParentFile().mkdirs();
+        }
+        if (pLog.exists()) {
+            replay();
+        }
+        compact();
+    }
+
+    /**
+     * Method to add an URL to the frontier
+     * @param sURL
+     * @return true if the URL was not known before
+     * @throws IOException
+     */
+    public synchronized boolean discover(String sURL) throws IOException {
+        if (pStates.containsKey(sURL)) {
+            return false;
+        }
+        setState(sURL, State.DISCOVERED);
+        return true;
+    }
+
+    /**
+     * Method to mark an URL as finished
+     * @param sURL
+     * @throws IOException
+     */
+    public void done(String sURL) throws IOException {
+        setState(sURL, State.DONE);
+    }
+
+    /**
+     * Method to mark an URL as failed, it will be returned by getPending again
+     * @param sURL
+     * @throws IOException
+     */
+    public void failed(String sURL) throws IOException {
+        setState(sURL, State.FAILED);
+    }
+
+    /**
+     * Method to set the state of an URL
+     * @param sURL
+     * @param pState
+     * @throws IOException
+     */
+    public synchronized void setState(String sURL, State pState) throws IOException {
+        if (pStates.get(sURL) == pState) {
+            return;
+        }
+        pStates.put(sURL, pState);
+        append("U", pState.name(), sURL);
+    }
+
+    /**
+     * Method to get the state of an URL
+     * @param sURL
+     * @return null if the URL is unknown
+     */
+    public synchronized State getState(String sURL) {
+        return pStates.get(sURL);
+    }
+
+    /**
+     * Method to check if an URL is finished
+     * @param sURL
+     * @return
+     */
+    public synchronized boolean isDone(String sURL) {
+        return pStates.get(sURL) == State.DONE;
+    }
+
+    /**
+     * Method to get all URLs which are discovered or failed, in the order of their discovery
+     * @return
+     */
+    public synchronized List<String> getPending() {
+        return pStates.entrySet().stream().filter(e -> e.getValue() != State.DONE).map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    /**
+     * Method to store a cursor of the crawler
+     * @param sKey
+     * @param sValue
+     * @throws IOException
+     */
+    public synchronized void setCursor(String sKey, String sValue) throws IOException {
+        if (sValue.equals(pCursors.get(sKey))) {
+            return;
+        }
+        pCursors.put(sKey, sValue);
+        append("C", sKey, sValue);
+    }
+
+    public void setCursor(String sKey, long lValue) throws IOException {
+        setCursor(sKey, String.valueOf(lValue));
+    }
+
+    /**
+     * Method to get a cursor of the crawler
+     * @param sKey
+     * @param sDefault value if the cursor was never set
+     * @return
+     */
+    public synchronized String getCursor(String sKey, String sDefault) {
+        return pCursors.getOrDefault(sKey, sDefault);
+    }
+
+    public long getCursor(String sKey, long lDefault) {
+        return Long.parseLong(getCursor(sKey, String.valueOf(lDefault)));
+    }
+
+    /**
+     * Method to write the log to the disk
+     * @throws IOException
+     */
+    public synchronized void checkpoint() throws IOException {
+        pWriter.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        pWriter.close();
+    }
+
+    private void append(String sType, String sKey, String sValue) throws IOException {
+        pWriter.write(sType + "\t" + escape(sKey) + "\t" + escape(sValue) + "\n");
+        // every event is handed to the OS, so only a crash of the machine can lose the last events
+        pWriter.flush();
+    }
+
+    /**
+     * Method to read the log of a former run
+     * @throws IOException
+     */
+    private void replay() throws IOException {
+        // the log is read in raw form, since a reader would also return a last line which was cut off
+        String sLog = new String(Files.readAllBytes(pLog.toPath()), StandardCharsets.UTF_8);
+        int iStart = 0;
+        int iEnd;
+        while ((iEnd = sLog.indexOf('\n', iStart)) >= 0) {
+            String sLine = sLog.substring(iStart, iEnd);
+            iStart = iEnd + 1;
+            String[] sSplit = sLine.split("\t", -1);
+            if (sSplit.length != 3) {
+                continue;
+            }
+            String sKey = unescape(sSplit[1]);
+            String sValue = unescape(sSplit[2]);
+            switch (sSplit[0]) {
+                case "U":
+                    try {
+                        pStates.put(sValue, State.valueOf(sKey));
+                    } catch (IllegalArgumentException e) {
+                        // unknown state
+                    }
+                    break;
+                case "C":
+                    pCursors.put(sKey, sValue);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Method to replace the log with the current state, so the log does not grow with every run
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        File pTemp = new File(pLog.getAbsolutePath() + ".tmp");
+        try (FileOutputStream pStream = new FileOutputStream(pTemp);
+             Writer pTempWriter = new BufferedWriter(new OutputStreamWriter(pStream, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, String> pCursor : pCursors.entrySet()) {
+                pTempWriter.write("C\t" + escape(pCursor.getKey()) + "\t" + escape(pCursor.getValue()) + "\n");
+            }
+            for (Map.Entry<String, State> pState : pStates.entrySet()) {
+                pTempWriter.write("U\t" + pState.getValue().name() + "\t" + escape(pState.getKey()) + "\n");
+            }
+            pTempWriter.flush();
+            pStream.getFD().sync();
+        }
+        Files.move(pTemp.toPath(), pLog.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        pWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pLog, true), StandardCharsets.UTF_8));
+    }
+
+    static String escape(String sValue) {
+        return sValue.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String unescape(String sValue) {
+        if (sValue.indexOf('\\') < 0) {
+            return sValue;
+        }
+        StringBuilder sb = new StringBuilder(sValue.length());
+        for (int i = 0; i < sValue.length(); i++) {
+            char c = sValue.charAt(i);
+            if (c == '\\' && i + 1 < sValue.length()) {
+                char n = sValue.charAt(++i);
+                switch (n) {
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    default:
+                        sb.append(n);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+}
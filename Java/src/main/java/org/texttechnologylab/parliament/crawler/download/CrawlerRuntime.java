@@ -0,0 +1,186 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.HttpConnection;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class for the thread model of the crawlers.
+ * With -Dgerparcor.threads=virtual every task runs in its own virtual thread (Java 21 or newer, see the
+ * java21 profile in the pom), otherwise a fixed pool of platform threads is used.
+ * The virtual threads are created via reflection, so the project still compiles for Java 8.
+ * In both modes the number of requests per host is limited by the HostRateLimiter and the CongestionController.
+ */
+public final class CrawlerRuntime {
+
+    public static final String PROPERTY = "gerparcor.threads";
+
+    /**
+     * Base URL of a ReplayServer, all requests of the DownloadEngine, the PageCache and the connections of connect are sent to it
+     */
+    public static final String REPLAY = "gerparcor.replay";
+
+    private static final boolean VIRTUAL_AVAILABLE = findVirtualThreads();
+
+    private CrawlerRuntime() {
+    }
+
+    /**
+     * Method to check if the JVM supports virtual threads
+     * @return
+     */
+    public static boolean isVirtualAvailable() {
+        return VIRTUAL_AVAILABLE;
+    }
+
+    /**
+     * Method to check if the virtual thread mode is selected and supported
+     * @return
+     */
+    public static boolean useVirtualThreads() {
+        boolean bSelected = "virtual".equalsIgnoreCase(System.getProperty(PROPERTY, "platform"));
+        if (bSelected && !VIRTUAL_AVAILABLE) {
+            System.out.println("Virtual threads need Java 21, using platform threads");
+        }
+        return bSelected && VIRTUAL_AVAILABLE;
+    }
+
+    /**
+     * Method to create the executor of the selected mode
+     * @param sName prefix of the thread names
+     * @param iThreads number of platform threads, ignored for virtual threads
+     * @return
+     */
+    public static ExecutorService newExecutor(String sName, int iThreads) {
+        return newExecutor(sName, iThreads, useVirtualThreads());
+    }
+
+    /**
+     * Method to create an executor
+     * @param sName prefix of the thread names
+     * @param iThreads number of platform threads, ignored for virtual threads
+     * @param bVirtual true for one virtual thread per task
+     * @return
+     */
+    public static ExecutorService newExecutor(String sName, int iThreads, boolean bVirtual) {
+        if (bVirtual) {
+            return newVirtualExecutor(sName);
+        }
+        return Executors.newFixedThreadPool(iThreads, platformThreadFactory(sName));
+    }
+
+    /**
+     * Method to create an executor which starts a virtual thread for every task
+     * @param sName prefix of the thread names
+     * @return
+     */
+    public static ExecutorService newVirtualExecutor(String sName) {
+        try {
+            Object pBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> pBuilderClass = Class.forName("java.lang.Thread$Builder");
+            pBuilder = pBuilderClass.getMethod("name", String.class, long.class).invoke(pBuilder, sName + "-", 1L);
+            ThreadFactory pFactory = (ThreadFactory) pBuilderClass.getMethod("factory").invoke(pBuilder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, pFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * Method to create a factory for daemon platform threads
+     * @param sName prefix of the thread names
+     * @return
+     */
+    public static ThreadFactory platformThreadFactory(String sName) {
+        AtomicInteger iThread = new AtomicInteger(0);
+        return r -> {
+            Thread t = new Thread(r, sName + "-" + iThread.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Method to get the URL which is really requested.
+     * With -Dgerparcor.replay=http://host:port the URL is mapped to the ReplayServer (http://host:port/&lt;host&gt;/&lt;path&gt;),
+     * otherwise it is returned unchanged.
+     * @param sURL
+     * @return
+     */
+    public static String resolve(String sURL) {
+        String sReplay = System.getProperty(REPLAY);
+        if (sReplay == null || sReplay.isEmpty() || sURL.startsWith(sReplay)) {
+            return sURL;
+        }
+        int iScheme = sURL.indexOf("://");
+        return sReplay.replaceAll("/+$", "") + "/" + (iScheme >= 0 ? sURL.substring(iScheme + 3) : sURL);
+    }
+
+    /**
+     * Method to check if the requests are sent to a ReplayServer
+     * @return
+     */
+    public static boolean isReplay() {
+        String sReplay = System.getProperty(REPLAY);
+        return sReplay != null && !sReplay.isEmpty();
+    }
+
+    /**
+     * Method to open a connection to a page of a portal, the crawlers request all their pages with it.
+     * With -Dgerparcor.replay the request is sent to the ReplayServer when it is executed, the response keeps
+     * the URL of the portal, so the links of the page are resolved against the portal and not against the server.
+     * @param sURL
+     * @return
+     */
+    public static Connection connect(String sURL) {
+        if (!isReplay()) {
+            return Jsoup.connect(sURL);
+        }
+        return new ReplayConnection().url(sURL);
+    }
+
+    private static boolean findVirtualThreads() {
+        try {
+            Method pMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return pMethod != null;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Class for a connection which is answered by the ReplayServer, get, post and execute all run through execute
+     */
+    private static class ReplayConnection extends HttpConnection {
+
+        @Override
+        public Connection.Response execute() throws IOException {
+            URL pURL = request().url();
+            URL pReplay = new URL(resolve(pURL.toString()));
+            request().url(pReplay);
+            try {
+                Connection.Response rResponse = super.execute();
+                // the URL of the response is encoded and may be redirected, so the prefix of the server is replaced,
+                // unless the caller already resolved the URL itself (PageCache)
+                String sServer = System.getProperty(REPLAY).replaceAll("/+$", "") + "/";
+                String sResponse = rResponse.url().toString();
+                if (sResponse.startsWith(sServer) && !pURL.toString().startsWith(sServer)) {
+                    rResponse.url(new URL(pURL.getProtocol() + "://" + sResponse.substring(sServer.length())));
+                }
+                return rResponse;
+            } finally {
+                request().url(pURL);
+            }
+        }
+
+    }
+
+}
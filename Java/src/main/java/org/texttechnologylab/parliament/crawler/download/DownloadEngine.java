@@ -0,0 +1,861 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import org.texttechnologylab.parliament.crawler.metrics.CrawlerMetrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class for the shared download engine of all crawlers.
+ * Jobs are executed by a bounded pool of workers; if the queue is full the submitting crawler
+ * runs the job itself, which throttles discovery to the speed of the downloads.
+ * With -Dgerparcor.threads=virtual every job runs in its own virtual thread instead (see CrawlerRuntime).
+ * Connections are reused via the keep-alive cache of the JDK and the content is streamed with FileChannel.transferFrom
+ * into a temporary file, which is synced, validated and atomically renamed to the target. An existing target is
+ * therefore always complete, and crawlers can skip it after a restart.
+ * If the server supports ranges, a broken transfer keeps its partial file and the validators (ETag, Last-Modified)
+ * in a .download.properties file, and the next attempt, also after a restart, only requests the missing bytes (If-Range).
+ * Every request waits for the HostRateLimiter, so crawlers do not need to sleep between downloads.
+ * The number of parallel requests per host is adapted by the CongestionController, responses with
+ * status 429 or 503 are retried after the delay the server asked for.
+ * Requests, bytes, errors, latencies and the limits of every host are recorded in the CrawlerMetrics.
+ */
+public class DownloadEngine {
+
+    public static final String DEFAULT_USER_AGENT = "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/116.0";
+
+    /**
+     * Number of parallel downloads of the default engine, can be set with -Dgerparcor.download.threads
+     */
+    public static final int DEFAULT_WORKERS = Integer.getInteger("gerparcor.download.threads", CrawlerRuntime.useVirtualThreads() ? 256 : 8);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of bytes of a single FileChannel.transferFrom call
+     */
+    private static final long TRANSFER_SIZE = 1024 * 1024;
+
+    private static final int MAX_REDIRECTS = 5;
+
+    /**
+     * Number of attempts of a download which is answered with 429 or 503
+     */
+    private static final int MAX_ATTEMPTS = 6;
+
+    /**
+     * Number of attempts of a download which is transferred, but broken
+     */
+    private static final int MAX_INVALID_ATTEMPTS = 2;
+
+    /**
+     * Number of times a broken transfer is continued with a range request
+     */
+    private static final int MAX_RESUMES = 5;
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static DownloadEngine pDefault = null;
+
+    private final ExecutorService pExecutor;
+
+    /**
+     * Limits the running downloads of the virtual thread mode, null for the pool of platform threads
+     */
+    private final Semaphore pSlots;
+
+    private final AtomicInteger iPending = new AtomicInteger(0);
+
+    private HostRateLimiter pRateLimiter = HostRateLimiter.getDefault();
+
+    private CongestionController pCongestion = CongestionController.getDefault();
+
+    private BlobStore pBlobStore = null;
+
+    private Quarantine pQuarantine = null;
+
+    private CrawlerMetrics pMetrics = CrawlerMetrics.getDefault();
+
+    /**
+     * Hosts whose gauges are registered in the metrics
+     */
+    private final Set<String> pHosts = ConcurrentHashMap.newKeySet();
+
+    private int iConnectTimeout = 30000;
+
+    private int iReadTimeout = 300000;
+
+    /**
+     * Method to get the engine shared by all crawlers of this JVM
+     * @return
+     */
+    public static synchronized DownloadEngine getDefault() {
+        if (pDefault == null) {
+            pDefault = new DownloadEngine(DEFAULT_WORKERS);
+        }
+        return pDefault;
+    }
+
+    /**
+     * Constructor
+     * @param iWorkers number of parallel downloads
+     */
+    public DownloadEngine(int iWorkers) {
+        this(iWorkers, iWorkers * 64);
+    }
+
+    /**
+     * Constructor
+     * @param iWorkers number of parallel downloads
+     * @param iQueueSize number of jobs waiting for a worker
+     */
+    public DownloadEngine(int iWorkers, int iQueueSize) {
+        this(iWorkers, iQueueSize, CrawlerRuntime.useVirtualThreads());
+    }
+
+    /**
+     * Constructor
+     * @param iWorkers number of parallel downloads
+     * @param iQueueSize number of jobs waiting for a worker, ignored for virtual threads
+     * @param bVirtual true to run every download in its own virtual thread
+     */
+    public DownloadEngine(int iWorkers, int iQueueSize, boolean bVirtual) {
+
+        // keep one idle connection per worker and host alive (the default of the JDK is 5)
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(Math.max(5, iWorkers)));
+        }
+
+        if (bVirtual) {
+            // submit blocks while all slots are taken, like the CallerRunsPolicy of the pool
+            pExecutor = CrawlerRuntime.newVirtualExecutor("download");
+            pSlots = new Semaphore(iWorkers);
+        } else {
+            pExecutor = new ThreadPoolExecutor(iWorkers, iWorkers, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(iQueueSize),
+                    CrawlerRuntime.platformThreadFactory("download"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            pSlots = null;
+        }
+
+    }
+
+    public void setRateLimiter(HostRateLimiter pRateLimiter) {
+        this.pRateLimiter = pRateLimiter;
+    }
+
+    public void setCongestionController(CongestionController pCongestion) {
+        this.pCongestion = pCongestion;
+    }
+
+    public void setBlobStore(BlobStore pBlobStore) {
+        this.pBlobStore = pBlobStore;
+    }
+
+    /**
+     * Method to get the store of the jobs with a store key, the default store is opened on first use
+     * @return
+     */
+    public synchronized BlobStore getBlobStore() {
+        if (pBlobStore == null) {
+            pBlobStore = BlobStore.getDefault();
+        }
+        return pBlobStore;
+    }
+
+    public void setQuarantine(Quarantine pQuarantine) {
+        this.pQuarantine = pQuarantine;
+    }
+
+    /**
+     * Method to get the quarantine of broken downloads, the default quarantine is opened on first use
+     * @return
+     */
+    public synchronized Quarantine getQuarantine() {
+        if (pQuarantine == null) {
+            pQuarantine = Quarantine.getDefault();
+        }
+        return pQuarantine;
+    }
+
+    public void setMetrics(CrawlerMetrics pMetrics) {
+        this.pMetrics = pMetrics;
+        this.pHosts.clear();
+    }
+
+    public void setConnectTimeout(int iConnectTimeout) {
+        this.iConnectTimeout = iConnectTimeout;
+    }
+
+    public void setReadTimeout(int iReadTimeout) {
+        this.iReadTimeout = iReadTimeout;
+    }
+
+    /**
+     * Method to submit a download, which will be executed by one of the workers
+     * @param pTarget
+     * @param sURL
+     * @return
+     */
+    public Future<File> submit(File pTarget, String sURL) {
+        return submit(new DownloadJob(pTarget, sURL));
+    }
+
+    /**
+     * Method to submit a download, which will be executed by one of the workers
+     * @param pJob
+     * @return
+     */
+    public Future<File> submit(DownloadJob pJob) {
+        iPending.incrementAndGet();
+        if (pSlots != null) {
+            pSlots.acquireUninterruptibly();
+        }
+        return pExecutor.submit(() -> {
+            try {
+                return download(pJob);
+            } catch (IOException e) {
+                System.out.println(pJob.getURL() + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage());
+                throw e;
+            } finally {
+                if (pSlots != null) {
+                    pSlots.release();
+                }
+                if (iPending.decrementAndGet() == 0) {
+                    synchronized (iPending) {
+                        iPending.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Method to wait until all submitted downloads are finished
+     * @throws InterruptedException
+     */
+    public void awaitCompletion() throws InterruptedException {
+        synchronized (iPending) {
+            while (iPending.get() > 0) {
+                iPending.wait(1000);
+            }
+        }
+    }
+
+    /**
+     * Method to submit the downloads of the retry queue of the quarantine again
+     * @return number of submitted downloads
+     * @throws IOException
+     */
+    public int retryQuarantined() throws IOException {
+        List<DownloadJob> pJobs = getQuarantine().drain();
+        pJobs.forEach(this::submit);
+        return pJobs.size();
+    }
+
+    /**
+     * Method to stop the workers after all submitted downloads are finished
+     */
+    public void shutdown() {
+        pExecutor.shutdown();
+    }
+
+    /**
+     * Method to download a file in the calling thread
+     * @param pTarget
+     * @param sURL
+     * @return
+     * @throws IOException if the document does not exist or the transfer fails
+     */
+    public File download(File pTarget, String sURL) throws IOException {
+        return download(new DownloadJob(pTarget, sURL));
+    }
+
+    /**
+     * Method to download a file in the calling thread
+     * @param pJob
+     * @return
+     * @throws IOException if the document does not exist or the transfer fails
+     */
+    public File download(DownloadJob pJob) throws IOException {
+
+        String sHost = HostRateLimiter.getHost(pJob.getURL());
+        String sParliament = pJob.getParliament();
+        int iInvalid = 0;
+        int iResumes = 0;
+
+        register(sHost);
+
+        for (int iAttempt = 1; ; iAttempt++) {
+
+            long lWait = System.nanoTime();
+            try {
+                pCongestion.acquire(sHost);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + pJob.getURL());
+            }
+            pMetrics.histogram("gerparcor_wait_seconds", "Time a request waited for the congestion window or the rate limiter", "host", sHost, "reason", "congestion").record(System.nanoTime() - lWait);
+
+            long lStart = System.nanoTime();
+            String sResult = "ok";
+            try {
+                File pTarget = transfer(pJob);
+                pCongestion.onSuccess(sHost);
+                pMetrics.counter("gerparcor_bytes_total", "Bytes of all downloaded documents", "host", sHost, "parliament", sParliament).add(pTarget.length());
+                return pTarget;
+            } catch (HttpStatusException e) {
+                sResult = "http_" + e.getStatus();
+                if (!e.isThrottled() || iAttempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                long lPause = pCongestion.onThrottle(sHost, e.getRetryAfter());
+                pMetrics.counter("gerparcor_throttled_total", "Responses with status 429 or 503", "host", sHost).increment();
+                System.out.println(e.getURL() + "\t" + e.getStatus() + "\tretry in " + lPause + " ms, " + pCongestion.getLimit(sHost) + " parallel requests");
+            } catch (InvalidDocumentException e) {
+                sResult = "invalid";
+                File pTemp = getTemporaryFile(pJob);
+                if (++iInvalid >= MAX_INVALID_ATTEMPTS) {
+                    getResumeFile(pJob).delete();
+                    getQuarantine().add(pTemp, pJob, e.getMessage());
+                    pMetrics.counter("gerparcor_quarantined_total", "Downloads which were moved into the quarantine", "host", sHost, "parliament", sParliament).increment();
+                    throw e;
+                }
+                pTemp.delete();
+                System.out.println(pJob.getURL() + "\tretry\t" + e.getMessage());
+            } catch (FileNotFoundException e) {
+                sResult = "not_found";
+                throw e;
+            } catch (IOException e) {
+                sResult = e.getClass().getSimpleName();
+                if (!getResumeFile(pJob).exists() || !getTemporaryFile(pJob).exists() || ++iResumes > MAX_RESUMES) {
+                    throw e;
+                }
+                System.out.println(pJob.getURL() + "\t" + e.getClass().getSimpleName() + "\tcontinue " + getTemporaryFile(pJob).length() + " bytes");
+            } catch (RuntimeException e) {
+                sResult = e.getClass().getSimpleName();
+                throw e;
+            } finally {
+                pCongestion.release(sHost);
+                pMetrics.histogram("gerparcor_download_seconds", "Duration of a download attempt including the rate limiter", "host", sHost, "parliament", sParliament).record(System.nanoTime() - lStart);
+                pMetrics.counter("gerparcor_requests_total", "Download attempts by result (ok, http_<status>, not_found, invalid or the exception)", "host", sHost, "parliament", sParliament, "result", sResult).increment();
+            }
+
+        }
+
+    }
+
+    /**
+     * Method to register the gauges of a host when it is seen for the first time
+     * @param sHost
+     */
+    private void register(String sHost) {
+        if (pHosts.add(sHost)) {
+            pMetrics.gauge("gerparcor_in_flight", "Running requests", () -> pCongestion.getInFlight(sHost), "host", sHost);
+            pMetrics.gauge("gerparcor_congestion_window", "Parallel requests allowed by the congestion controller", () -> pCongestion.getLimit(sHost), "host", sHost);
+            pMetrics.gauge("gerparcor_rate_limit", "Requests per second allowed by the rate limiter", () -> pRateLimiter.getRate(sHost), "host", sHost);
+        }
+    }
+
+    /**
+     * Method to check if a document exists without downloading it.
+     * A HEAD request is sent; servers which do not support HEAD are asked for the first byte.
+     * Like a download the check waits for the congestion window and is repeated after a 429, 503 or other server error.
+     * @param sURL
+     * @return false if the server answers with 404 or 410
+     * @throws IOException for all other errors
+     */
+    public boolean exists(String sURL) throws IOException {
+
+        String sHost = HostRateLimiter.getHost(sURL);
+        register(sHost);
+
+        for (int iAttempt = 1; ; iAttempt++) {
+            long lRetry = 0;
+            try {
+                pCongestion.acquire(sHost);
+                try {
+                    boolean rExists = probe(sURL);
+                    pCongestion.onSuccess(sHost);
+                    return rExists;
+                } catch (HttpStatusException e) {
+                    // a HEAD request is cheap, so other server errors are repeated as well instead of failing the discovery
+                    if ((!e.isThrottled() && e.getStatus() < 500) || iAttempt >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    if (e.isThrottled()) {
+                        long lPause = pCongestion.onThrottle(sHost, e.getRetryAfter());
+                        pMetrics.counter("gerparcor_throttled_total", "Responses with status 429 or 503", "host", sHost).increment();
+                        System.out.println(e.getURL() + "\t" + e.getStatus() + "\tretry in " + lPause + " ms, " + pCongestion.getLimit(sHost) + " parallel requests");
+                    } else {
+                        lRetry = 1000L * iAttempt;
+                        System.out.println(e.getURL() + "\t" + e.getStatus() + "\tretry in " + lRetry + " ms");
+                    }
+                } finally {
+                    pCongestion.release(sHost);
+                }
+                Thread.sleep(lRetry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + sURL);
+            }
+        }
+
+    }
+
+    /**
+     * Method to send a single request of exists
+     * @param sURL
+     * @return
+     * @throws IOException
+     */
+    private boolean probe(String sURL) throws IOException {
+        try {
+            release(open(new DownloadJob(null, sURL).method("HEAD")));
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (HttpStatusException e) {
+            if (e.getStatus() != HttpURLConnection.HTTP_BAD_METHOD && e.getStatus() != HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+                throw e;
+            }
+        }
+        try {
+            HttpURLConnection pConnection = open(new DownloadJob(null, sURL).header("Range", "bytes=0-0"));
+            pConnection.disconnect();
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Method to send a single request and write the response to the target.
+     * If a partial file of an earlier attempt and its validators exist, only the missing bytes are requested.
+     * @param pJob
+     * @return
+     * @throws IOException
+     */
+    private File transfer(DownloadJob pJob) throws IOException {
+
+        File pTarget = pJob.getTarget();
+        if (pTarget.getParentFile() != null) {
+            pTarget.getParentFile().mkdirs();
+        }
+
+        // the target may be a link into the BlobStore, so it is replaced instead of overwritten
+        File pTemp = getTemporaryFile(pJob);
+        File pResume = getResumeFile(pJob);
+
+        String sValidator = getValidator(pJob, pTemp, pResume);
+        long lOffset = sValidator != null ? pTemp.length() : 0;
+
+        HttpURLConnection pConnection;
+        try {
+            pConnection = open(pJob, lOffset, sValidator);
+        } catch (HttpStatusException e) {
+            if (lOffset > 0 && e.getStatus() == HTTP_RANGE_NOT_SATISFIABLE) {
+                discard(pTemp, pResume);
+                return transfer(pJob);
+            }
+            throw e;
+        }
+
+        boolean bAppend = false;
+        if (pConnection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+            if (getRangeStart(pConnection) != lOffset) {
+                release(pConnection);
+                discard(pTemp, pResume);
+                throw new IOException("Unexpected Content-Range " + pConnection.getHeaderField("Content-Range") + " for URL: " + pJob.getURL());
+            }
+            bAppend = lOffset > 0;
+        }
+
+        // without a validator or with a compressed body a partial file can not be continued
+        boolean bResumable = pConnection.getHeaderField("Content-Encoding") == null
+                && (bAppend || ("bytes".equalsIgnoreCase(pConnection.getHeaderField("Accept-Ranges"))
+                && (pConnection.getHeaderField("ETag") != null || pConnection.getHeaderField("Last-Modified") != null)));
+
+        if (!bAppend) {
+            lOffset = 0;
+            if (bResumable) {
+                saveValidator(pJob, pConnection, pResume);
+            } else {
+                pResume.delete();
+            }
+        }
+
+        MessageDigest pDigest = BlobStore.newDigest();
+        if (bAppend) {
+            System.out.println(pJob.getURL() + "\tresume at " + lOffset + " bytes");
+            digest(pTemp, lOffset, pDigest);
+        }
+
+        try (ReadableByteChannel pSource = new DigestChannel(Channels.newChannel(pConnection.getInputStream()), pDigest);
+             FileChannel pChannel = FileChannel.open(pTemp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            pChannel.truncate(lOffset);
+            long lPosition = lOffset;
+            long lRead;
+            while ((lRead = pChannel.transferFrom(pSource, lPosition, TRANSFER_SIZE)) > 0) {
+                lPosition += lRead;
+            }
+            pChannel.force(true);
+        } catch (IOException e) {
+            if (!bResumable) {
+                pTemp.delete();
+            }
+            throw e;
+        }
+
+        // a connection which was closed early looks like the end of the body to HttpURLConnection
+        long lTotal = getTotalLength(pConnection);
+        if (bResumable && lTotal > 0 && pTemp.length() < lTotal) {
+            throw new IOException("Transfer ended after " + pTemp.length() + " of " + lTotal + " bytes for URL: " + pJob.getURL());
+        }
+
+        // broken files never reach the target, they are retried and finally quarantined by download
+        String sReason = validate(pJob, pConnection, pTemp);
+        if (sReason != null) {
+            pResume.delete();
+            throw new InvalidDocumentException(pJob.getURL(), sReason);
+        }
+
+        Files.move(pTemp.toPath(), pTarget.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(pTarget.getAbsoluteFile().getParentFile());
+        pResume.delete();
+
+        String[] sKey = pJob.getStoreKey();
+        if (sKey != null) {
+            getBlobStore().add(pTarget, BlobStore.toHex(pDigest), sKey[0], sKey[1], sKey[2], pJob.getURL());
+        }
+
+        return pTarget;
+
+    }
+
+    /**
+     * Method to check a transferred file against the Content-Length and, for PDFs, with the PdfValidator
+     * @param pJob
+     * @param pConnection
+     * @param pFile
+     * @return null if the file is valid, otherwise the reason
+     */
+    protected String validate(DownloadJob pJob, HttpURLConnection pConnection, File pFile) {
+        long lContentLength = getTotalLength(pConnection);
+        String sContentType = pConnection.getContentType();
+        boolean bPdf = pJob.getTarget().getName().toLowerCase().endsWith(".pdf") || (sContentType != null && sContentType.contains("application/pdf"));
+        if (bPdf) {
+            return PdfValidator.validate(pFile, lContentLength);
+        }
+        if (lContentLength >= 0 && pFile.length() != lContentLength) {
+            return "size " + pFile.length() + " does not match Content-Length " + lContentLength;
+        }
+        return null;
+    }
+
+    /**
+     * Method to get the length of the complete document, for a partial response from the Content-Range
+     * @param pConnection
+     * @return -1 if unknown or the body is compressed
+     */
+    private static long getTotalLength(HttpURLConnection pConnection) {
+        if (pConnection.getHeaderField("Content-Encoding") != null) {
+            return -1;
+        }
+        String sRange = pConnection.getHeaderField("Content-Range");
+        if (sRange != null && sRange.contains("/")) {
+            try {
+                return Long.parseLong(sRange.substring(sRange.lastIndexOf('/') + 1).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return pConnection.getContentLengthLong();
+    }
+
+    /**
+     * Method to get the first byte of a partial response (Content-Range: bytes first-last/total)
+     * @param pConnection
+     * @return -1 if the header is missing or invalid
+     */
+    private static long getRangeStart(HttpURLConnection pConnection) {
+        String sRange = pConnection.getHeaderField("Content-Range");
+        if (sRange == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(sRange.replaceFirst("^\\s*bytes\\s+", "").split("-")[0].trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Method to get the validator (ETag or Last-Modified) of a partial file, which can be continued
+     * @param pJob
+     * @param pTemp
+     * @param pResume
+     * @return null if there is no partial file of the same URL
+     */
+    private static String getValidator(DownloadJob pJob, File pTemp, File pResume) {
+        if (!pTemp.exists() || pTemp.length() == 0 || !pResume.exists() || !"GET".equals(pJob.getMethod())) {
+            return null;
+        }
+        Properties pProperties = new Properties();
+        try (InputStream pInput = new FileInputStream(pResume)) {
+            pProperties.load(pInput);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!pJob.getURL().equals(pProperties.getProperty("url"))) {
+            return null;
+        }
+        String sETag = pProperties.getProperty("etag");
+        // a weak ETag must not be used for ranges
+        if (sETag != null && !sETag.startsWith("W/")) {
+            return sETag;
+        }
+        return pProperties.getProperty("last-modified");
+    }
+
+    /**
+     * Method to store the validators of a response next to its partial file
+     * @param pJob
+     * @param pConnection
+     * @param pResume
+     * @throws IOException
+     */
+    private static void saveValidator(DownloadJob pJob, HttpURLConnection pConnection, File pResume) throws IOException {
+        Properties pProperties = new Properties();
+        pProperties.setProperty("url", pJob.getURL());
+        if (pConnection.getHeaderField("ETag") != null) {
+            pProperties.setProperty("etag", pConnection.getHeaderField("ETag"));
+        }
+        if (pConnection.getHeaderField("Last-Modified") != null) {
+            pProperties.setProperty("last-modified", pConnection.getHeaderField("Last-Modified"));
+        }
+        pProperties.setProperty("length", String.valueOf(getTotalLength(pConnection)));
+        try (OutputStream pOutput = new FileOutputStream(pResume)) {
+            pProperties.store(pOutput, null);
+        }
+    }
+
+    /**
+     * Method to add the first bytes of a partial file to a digest
+     * @param pFile
+     * @param lLength
+     * @param pDigest
+     * @throws IOException
+     */
+    private static void digest(File pFile, long lLength, MessageDigest pDigest) throws IOException {
+        try (FileChannel pChannel = FileChannel.open(pFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer pBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long lPosition = 0;
+            while (lPosition < lLength) {
+                pBuffer.clear();
+                pBuffer.limit((int) Math.min(BUFFER_SIZE, lLength - lPosition));
+                int iRead = pChannel.read(pBuffer, lPosition);
+                if (iRead < 0) {
+                    throw new IOException("Partial file " + pFile + " is shorter than " + lLength + " bytes");
+                }
+                pBuffer.flip();
+                pDigest.update(pBuffer);
+                lPosition += iRead;
+            }
+        }
+    }
+
+    private static void discard(File pTemp, File pResume) {
+        pTemp.delete();
+        pResume.delete();
+    }
+
+    /**
+     * Method to write the directory entry of a renamed file to disk, not every platform allows this
+     * @param pDirectory
+     */
+    private static void syncDirectory(File pDirectory) {
+        try (FileChannel pChannel = FileChannel.open(pDirectory.toPath(), StandardOpenOption.READ)) {
+            pChannel.force(true);
+        } catch (IOException e) {
+            // e.g. on Windows directories can not be opened
+        }
+    }
+
+    private static File getTemporaryFile(DownloadJob pJob) {
+        return new File(pJob.getTarget().getAbsolutePath() + ".download");
+    }
+
+    /**
+     * Method to get the file with the URL and the validators of a partial download
+     * @param pJob
+     * @return
+     */
+    private static File getResumeFile(DownloadJob pJob) {
+        return new File(pJob.getTarget().getAbsolutePath() + ".download.properties");
+    }
+
+    /**
+     * Method to open a connection and follow redirects, also between http and https
+     * @param pJob
+     * @return a connection with a successful response code
+     * @throws IOException HttpStatusException if the server answers with an error
+     */
+    protected HttpURLConnection open(DownloadJob pJob) throws IOException {
+        return open(pJob, 0, null);
+    }
+
+    /**
+     * Method to open a connection which only requests the bytes from an offset, if the document still matches the validator
+     * @param pJob
+     * @param lOffset first byte, 0 for the complete document
+     * @param sValidator ETag or Last-Modified of the partial document, sent as If-Range
+     * @return a connection with a successful response code, 206 if the range is sent
+     * @throws IOException HttpStatusException if the server answers with an error
+     */
+    protected HttpURLConnection open(DownloadJob pJob, long lOffset, String sValidator) throws IOException {
+
+        String sURL = pJob.getURL();
+
+        for (int iRedirect = 0; iRedirect <= MAX_REDIRECTS; iRedirect++) {
+
+            String sHost = HostRateLimiter.getHost(sURL);
+            long lWait = System.nanoTime();
+            try {
+                pRateLimiter.acquire(sURL);
+                pCongestion.awaitPause(sHost);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + sURL);
+            }
+            pMetrics.histogram("gerparcor_wait_seconds", "Time a request waited for the congestion window or the rate limiter", "host", sHost, "reason", "rate").record(System.nanoTime() - lWait);
+            long lStart = System.nanoTime();
+
+            HttpURLConnection pConnection = (HttpURLConnection) new URL(CrawlerRuntime.resolve(sURL)).openConnection();
+            pConnection.setConnectTimeout(iConnectTimeout);
+            pConnection.setReadTimeout(iReadTimeout);
+            pConnection.setInstanceFollowRedirects(false);
+            pConnection.setRequestMethod(pJob.getMethod());
+            pConnection.setRequestProperty("User-Agent", DEFAULT_USER_AGENT);
+            for (Map.Entry<String, String> pHeader : pJob.getHeaders().entrySet()) {
+                pConnection.setRequestProperty(pHeader.getKey(), pHeader.getValue());
+            }
+            if (lOffset > 0 && sValidator != null) {
+                pConnection.setRequestProperty("Range", "bytes=" + lOffset + "-");
+                pConnection.setRequestProperty("If-Range", sValidator);
+            }
+
+            int iCode = pConnection.getResponseCode();
+            pMetrics.histogram("gerparcor_response_seconds", "Time until the response headers arrived", "host", sHost).record(System.nanoTime() - lStart);
+
+            if (iCode >= 300 && iCode < 400 && pConnection.getHeaderField("Location") != null) {
+                sURL = new URL(new URL(sURL), pConnection.getHeaderField("Location")).toString();
+                release(pConnection);
+                continue;
+            }
+
+            if (iCode >= 400) {
+                long lRetryAfter = HttpStatusException.parseRetryAfter(pConnection.getHeaderField("Retry-After"));
+                release(pConnection);
+                if (iCode == HttpURLConnection.HTTP_NOT_FOUND || iCode == HttpURLConnection.HTTP_GONE) {
+                    throw new FileNotFoundException(sURL);
+                }
+                throw new HttpStatusException(iCode, sURL, lRetryAfter);
+            }
+
+            return pConnection;
+
+        }
+
+        throw new IOException("Too many redirects for URL: " + pJob.getURL());
+
+    }
+
+    /**
+     * Method to read the remaining response so the connection can go back to the keep-alive cache
+     * @param pConnection
+     */
+    protected static void release(HttpURLConnection pConnection) {
+        InputStream pStream = pConnection.getErrorStream();
+        try {
+            if (pStream == null) {
+                pStream = pConnection.getInputStream();
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (pStream.read(buffer) != -1) {
+                // discard
+            }
+            pStream.close();
+        } catch (IOException e) {
+            // the connection is not reusable, the JDK will close it
+        }
+    }
+
+    /**
+     * Channel which updates a digest with all bytes read from another channel
+     */
+    private static class DigestChannel implements ReadableByteChannel {
+
+        private final ReadableByteChannel pSource;
+
+        private final MessageDigest pDigest;
+
+        DigestChannel(ReadableByteChannel pSource, MessageDigest pDigest) {
+            this.pSource = pSource;
+            this.pDigest = pDigest;
+        }
+
+        @Override
+        public int read(ByteBuffer pBuffer) throws IOException {
+            int iStart = pBuffer.position();
+            int iRead = pSource.read(pBuffer);
+            if (iRead > 0) {
+                ByteBuffer pRead = pBuffer.duplicate();
+                pRead.position(iStart);
+                pRead.limit(iStart + iRead);
+                pDigest.update(pRead);
+            }
+            return iRead;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return pSource.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            pSource.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Class for a single download which is handed to the DownloadEngine
+ */
+public class DownloadJob {
+
+    /**
+     * Location of the downloaded file
+     */
+    private final File pTarget;
+
+    /**
+     * URL of the document
+     */
+    private final String sURL;
+
+    /**
+     * Additional request headers (Cookies, Referer, ...)
+     */
+    private final Map<String, String> pHeaders = new LinkedHashMap<>(0);
+
+    /**
+     * HTTP method of the request
+     */
+    private String sMethod = "GET";
+
+    /**
+     * Key of the document in the BlobStore (parliament, period, session), null if the document is not stored
+     */
+    private String[] sStoreKey = null;
+
+    /**
+     * Parliament of the document, used as label of the metrics
+     */
+    private String sParliament = null;
+
+    /**
+     * Constructor
+     * @param pTarget
+     * @param sURL
+     */
+    public DownloadJob(File pTarget, String sURL) {
+        this.pTarget = pTarget;
+        this.sURL = sURL;
+    }
+
+    /**
+     * Method to add a request header
+     * @param sKey
+     * @param sValue
+     * @return
+     */
+    public DownloadJob header(String sKey, String sValue) {
+        this.pHeaders.put(sKey, sValue);
+        return this;
+    }
+
+    /**
+     * Method to send the given cookies with the request
+     * @param pCookies
+     * @return
+     */
+    public DownloadJob cookies(Map<String, String> pCookies) {
+        if (pCookies.size() > 0) {
+            header("Cookie", pCookies.entrySet().stream().map(e -> e.getKey() + "=" + e.getValue()).collect(Collectors.joining("; ")));
+        }
+        return this;
+    }
+
+    /**
+     * Method to set the HTTP method of the request, e.g. HEAD
+     * @param sMethod
+     * @return
+     */
+    public DownloadJob method(String sMethod) {
+        this.sMethod = sMethod;
+        return this;
+    }
+
+    /**
+     * Method to add the downloaded document to the BlobStore
+     * @param sParliament
+     * @param sPeriod
+     * @param sSession
+     * @return
+     */
+    public DownloadJob store(String sParliament, String sPeriod, String sSession) {
+        this.sStoreKey = new String[]{sParliament, sPeriod, sSession};
+        if (this.sParliament == null) {
+            this.sParliament = sParliament;
+        }
+        return this;
+    }
+
+    /**
+     * Method to set the parliament of the document
+     * @param sParliament
+     * @return
+     */
+    public DownloadJob parliament(String sParliament) {
+        this.sParliament = sParliament;
+        return this;
+    }
+
+    public File getTarget() {
+        return pTarget;
+    }
+
+    public String getURL() {
+        return sURL;
+    }
+
+    public String getMethod() {
+        return sMethod;
+    }
+
+    public String[] getStoreKey() {
+        return sStoreKey;
+    }
+
+    /**
+     * Method to get the parliament of the document
+     * @return an empty String if unknown
+     */
+    public String getParliament() {
+        return sParliament != null ? sParliament : "";
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(pHeaders);
+    }
+
+    @Override
+    public String toString() {
+        return sURL + " -> " + (pTarget != null ? pTarget.getAbsolutePath() : sMethod);
+    }
+
+}
@@ -0,0 +1,179 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class for a token bucket rate limiter per host, shared by all crawler threads.
+ * Each host has a rate (requests per second) and a burst (number of requests which can be sent without waiting).
+ * The values can be set by the crawler via setRate or overwritten on the command line with
+ * -Dgerparcor.rate.&lt;host&gt;=&lt;rate&gt;[:&lt;burst&gt;], e.g. -Dgerparcor.rate.www.landtag.nrw.de=2:4
+ */
+public class HostRateLimiter {
+
+    public static final String PROPERTY_PREFIX = "gerparcor.rate.";
+
+    private static HostRateLimiter pDefault = null;
+
+    private final Map<String, TokenBucket> pBuckets = new ConcurrentHashMap<>(0);
+
+    private final double dDefaultRate;
+
+    private final int iDefaultBurst;
+
+    /**
+     * Method to get the limiter shared by all crawlers of this JVM
+     * @return
+     */
+    public static synchronized HostRateLimiter getDefault() {
+        if (pDefault == null) {
+            pDefault = new HostRateLimiter(Double.parseDouble(System.getProperty(PROPERTY_PREFIX + "default", "2")), 2);
+        }
+        return pDefault;
+    }
+
+    /**
+     * Constructor
+     * @param dDefaultRate requests per second for hosts without own configuration
+     * @param iDefaultBurst burst for hosts without own configuration
+     */
+    public HostRateLimiter(double dDefaultRate, int iDefaultBurst) {
+        this.dDefaultRate = dDefaultRate;
+        this.iDefaultBurst = iDefaultBurst;
+    }
+
+    /**
+     * Method to set the rate of a host, unless it is overwritten by a system property
+     * @param sHost
+     * @param dRate requests per second
+     * @param iBurst
+     */
+    public void setRate(String sHost, double dRate, int iBurst) {
+        if (System.getProperty(PROPERTY_PREFIX + sHost) == null) {
+            pBuckets.put(sHost, new TokenBucket(dRate, iBurst));
+        }
+    }
+
+    /**
+     * Method to get the configured rate of a host
+     * @param sHost
+     * @return requests per second
+     */
+    public double getRate(String sHost) {
+        return getBucket(sHost).dRate;
+    }
+
+    /**
+     * Method to block until a request to the host of the given URL is allowed
+     * @param sURL
+     * @throws InterruptedException
+     */
+    public void acquire(String sURL) throws InterruptedException {
+        long lWait = getBucket(getHost(sURL)).reserve();
+        if (lWait > 0) {
+            TimeUnit.NANOSECONDS.sleep(lWait);
+        }
+    }
+
+    /**
+     * Method to block until a request to the host of the given URL is allowed.
+     * An interrupt is restored on the current thread, so this can be used inside of lambdas.
+     * @param sURL
+     */
+    public void acquireUninterruptibly(String sURL) {
+        try {
+            acquire(sURL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method to take a request from the bucket without waiting
+     * @param sURL
+     * @return true if the request can be sent immediately
+     */
+    public boolean tryAcquire(String sURL) {
+        return getBucket(getHost(sURL)).tryReserve();
+    }
+
+    private TokenBucket getBucket(String sHost) {
+        return pBuckets.computeIfAbsent(sHost, h -> {
+            String sValue = System.getProperty(PROPERTY_PREFIX + h);
+            if (sValue != null) {
+                String[] sSplit = sValue.split(":");
+                double dRate = Double.parseDouble(sSplit[0]);
+                int iBurst = sSplit.length > 1 ? Integer.parseInt(sSplit[1]) : 1;
+                return new TokenBucket(dRate, iBurst);
+            }
+            return new TokenBucket(dDefaultRate, iDefaultBurst);
+        });
+    }
+
+    /**
+     * Method to get the host of an URL
+     * @param sURL
+     * @return
+     */
+    public static String getHost(String sURL) {
+        try {
+            return new URL(sURL).getHost().toLowerCase();
+        } catch (MalformedURLException e) {
+            return sURL;
+        }
+    }
+
+    /**
+     * Token bucket of a single host. Requests which cannot be served immediately reserve a future
+     * token, so waiting threads are served in the order they arrived.
+     */
+    static class TokenBucket {
+
+        private final double dRate;
+
+        private final int iBurst;
+
+        private double dTokens;
+
+        private long lLastRefill;
+
+        TokenBucket(double dRate, int iBurst) {
+            this.dRate = dRate;
+            this.iBurst = Math.max(1, iBurst);
+            this.dTokens = this.iBurst;
+            this.lLastRefill = System.nanoTime();
+        }
+
+        private void refill(long lNow) {
+            dTokens = Math.min(iBurst, dTokens + (lNow - lLastRefill) / 1e9 * dRate);
+            lLastRefill = lNow;
+        }
+
+        /**
+         * Method to take a token
+         * @return nanoseconds to wait until the token is available
+         */
+        synchronized long reserve() {
+            refill(System.nanoTime());
+            dTokens -= 1;
+            if (dTokens >= 0) {
+                return 0;
+            }
+            return (long) (-dTokens / dRate * 1e9);
+        }
+
+        synchronized boolean tryReserve() {
+            refill(System.nanoTime());
+            if (dTokens >= 1) {
+                dTokens -= 1;
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
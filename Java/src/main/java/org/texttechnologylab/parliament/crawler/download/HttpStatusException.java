@@ -0,0 +1,80 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Class for an unsuccessful HTTP response.
+ * The message has the same format as the one of HttpURLConnection, so existing checks like
+ * getMessage().contains("429 for URL") keep working.
+ */
+public class HttpStatusException extends IOException {
+
+    private final int iStatus;
+
+    private final String sURL;
+
+    private final long lRetryAfter;
+
+    /**
+     * Constructor
+     * @param iStatus HTTP status code
+     * @param sURL
+     * @param lRetryAfter value of the Retry-After header in milliseconds, -1 if not given
+     */
+    public HttpStatusException(int iStatus, String sURL, long lRetryAfter) {
+        super("Server returned HTTP response code: " + iStatus + " for URL: " + sURL);
+        this.iStatus = iStatus;
+        this.sURL = sURL;
+        this.lRetryAfter = lRetryAfter;
+    }
+
+    public int getStatus() {
+        return iStatus;
+    }
+
+    public String getURL() {
+        return sURL;
+    }
+
+    /**
+     * Method to get the delay the server asked for
+     * @return milliseconds, -1 if the server did not send a Retry-After header
+     */
+    public long getRetryAfter() {
+        return lRetryAfter;
+    }
+
+    /**
+     * Method to check if the server rejected the request because of too many requests
+     * @return
+     */
+    public boolean isThrottled() {
+        return iStatus == 429 || iStatus == 503;
+    }
+
+    /**
+     * Method to parse a Retry-After header, which is either a number of seconds or a HTTP date
+     * @param sValue
+     * @return milliseconds, -1 if the value is missing or invalid
+     */
+    public static long parseRetryAfter(String sValue) {
+        if (sValue == null || sValue.trim().isEmpty()) {
+            return -1;
+        }
+        sValue = sValue.trim();
+        try {
+            return Math.max(0, Long.parseLong(sValue) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime pDate = ZonedDateTime.parse(sValue, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, pDate.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ex) {
+                return -1;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.IOException;
+
+/**
+ * Class for a download which was transferred completely, but is not a valid document (e.g. a truncated PDF)
+ */
+public class InvalidDocumentException extends IOException {
+
+    public InvalidDocumentException(String sURL, String sReason) {
+        super(sReason + " for URL: " + sURL);
+    }
+
+}
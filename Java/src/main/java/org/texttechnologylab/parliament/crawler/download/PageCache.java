@@ -0,0 +1,178 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.texttechnologylab.parliament.crawler.metrics.CrawlerMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Class for an on-disk HTTP cache of the pages which are fetched with Jsoup.
+ * For every URL the body and the validators (ETag, Last-Modified) of the last response are stored.
+ * A recrawl sends If-None-Match and If-Modified-Since, and on 304 Not Modified the stored page is used.
+ * The directory can be set with -Dgerparcor.cache.dir
+ */
+public class PageCache {
+
+    private static final int NOT_MODIFIED = 304;
+
+    private static PageCache pDefault = null;
+
+    private final File pDirectory;
+
+    private HostRateLimiter pRateLimiter = HostRateLimiter.getDefault();
+
+    /**
+     * Method to get the cache shared by all crawlers of this JVM
+     * @return
+     */
+    public static synchronized PageCache getDefault() {
+        if (pDefault == null) {
+            pDefault = new PageCache(new File(System.getProperty("gerparcor.cache.dir", System.getProperty("java.io.tmpdir") + "/gerparcor/cache")));
+        }
+        return pDefault;
+    }
+
+    /**
+     * Constructor
+     * @param pDirectory
+     */
+    public PageCache(File pDirectory) {
+        this.pDirectory = pDirectory;
+        this.pDirectory.mkdirs();
+    }
+
+    public void setRateLimiter(HostRateLimiter pRateLimiter) {
+        this.pRateLimiter = pRateLimiter;
+    }
+
+    /**
+     * Method to get a page
+     * @param sURL
+     * @return
+     * @throws IOException
+     */
+    public Document get(String sURL) throws IOException {
+        return get(Jsoup.connect(sURL));
+    }
+
+    /**
+     * Method to execute a prepared connection (with SSL settings, user agent, ...) through the cache
+     * @param pConnection
+     * @return the page of the response, or the stored page if the server answers with 304
+     * @throws IOException
+     */
+    public Document get(Connection pConnection) throws IOException {
+
+        String sURL = pConnection.request().url().toString();
+        String sKey = key(sURL);
+        File pBody = new File(pDirectory, sKey + ".html");
+        File pMeta = new File(pDirectory, sKey + ".properties");
+
+        Properties pProperties = new Properties();
+        if (pBody.exists() && pMeta.exists()) {
+            try (InputStream pInput = new FileInputStream(pMeta)) {
+                pProperties.load(pInput);
+            }
+            if (pProperties.getProperty("etag") != null) {
+                pConnection.header("If-None-Match", pProperties.getProperty("etag"));
+            }
+            if (pProperties.getProperty("last-modified") != null) {
+                pConnection.header("If-Modified-Since", pProperties.getProperty("last-modified"));
+            }
+        }
+
+        pRateLimiter.acquireUninterruptibly(sURL);
+
+        String sHost = HostRateLimiter.getHost(sURL);
+        CrawlerMetrics pMetrics = CrawlerMetrics.getDefault();
+        long lStart = System.nanoTime();
+
+        pConnection.url(CrawlerRuntime.resolve(sURL));
+        Connection.Response pResponse = pConnection.execute();
+
+        pMetrics.histogram("gerparcor_page_seconds", "Duration of a page request", "host", sHost).record(System.nanoTime() - lStart);
+        pMetrics.counter("gerparcor_pages_total", "Page requests, hit if the server answered with 304", "host", sHost, "cache", pResponse.statusCode() == NOT_MODIFIED ? "hit" : "miss").increment();
+
+        if (pResponse.statusCode() == NOT_MODIFIED && pBody.exists()) {
+            try (InputStream pInput = new FileInputStream(pBody)) {
+                return Jsoup.parse(pInput, pProperties.getProperty("charset"), pProperties.getProperty("url", sURL));
+            }
+        }
+
+        byte[] bBody = pResponse.bodyAsBytes();
+        // a response of the ReplayServer keeps the URL of the portal
+        String sBaseURL = pResponse.url().toString().equals(CrawlerRuntime.resolve(sURL)) ? sURL : pResponse.url().toString();
+
+        if (pResponse.header("ETag") != null || pResponse.header("Last-Modified") != null) {
+            Properties pNew = new Properties();
+            pNew.setProperty("url", sBaseURL);
+            if (pResponse.header("ETag") != null) {
+                pNew.setProperty("etag", pResponse.header("ETag"));
+            }
+            if (pResponse.header("Last-Modified") != null) {
+                pNew.setProperty("last-modified", pResponse.header("Last-Modified"));
+            }
+            if (pResponse.charset() != null) {
+                pNew.setProperty("charset", pResponse.charset());
+            }
+            write(pBody, bBody);
+            try (OutputStream pOutput = new FileOutputStream(pMeta)) {
+                pNew.store(pOutput, sURL);
+            }
+        } else if (pMeta.exists()) {
+            // the server does not send validators anymore
+            pMeta.delete();
+            pBody.delete();
+        }
+
+        return Jsoup.parse(new ByteArrayInputStream(bBody), pResponse.charset(), sBaseURL);
+
+    }
+
+    /**
+     * Method to write a file, so that a crash never leaves a partial body behind
+     * @param pFile
+     * @param bContent
+     * @throws IOException
+     */
+    private static void write(File pFile, byte[] bContent) throws IOException {
+        File pTemp = new File(pFile.getAbsolutePath() + ".tmp");
+        try (OutputStream pOutput = new FileOutputStream(pTemp)) {
+            pOutput.write(bContent);
+        }
+        Files.move(pTemp.toPath(), pFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Method to get the file name of an URL
+     * @param sURL
+     * @return
+     */
+    private static String key(String sURL) {
+        try {
+            byte[] bHash = MessageDigest.getInstance("SHA-256").digest(sURL.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : bHash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
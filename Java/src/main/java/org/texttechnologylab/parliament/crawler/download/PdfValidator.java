@@ -0,0 +1,108 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class for a quick structural check of downloaded PDF files.
+ * Only the first and the last kilobytes are read with positional reads, so the check costs the same
+ * for every file size. A file is valid if it starts with a %PDF header, ends with %%EOF, its startxref
+ * points to a cross reference table or stream inside of the file and its size matches the Content-Length.
+ */
+public class PdfValidator {
+
+    private static final int HEADER_SIZE = 1024;
+
+    private static final int TRAILER_SIZE = 2048;
+
+    private PdfValidator() {
+    }
+
+    /**
+     * Method to check if a file is a complete PDF
+     * @param pFile
+     * @return
+     */
+    public static boolean isValid(File pFile) {
+        return validate(pFile, -1) == null;
+    }
+
+    /**
+     * Method to check a downloaded PDF
+     * @param pFile
+     * @param lContentLength length announced by the server, -1 if unknown
+     * @return null if the file is valid, otherwise the reason
+     */
+    public static String validate(File pFile, long lContentLength) {
+
+        try (FileChannel pChannel = FileChannel.open(pFile.toPath(), StandardOpenOption.READ)) {
+
+            long lSize = pChannel.size();
+
+            if (lContentLength >= 0 && lSize != lContentLength) {
+                return "size " + lSize + " does not match Content-Length " + lContentLength;
+            }
+            if (lSize < 32) {
+                return "file too small (" + lSize + " bytes)";
+            }
+
+            String sHeader = read(pChannel, 0, (int) Math.min(HEADER_SIZE, lSize));
+            if (!sHeader.contains("%PDF-")) {
+                return "no %PDF header";
+            }
+
+            long lTrailer = Math.max(0, lSize - TRAILER_SIZE);
+            String sTrailer = read(pChannel, lTrailer, (int) (lSize - lTrailer));
+
+            int iEOF = sTrailer.lastIndexOf("%%EOF");
+            if (iEOF < 0) {
+                return "no %%EOF marker";
+            }
+
+            int iStartXRef = sTrailer.lastIndexOf("startxref", iEOF);
+            if (iStartXRef < 0) {
+                return "no startxref";
+            }
+
+            long lXRef;
+            try {
+                lXRef = Long.parseLong(sTrailer.substring(iStartXRef + "startxref".length(), iEOF).trim());
+            } catch (NumberFormatException e) {
+                return "invalid startxref";
+            }
+            if (lXRef <= 0 || lXRef >= lSize) {
+                return "startxref " + lXRef + " outside of the file";
+            }
+
+            // a cross reference table starts with xref, a cross reference stream with "n g obj";
+            // some writers are a few bytes off, which every reader tolerates
+            long lWindow = Math.max(0, lXRef - 16);
+            String sXRef = read(pChannel, lWindow, (int) Math.min(64, lSize - lWindow));
+            if (!sXRef.contains("xref") && !sXRef.matches("(?s).*\\d+\\s+\\d+\\s+obj.*")) {
+                return "startxref does not point to a cross reference";
+            }
+
+            return null;
+
+        } catch (IOException e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+    }
+
+    private static String read(FileChannel pChannel, long lPosition, int iLength) throws IOException {
+        ByteBuffer pBuffer = ByteBuffer.allocate(iLength);
+        while (pBuffer.hasRemaining()) {
+            if (pChannel.read(pBuffer, lPosition + pBuffer.position()) < 0) {
+                break;
+            }
+        }
+        pBuffer.flip();
+        return StandardCharsets.ISO_8859_1.decode(pBuffer).toString();
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class for the quarantine of broken downloads.
+ * Broken files are moved out of the corpus, so that OCR and conversion never see them, and the download
+ * is written to a retry queue, which can be resubmitted with DownloadEngine.retryQuarantined.
+ * Every line of the queue (retry.tsv) holds the complete download, so the retry is stored and counted like the first try:
+ * <pre>
+ * URL, target, reason, method, parliament, store parliament, store period, store session, header name, header value, ...
+ * </pre>
+ * The directory can be set with -Dgerparcor.quarantine.dir
+ */
+public class Quarantine {
+
+    public static final String QUEUE = "retry.tsv";
+
+    private static Quarantine pDefault = null;
+
+    private final File pDirectory;
+
+    /**
+     * Method to get the quarantine shared by all crawlers of this JVM
+     * @return
+     */
+    public static synchronized Quarantine getDefault() {
+        if (pDefault == null) {
+            pDefault = new Quarantine(new File(System.getProperty("gerparcor.quarantine.dir", System.getProperty("java.io.tmpdir") + "/gerparcor/quarantine")));
+        }
+        return pDefault;
+    }
+
+    /**
+     * Constructor
+     * @param pDirectory
+     */
+    public Quarantine(File pDirectory) {
+        this.pDirectory = pDirectory;
+        this.pDirectory.mkdirs();
+    }
+
+    /**
+     * Method to move a broken file into the quarantine and queue its download again
+     * @param pFile the broken file
+     * @param pJob the download of the file
+     * @param sReason
+     * @throws IOException
+     */
+    public synchronized void add(File pFile, DownloadJob pJob, String sReason) throws IOException {
+        if (pFile.exists()) {
+            File pTarget = new File(pDirectory, System.currentTimeMillis() + "_" + pJob.getTarget().getName());
+            Files.move(pFile.toPath(), pTarget.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        try (Writer pWriter = new OutputStreamWriter(new FileOutputStream(new File(pDirectory, QUEUE), true), StandardCharsets.UTF_8)) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(CrawlFrontier.escape(pJob.getURL()))
+                    .append('\t').append(CrawlFrontier.escape(pJob.getTarget().getAbsolutePath()))
+                    .append('\t').append(CrawlFrontier.escape(sReason))
+                    .append('\t').append(CrawlFrontier.escape(pJob.getMethod()))
+                    .append('\t').append(CrawlFrontier.escape(pJob.getParliament()));
+            String[] sStoreKey = pJob.getStoreKey() != null ? pJob.getStoreKey() : new String[]{"", "", ""};
+            for (String sKey : sStoreKey) {
+                sb.append('\t').append(CrawlFrontier.escape(sKey));
+            }
+            for (Map.Entry<String, String> pHeader : pJob.getHeaders().entrySet()) {
+                sb.append('\t').append(CrawlFrontier.escape(pHeader.getKey())).append('\t').append(CrawlFrontier.escape(pHeader.getValue()));
+            }
+            pWriter.write(sb.append('\n').toString());
+        }
+        System.out.println("Quarantine: " + pJob.getTarget().getAbsolutePath() + "\t" + sReason);
+    }
+
+    /**
+     * Method to take all queued downloads, the queue is empty afterwards
+     * @return
+     * @throws IOException
+     */
+    public synchronized List<DownloadJob> drain() throws IOException {
+        List<DownloadJob> rList = new ArrayList<>(0);
+        File pQueue = new File(pDirectory, QUEUE);
+        if (!pQueue.exists()) {
+            return rList;
+        }
+        try (BufferedReader pReader = Files.newBufferedReader(pQueue.toPath(), StandardCharsets.UTF_8)) {
+            String sLine;
+            while ((sLine = pReader.readLine()) != null) {
+                String[] sSplit = sLine.split("\t", -1);
+                if (sSplit.length < 2) {
+                    continue;
+                }
+                DownloadJob pJob = new DownloadJob(new File(CrawlFrontier.unescape(sSplit[1])), CrawlFrontier.unescape(sSplit[0]));
+                // lines of older runs only have URL, target and reason
+                if (sSplit.length >= 8) {
+                    pJob.method(CrawlFrontier.unescape(sSplit[3]));
+                    if (!sSplit[5].isEmpty()) {
+                        pJob.store(CrawlFrontier.unescape(sSplit[5]), CrawlFrontier.unescape(sSplit[6]), CrawlFrontier.unescape(sSplit[7]));
+                    }
+                    if (!sSplit[4].isEmpty()) {
+                        pJob.parliament(CrawlFrontier.unescape(sSplit[4]));
+                    }
+                    for (int h = 8; h + 1 < sSplit.length; h += 2) {
+                        pJob.header(CrawlFrontier.unescape(sSplit[h]), CrawlFrontier.unescape(sSplit[h + 1]));
+                    }
+                }
+                rList.add(pJob);
+            }
+        }
+        pQueue.delete();
+        return rList;
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Class for finding the highest number of a sequentially numbered source (e.g. the sessions of a Wahlperiode).
+ * The upper bound is found by doubling the number until a document is missing, the last existing number
+ * between the bounds by a binary search, so only O(log n) HEAD requests are needed.
+ * Single missing numbers are tolerated: a number only counts as missing if the following gap - 1 numbers are missing as well.
+ */
+public class SequenceProber {
+
+    /**
+     * Number of consecutive missing documents which mark the end of the sequence
+     */
+    public static final int DEFAULT_GAP = 3;
+
+    private final IntFunction<String> pURLs;
+
+    private final DownloadEngine pEngine;
+
+    private final int iGap;
+
+    private final Map<Integer, Boolean> pChecked = new HashMap<>(0);
+
+    /**
+     * Constructor
+     * @param pURLs function which returns the URL of a number
+     */
+    public SequenceProber(IntFunction<String> pURLs) {
+        this(pURLs, DownloadEngine.getDefault(), DEFAULT_GAP);
+    }
+
+    /**
+     * Constructor
+     * @param pURLs function which returns the URL of a number
+     * @param pEngine engine which sends the requests
+     * @param iGap number of consecutive missing documents which mark the end of the sequence
+     */
+    public SequenceProber(IntFunction<String> pURLs, DownloadEngine pEngine, int iGap) {
+        this.pURLs = pURLs;
+        this.pEngine = pEngine;
+        this.iGap = Math.max(1, iGap);
+    }
+
+    /**
+     * Method to find the highest existing number
+     * @param iFirst first number of the sequence
+     * @return the highest existing number, iFirst - 1 if the sequence is empty
+     * @throws IOException if the server answers with an error other than 404 or 410
+     */
+    public int findLast(int iFirst) throws IOException {
+
+        int iLow = present(iFirst);
+        if (iLow < 0) {
+            return iFirst - 1;
+        }
+
+        // exponential search for a number behind the end
+        int iStep = 1;
+        int iHigh;
+        while (true) {
+            iHigh = iLow + iStep;
+            int iFound = present(iHigh);
+            if (iFound < 0) {
+                break;
+            }
+            iLow = iFound;
+            iStep = iStep * 2;
+        }
+
+        // binary search, iLow exists and nothing exists from iHigh to iHigh + gap - 1
+        while (iHigh - iLow > 1) {
+            int iMiddle = iLow + (iHigh - iLow) / 2;
+            int iFound = present(iMiddle);
+            if (iFound < 0) {
+                iHigh = iMiddle;
+            } else if (iFound >= iHigh) {
+                // a document behind the assumed end, the sequence continues
+                return findLast(iFound);
+            } else {
+                iLow = iFound;
+            }
+        }
+
+        // the documents directly after iLow decide, because the search above only tested some of them
+        int iFound = present(iLow + 1);
+        return iFound < 0 ? iLow : findLast(iFound);
+
+    }
+
+    /**
+     * Method to check a number and the following gap - 1 numbers
+     * @param iNumber
+     * @return the first existing number, -1 if all are missing
+     * @throws IOException
+     */
+    private int present(int iNumber) throws IOException {
+        for (int i = iNumber; i < iNumber + iGap; i++) {
+            if (exists(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method to check if the document of a number exists, every number is requested only once
+     * @param iNumber
+     * @return
+     * @throws IOException
+     */
+    public boolean exists(int iNumber) throws IOException {
+        Boolean bExists = pChecked.get(iNumber);
+        if (bExists == null) {
+            bExists = pEngine.exists(pURLs.apply(iNumber));
+            pChecked.put(iNumber, bExists);
+        }
+        return bExists;
+    }
+
+}
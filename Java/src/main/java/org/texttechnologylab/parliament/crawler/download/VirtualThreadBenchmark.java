@@ -0,0 +1,101 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class for comparing the pool of platform threads with the virtual thread mode of the DownloadEngine.
+ * A local server answers every request after a fixed latency, the hosts 127.0.0.1 ... 127.0.0.n simulate
+ * different parliaments, each limited to the same number of parallel requests.
+ * Both modes are compared with the same limit of requests in flight (hosts * requests per host), the platform
+ * pool with the given number of threads is only reported as the baseline of the default setup.
+ * Usage: VirtualThreadBenchmark [hosts] [documents per host] [latency ms] [requests per host] [platform threads]
+ * The virtual thread mode needs Java 21 (mvn -P java21).
+ */
+public class VirtualThreadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        int iHosts = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int iDocuments = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int iLatency = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int iPerHost = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        int iPlatform = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+
+        System.setProperty("http.maxConnections", String.valueOf(iPerHost));
+
+        byte[] bBody = new byte[16 * 1024];
+        HttpServer pServer = HttpServer.create(new InetSocketAddress(0), 4096);
+        ExecutorService pServerExecutor = Executors.newCachedThreadPool();
+        pServer.setExecutor(pServerExecutor);
+        pServer.createContext("/", pExchange -> {
+            try {
+                Thread.sleep(iLatency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pExchange.sendResponseHeaders(200, bBody.length);
+            try (OutputStream pOutput = pExchange.getResponseBody()) {
+                pOutput.write(bBody);
+            }
+        });
+        pServer.start();
+
+        System.out.println(iHosts + " hosts, " + iDocuments + " documents per host, " + iLatency + " ms latency, " + iPerHost + " requests per host");
+        System.out.println("mode\tthreads\ttime (ms)\tdocuments/s\tpeak platform threads (incl. server)");
+
+        try {
+            int iInFlight = iHosts * iPerHost;
+            run("platform", iPlatform, false, pServer.getAddress().getPort(), iHosts, iDocuments, iPerHost);
+            if (iPlatform != iInFlight) {
+                run("platform", iInFlight, false, pServer.getAddress().getPort(), iHosts, iDocuments, iPerHost);
+            }
+            if (CrawlerRuntime.isVirtualAvailable()) {
+                run("virtual", iInFlight, true, pServer.getAddress().getPort(), iHosts, iDocuments, iPerHost);
+            } else {
+                System.out.println("virtual\tnot available, Java 21 is needed");
+            }
+        } finally {
+            pServer.stop(0);
+            pServerExecutor.shutdownNow();
+        }
+
+    }
+
+    private static void run(String sMode, int iWorkers, boolean bVirtual, int iPort, int iHosts, int iDocuments, int iPerHost) throws IOException, InterruptedException {
+
+        File pDirectory = Files.createTempDirectory("benchmark-" + sMode).toFile();
+
+        DownloadEngine pEngine = new DownloadEngine(iWorkers, iHosts * iDocuments, bVirtual);
+        pEngine.setRateLimiter(new HostRateLimiter(1e6, 1000000));
+        pEngine.setCongestionController(new CongestionController(iPerHost, iPerHost));
+        pEngine.setQuarantine(new Quarantine(new File(pDirectory, "quarantine")));
+
+        ThreadMXBean pThreads = ManagementFactory.getThreadMXBean();
+        pThreads.resetPeakThreadCount();
+
+        long lStart = System.nanoTime();
+        for (int d = 0; d < iDocuments; d++) {
+            for (int h = 1; h <= iHosts; h++) {
+                pEngine.submit(new File(pDirectory, h + "/" + d + ".bin"), "http://127.0.0." + h + ":" + iPort + "/" + d);
+            }
+        }
+        pEngine.awaitCompletion();
+        long lTime = (System.nanoTime() - lStart) / 1000000;
+
+        pEngine.shutdown();
+
+        System.out.println(sMode + "\t" + iWorkers + "\t" + lTime + "\t" + String.format("%.1f", iHosts * iDocuments * 1000.0 / Math.max(1, lTime)) + "\t" + pThreads.getPeakThreadCount());
+
+    }
+
+}
@@ -0,0 +1,183 @@
+package org.texttechnologylab.parliament.crawler.download;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Class for the watermarks of a crawler: the newest item (session number, date, ...) which was fetched completely.
+ * With -Dgerparcor.incremental=true the crawlers only request items behind their watermarks, otherwise they crawl
+ * everything and only update the watermarks.
+ * The watermarks are stored as cursors of a CrawlFrontier (watermark.log in the output directory of the crawler).
+ * Numbers are compared numerically, all other values as strings, so dates have to be written as yyyy-MM-dd.
+ * Crawlers whose items finish in any order use a Progress, which only moves the watermark over items that are
+ * finished together with all items before them, so a failed item is requested again by the next incremental crawl.
+ */
+public class Watermark implements Closeable {
+
+    public static final String PROPERTY = "gerparcor.incremental";
+
+    public static final String FILE = "watermark.log";
+
+    private final CrawlFrontier pFrontier;
+
+    /**
+     * Constructor
+     * @param pDirectory output directory of the crawler
+     * @throws IOException
+     */
+    public Watermark(File pDirectory) throws IOException {
+        this.pFrontier = new CrawlFrontier(new File(pDirectory, FILE));
+    }
+
+    /**
+     * Method to check if the incremental mode is selected
+     * @return
+     */
+    public static boolean isIncremental() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * Method to get a watermark
+     * @param sKey
+     * @param sDefault value if there is no watermark
+     * @return
+     */
+    public String get(String sKey, String sDefault) {
+        return pFrontier.getCursor(sKey, sDefault);
+    }
+
+    public long get(String sKey, long lDefault) {
+        return pFrontier.getCursor(sKey, lDefault);
+    }
+
+    /**
+     * Method to get the first item of a crawl: in incremental mode the item after the watermark, otherwise lFirst
+     * @param sKey
+     * @param lFirst
+     * @return
+     */
+    public long getStart(String sKey, long lFirst) {
+        return isIncremental() ? Math.max(lFirst, get(sKey, lFirst - 1) + 1) : lFirst;
+    }
+
+    /**
+     * Method to check if an item has to be crawled, which in incremental mode are only items behind the watermark
+     * @param sKey
+     * @param sValue
+     * @return
+     */
+    public boolean isNew(String sKey, String sValue) {
+        String sMark = get(sKey, null);
+        return !isIncremental() || sMark == null || compare(sValue, sMark) > 0;
+    }
+
+    /**
+     * Method to move a watermark to an item, a watermark never moves backwards
+     * @param sKey
+     * @param sValue
+     * @return true if the watermark was moved
+     * @throws IOException
+     */
+    public synchronized boolean advance(String sKey, String sValue) throws IOException {
+        String sMark = get(sKey, null);
+        if (sMark != null && compare(sValue, sMark) <= 0) {
+            return false;
+        }
+        pFrontier.setCursor(sKey, sValue);
+        return true;
+    }
+
+    public boolean advance(String sKey, long lValue) throws IOException {
+        return advance(sKey, String.valueOf(lValue));
+    }
+
+    /**
+     * Method to set a watermark which is no ordered value, e.g. the newest entry of a list of new documents
+     * @param sKey
+     * @param sValue
+     * @throws IOException
+     */
+    public void set(String sKey, String sValue) throws IOException {
+        pFrontier.setCursor(sKey, sValue);
+    }
+
+    /**
+     * Method to follow the items of a crawl which finish in any order
+     * @param sKey
+     * @param sValues all items of the crawl
+     * @return
+     */
+    public Progress track(String sKey, Collection<String> sValues) {
+        return new Progress(sKey, sValues);
+    }
+
+    private static int compare(String sA, String sB) {
+        try {
+            return Long.compare(Long.parseLong(sA), Long.parseLong(sB));
+        } catch (NumberFormatException e) {
+            return sA.compareTo(sB);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        pFrontier.close();
+    }
+
+    /**
+     * Class for the items of a crawl: the watermark is moved to the highest finished item below the first item which
+     * is not finished yet
+     */
+    public class Progress {
+
+        private final String sKey;
+
+        /**
+         * Items which are not finished, with their number of downloads
+         */
+        private final TreeMap<String, Integer> pPending = new TreeMap<>(Watermark::compare);
+
+        private final TreeMap<String, Boolean> pFinished = new TreeMap<>(Watermark::compare);
+
+        private Progress(String sKey, Collection<String> sValues) {
+            this.sKey = sKey;
+            sValues.forEach(v -> pPending.merge(v, 1, Integer::sum));
+        }
+
+        /**
+         * Method to mark a download of an item as finished
+         * @param sValue
+         * @return the new watermark, null if it was not moved
+         * @throws IOException
+         */
+        public synchronized String done(String sValue) throws IOException {
+
+            Integer iCount = pPending.get(sValue);
+            if (iCount == null) {
+                return null;
+            }
+            if (iCount > 1) {
+                pPending.put(sValue, iCount - 1);
+                return null;
+            }
+            pPending.remove(sValue);
+            pFinished.put(sValue, Boolean.TRUE);
+
+            SortedMap<String, Boolean> pContiguous = pPending.isEmpty() ? pFinished : pFinished.headMap(pPending.firstKey());
+            if (pContiguous.isEmpty()) {
+                return null;
+            }
+            String sMark = pContiguous.lastKey();
+            pContiguous.clear();
+            return advance(sKey, sMark) ? sMark : null;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.texttechnologylab.parliament.crawler.helper;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.jcas.JCas;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class for the annotation of the structure of a Bundestag protocol (types of desc/type/ParliamentStructure.xml):
+ * AgendaItem, Speech, Speaker (the turn of a speaker) and Comment.
+ * The segments of the BundestagXmlReader refer to the text of the protocol, their offsets are mapped to the
+ * normalized text of the CAS with the offsets of the TextNormalizer.
+ * The types are used through the CAS API, so no JCas classes have to be generated.
+ */
+public class BundestagStructure {
+
+    public static final String AGENDA_ITEM = "org.texttechnologylab.parliament.type.AgendaItem";
+    public static final String SPEECH = "org.texttechnologylab.parliament.type.Speech";
+    public static final String SPEAKER = "org.texttechnologylab.parliament.type.Speaker";
+    public static final String COMMENT = "org.texttechnologylab.parliament.type.Comment";
+
+    /**
+     * Features of a speaker and the fields of the redner in the protocol
+     */
+    private static final Map<String, String> SPEAKER_FIELDS = new HashMap<>(0);
+
+    static {
+        SPEAKER_FIELDS.put("id", "id");
+        SPEAKER_FIELDS.put("titel", "title");
+        SPEAKER_FIELDS.put("vorname", "firstName");
+        SPEAKER_FIELDS.put("nachname", "lastName");
+        SPEAKER_FIELDS.put("namenszusatz", "nameAddition");
+        SPEAKER_FIELDS.put("ortszusatz", "location");
+        SPEAKER_FIELDS.put("fraktion", "faction");
+        SPEAKER_FIELDS.put("rolle_lang", "role");
+        SPEAKER_FIELDS.put("label", "label");
+    }
+
+    /**
+     * Method to annotate the segments of a protocol
+     * @param pCas CAS with the normalized text of the protocol
+     * @param pSegments segments of the protocol
+     * @param iOffsets offsets of the TextNormalizer from the text of the protocol to the text of the CAS
+     * @param pNormalizer normalizer for the values of the features
+     * @return number of annotations
+     */
+    public static int annotate(JCas pCas, List<BundestagXmlReader.Segment> pSegments, int[] iOffsets, TextNormalizer pNormalizer) {
+
+        CAS pCAS = pCas.getCas();
+        String sText = pCas.getDocumentText();
+
+        Type tAgendaItem = getType(pCAS, AGENDA_ITEM);
+        Type tSpeech = getType(pCAS, SPEECH);
+        Type tSpeaker = getType(pCAS, SPEAKER);
+        Type tComment = getType(pCAS, COMMENT);
+
+        AnnotationFS pAgendaItem = null;
+        AnnotationFS pSpeech = null;
+        String sSpeaker = null;
+        int rCount = 0;
+
+        // the segments are ordered by their beginning, so agenda items and speeches come before their parts
+        for (BundestagXmlReader.Segment pSegment : pSegments) {
+
+            int iBegin = iOffsets[pSegment.getBegin()];
+            int iEnd = iOffsets[pSegment.getEnd()];
+            while (iBegin < iEnd && Character.isWhitespace(sText.charAt(iBegin))) {
+                iBegin++;
+            }
+            while (iEnd > iBegin && Character.isWhitespace(sText.charAt(iEnd - 1))) {
+                iEnd--;
+            }
+
+            AnnotationFS pAnnotation;
+            switch (pSegment.getType()) {
+                case BundestagXmlReader.AGENDA_ITEM:
+                    pAnnotation = pCAS.createAnnotation(tAgendaItem, iBegin, iEnd);
+                    setString(pAnnotation, "id", pNormalizer.normalize(pSegment.getFeature("top-id")));
+                    pAgendaItem = pAnnotation;
+                    break;
+                case BundestagXmlReader.SPEECH:
+                    pAnnotation = pCAS.createAnnotation(tSpeech, iBegin, iEnd);
+                    setString(pAnnotation, "id", pSegment.getFeature("id"));
+                    if (pAgendaItem != null && pAgendaItem.getEnd() >= iEnd) {
+                        pAnnotation.setFeatureValue(tSpeech.getFeatureByBaseName("agendaItem"), pAgendaItem);
+                    }
+                    pSpeech = pAnnotation;
+                    sSpeaker = pSegment.getFeature("speaker");
+                    break;
+                case BundestagXmlReader.SPEAKER:
+                    pAnnotation = pCAS.createAnnotation(tSpeaker, iBegin, iEnd);
+                    for (Map.Entry<String, String> pField : pSegment.getFeatures().entrySet()) {
+                        String sFeature = SPEAKER_FIELDS.get(pField.getKey());
+                        if (sFeature != null) {
+                            setString(pAnnotation, sFeature, pNormalizer.normalize(pField.getValue()).trim());
+                        }
+                    }
+                    if (pSpeech != null && sSpeaker != null && sSpeaker.equals(pSegment.getFeature("id")) && pSpeech.getEnd() >= iEnd) {
+                        pSpeech.setFeatureValue(tSpeech.getFeatureByBaseName("speaker"), pAnnotation);
+                        sSpeaker = null;
+                    }
+                    break;
+                case BundestagXmlReader.COMMENT:
+                    pAnnotation = pCAS.createAnnotation(tComment, iBegin, iEnd);
+                    break;
+                default:
+                    continue;
+            }
+
+            pCAS.addFsIndex(pAnnotation);
+            rCount++;
+
+        }
+
+        return rCount;
+
+    }
+
+    private static Type getType(CAS pCAS, String sName) {
+        Type rType = pCAS.getTypeSystem().getType(sName);
+        if (rType == null) {
+            throw new IllegalStateException(sName + " is missing in the type system, desc/type/ParliamentStructure.xml is not on the classpath");
+        }
+        return rType;
+    }
+
+    private static void setString(AnnotationFS pAnnotation, String sFeature, String sValue) {
+        Feature pFeature = pAnnotation.getType().getFeatureByBaseName(sFeature);
+        if (sValue != null && pFeature != null) {
+            pAnnotation.setStringValue(pFeature, sValue);
+        }
+    }
+
+}
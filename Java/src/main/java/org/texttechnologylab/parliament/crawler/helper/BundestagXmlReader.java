@@ -0,0 +1,487 @@
+package org.texttechnologylab.parliament.crawler.helper;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class for reading the metadata and the text of a Bundestag plenary protocol in one forward pass (StAX).
+ * Two formats are supported:
+ * <ul>
+ *     <li>the older protocols (DOKUMENT with WAHLPERIODE, DOKUMENTART, NR, DATUM and TEXT)</li>
+ *     <li>the protocols since WP 19 (dbtplenarprotokoll with the attributes wahlperiode, sitzung-nr and sitzung-datum,
+ *     the text is taken from sitzungsverlauf)</li>
+ * </ul>
+ * For the newer format the agenda items, speeches, speakers and comments are recorded in the same pass as segments
+ * with their offsets in the text.
+ * No tree of the document is built, besides the text only the current element is kept in memory.
+ * DTDs and external entities are never loaded.
+ * The reader can be shared by several threads.
+ */
+public class BundestagXmlReader {
+
+    private static final String NEW_ROOT = "dbtplenarprotokoll";
+
+    private static final String NEW_TEXT = "sitzungsverlauf";
+
+    public static final String AGENDA_ITEM = "tagesordnungspunkt";
+
+    public static final String SPEECH = "rede";
+
+    /**
+     * Turn of a speaker within a speech, which starts with a redner or with the name of the chair
+     */
+    public static final String SPEAKER = "redner";
+
+    public static final String COMMENT = "kommentar";
+
+    private final XMLInputFactory pFactory;
+
+    /**
+     * Constructor
+     */
+    public BundestagXmlReader() {
+        pFactory = XMLInputFactory.newInstance();
+        pFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        pFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        pFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        pFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        pFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    }
+
+    /**
+     * Method to read a protocol
+     * @param pFile
+     * @return
+     * @throws IOException if the file is no readable protocol
+     */
+    public Session read(File pFile) throws IOException {
+        try (InputStream pInput = new BufferedInputStream(new FileInputStream(pFile), 1 << 16)) {
+            return read(pInput, pFile.getName());
+        }
+    }
+
+    /**
+     * Method to read a protocol from a stream
+     * @param pInput
+     * @param sName name of the protocol for the messages
+     * @return
+     * @throws IOException if the stream contains no readable protocol
+     */
+    public Session read(InputStream pInput, String sName) throws IOException {
+
+        XMLStreamReader pReader = null;
+        try {
+            pReader = pFactory.createXMLStreamReader(pInput);
+
+            while (pReader.hasNext() && pReader.next() != XMLStreamConstants.START_ELEMENT) {
+                // prolog, doctype and comments
+            }
+            if (!pReader.isStartElement()) {
+                throw new IOException(sName + " contains no element");
+            }
+
+            Session rSession = NEW_ROOT.equals(pReader.getLocalName()) ? readNew(pReader) : readOld(pReader);
+
+            if (rSession.sPeriod == null || rSession.sNumber == null || rSession.sDate == null || rSession.sText == null) {
+                throw new IOException(sName + " is incomplete: " + rSession);
+            }
+            return rSession;
+
+        } catch (XMLStreamException e) {
+            throw new IOException(sName + ": " + e.getMessage(), e);
+        } finally {
+            if (pReader != null) {
+                try {
+                    pReader.close();
+                } catch (XMLStreamException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Method to read the older format, the first occurrence of every element counts
+     * @param pReader positioned on the root element
+     * @return
+     * @throws XMLStreamException
+     */
+    private Session readOld(XMLStreamReader pReader) throws XMLStreamException {
+
+        Session rSession = new Session();
+
+        while (pReader.hasNext()) {
+            if (pReader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (pReader.getLocalName()) {
+                case "WAHLPERIODE":
+                    rSession.sPeriod = rSession.sPeriod == null ? readText(pReader).trim() : rSession.sPeriod;
+                    break;
+                case "DOKUMENTART":
+                    rSession.sType = rSession.sType == null ? readText(pReader).trim() : rSession.sType;
+                    break;
+                case "NR":
+                    rSession.sNumber = rSession.sNumber == null ? readText(pReader).trim() : rSession.sNumber;
+                    break;
+                case "DATUM":
+                    rSession.sDate = rSession.sDate == null ? readText(pReader).trim() : rSession.sDate;
+                    break;
+                case "TEXT":
+                    if (rSession.sText == null) {
+                        rSession.sText = readText(pReader);
+                    }
+                    break;
+            }
+        }
+
+        return rSession;
+
+    }
+
+    /**
+     * Method to read the format since WP 19
+     * @param pReader positioned on the root element
+     * @return
+     * @throws XMLStreamException
+     */
+    private Session readNew(XMLStreamReader pReader) throws XMLStreamException {
+
+        Session rSession = new Session();
+        rSession.sPeriod = pReader.getAttributeValue(null, "wahlperiode");
+        rSession.sNumber = pReader.getAttributeValue(null, "sitzung-nr");
+        rSession.sDate = pReader.getAttributeValue(null, "sitzung-datum");
+        rSession.sType = "Plenarprotokoll";
+
+        while (pReader.hasNext()) {
+            if (pReader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (pReader.getLocalName()) {
+                case "berichtart":
+                    rSession.sType = readText(pReader).trim();
+                    break;
+                case "datum":
+                    // kopfdaten / veranstaltungsdaten, in case the root has no date
+                    if (rSession.sDate == null) {
+                        rSession.sDate = pReader.getAttributeValue(null, "date");
+                    }
+                    break;
+                case NEW_TEXT:
+                    readProceedings(pReader, rSession);
+                    break;
+            }
+        }
+
+        return rSession;
+
+    }
+
+    /**
+     * Method to read the text of the sitzungsverlauf and to record its segments.
+     * Like readText, but a line break is added after every child element.
+     * @param pReader positioned on the sitzungsverlauf, afterwards on its end element
+     * @param rSession
+     * @throws XMLStreamException
+     */
+    private static void readProceedings(XMLStreamReader pReader, Session rSession) throws XMLStreamException {
+
+        StringBuilder sb = new StringBuilder();
+        int iDepth = 1;
+
+        // open agenda items, speeches and comments
+        Deque<Segment> pOpen = new ArrayDeque<>();
+        Segment pSpeech = null;
+        Segment pTurn = null;
+
+        // start and depth of the last paragraph, a redner is part of a paragraph which introduces the speaker
+        int iParagraph = 0;
+        int iParagraphDepth = -1;
+
+        // depth of the redner or of the name of the chair whose fields are read
+        int iSpeakerDepth = -1;
+        int iLabelDepth = -1;
+        int iField = 0;
+        boolean bLeaf = false;
+
+        while (iDepth > 0 && pReader.hasNext()) {
+            switch (pReader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    iDepth++;
+                    bLeaf = true;
+                    iField = sb.length();
+                    switch (pReader.getLocalName()) {
+                        case "p":
+                            iParagraph = sb.length();
+                            iParagraphDepth = iDepth;
+                            break;
+                        case AGENDA_ITEM:
+                            pOpen.push(rSession.add(new Segment(AGENDA_ITEM, sb.length(), iDepth)
+                                    .feature("top-id", pReader.getAttributeValue(null, "top-id"))));
+                            break;
+                        case SPEECH:
+                            pSpeech = rSession.add(new Segment(SPEECH, sb.length(), iDepth)
+                                    .feature("id", pReader.getAttributeValue(null, "id")));
+                            pOpen.push(pSpeech);
+                            break;
+                        case COMMENT:
+                            pOpen.push(rSession.add(new Segment(COMMENT, sb.length(), iDepth)));
+                            break;
+                        case SPEAKER:
+                            if (pSpeech != null && iSpeakerDepth < 0) {
+                                close(pTurn, sb.length());
+                                int iBegin = iParagraphDepth == iDepth - 1 ? iParagraph : sb.length();
+                                String sID = pReader.getAttributeValue(null, "id");
+                                pTurn = rSession.add(new Segment(SPEAKER, iBegin, iDepth).feature("id", sID));
+                                if (pSpeech.getFeature("speaker") == null) {
+                                    pSpeech.feature("speaker", sID);
+                                }
+                                iSpeakerDepth = iDepth;
+                            }
+                            break;
+                        case "name":
+                            // the chair interrupts the speech
+                            if (pSpeech != null && iDepth == pSpeech.iDepth + 1) {
+                                close(pTurn, sb.length());
+                                pTurn = rSession.add(new Segment(SPEAKER, sb.length(), iDepth));
+                                iLabelDepth = iDepth;
+                            }
+                            break;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (iSpeakerDepth >= 0 && iDepth > iSpeakerDepth && bLeaf) {
+                        pTurn.feature(pReader.getLocalName(), sb.substring(iField).trim());
+                    }
+                    bLeaf = false;
+                    if (iDepth == iSpeakerDepth) {
+                        iSpeakerDepth = -1;
+                    }
+                    if (iDepth == iLabelDepth) {
+                        pTurn.feature("label", sb.substring(pTurn.iBegin).trim());
+                        iLabelDepth = -1;
+                    }
+                    if (!pOpen.isEmpty() && pOpen.peek().iDepth == iDepth) {
+                        Segment pSegment = pOpen.pop();
+                        close(pSegment, sb.length());
+                        if (pSegment == pSpeech) {
+                            close(pTurn, sb.length());
+                            pTurn = null;
+                            pSpeech = null;
+                        }
+                    }
+                    iDepth--;
+                    // block elements end with a line break, so the words of two paragraphs are not joined
+                    if (iDepth > 0) {
+                        sb.append("\n");
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    sb.append(pReader.getTextCharacters(), pReader.getTextStart(), pReader.getTextLength());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    sb.append('&').append(pReader.getLocalName()).append(';');
+                    break;
+            }
+        }
+
+        rSession.sText = sb.toString();
+
+    }
+
+    private static void close(Segment pSegment, int iEnd) {
+        if (pSegment != null && pSegment.iEnd < 0) {
+            pSegment.iEnd = iEnd;
+        }
+    }
+
+    /**
+     * Method to read the text content of the current element and all its descendants
+     * @param pReader positioned on a start element, afterwards on its end element
+     * @return
+     * @throws XMLStreamException
+     */
+    private static String readText(XMLStreamReader pReader) throws XMLStreamException {
+
+        StringBuilder sb = new StringBuilder();
+        int iDepth = 1;
+
+        while (iDepth > 0 && pReader.hasNext()) {
+            switch (pReader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    iDepth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    iDepth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    sb.append(pReader.getTextCharacters(), pReader.getTextStart(), pReader.getTextLength());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    // entities of the DTD, which is not loaded, are kept as written
+                    sb.append('&').append(pReader.getLocalName()).append(';');
+                    break;
+            }
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     * Class for the fields of a protocol
+     */
+    public static class Session {
+
+        private String sPeriod = null;
+
+        private String sType = null;
+
+        private String sNumber = null;
+
+        private String sDate = null;
+
+        private String sText = null;
+
+        private final List<Segment> pSegments = new ArrayList<>(0);
+
+        private Segment add(Segment pSegment) {
+            pSegments.add(pSegment);
+            return pSegment;
+        }
+
+        /**
+         * Method to get the Wahlperiode
+         * @return
+         */
+        public String getPeriod() {
+            return sPeriod;
+        }
+
+        /**
+         * Method to get the type of the document, e.g. Plenarprotokoll
+         * @return
+         */
+        public String getType() {
+            return sType;
+        }
+
+        /**
+         * Method to get the number of the session
+         * @return
+         */
+        public String getNumber() {
+            return sNumber;
+        }
+
+        /**
+         * Method to get the date of the session (dd.MM.yyyy)
+         * @return
+         */
+        public String getDate() {
+            return sDate;
+        }
+
+        public String getText() {
+            return sText;
+        }
+
+        /**
+         * Method to get the agenda items, speeches, speakers and comments in the order of their beginning
+         * @return an empty list for the older format
+         */
+        public List<Segment> getSegments() {
+            return Collections.unmodifiableList(pSegments);
+        }
+
+        @Override
+        public String toString() {
+            return sType + " " + sPeriod + "/" + sNumber + " vom " + sDate + (sText == null ? " without text" : " (" + sText.length() + " characters)");
+        }
+
+    }
+
+    /**
+     * Class for a part of the text of a protocol, the offsets refer to Session.getText
+     */
+    public static class Segment {
+
+        private final String sType;
+
+        private final int iBegin;
+
+        private int iEnd = -1;
+
+        private final int iDepth;
+
+        private final Map<String, String> pFeatures = new LinkedHashMap<>(0);
+
+        Segment(String sType, int iBegin, int iDepth) {
+            this.sType = sType;
+            this.iBegin = iBegin;
+            this.iDepth = iDepth;
+        }
+
+        private Segment feature(String sName, String sValue) {
+            if (sValue != null && !sValue.isEmpty()) {
+                pFeatures.put(sName, sValue);
+            }
+            return this;
+        }
+
+        /**
+         * Method to get the type of the segment (AGENDA_ITEM, SPEECH, SPEAKER or COMMENT)
+         * @return
+         */
+        public String getType() {
+            return sType;
+        }
+
+        public int getBegin() {
+            return iBegin;
+        }
+
+        public int getEnd() {
+            return iEnd;
+        }
+
+        /**
+         * Method to get an attribute or a field of the segment, e.g. id, vorname, nachname, fraktion of a speaker
+         * @param sName name of the attribute or element in the protocol
+         * @return null if the segment has no such field
+         */
+        public String getFeature(String sName) {
+            return pFeatures.get(sName);
+        }
+
+        public Map<String, String> getFeatures() {
+            return Collections.unmodifiableMap(pFeatures);
+        }
+
+        @Override
+        public String toString() {
+            return sType + "[" + iBegin + ", " + iEnd + "]" + pFeatures;
+        }
+
+    }
+
+}
@@ -18,11 +18,12 @@ import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDesc
 
 public class TextImagerProcessing {
 
-    public static AggregateBuilder pipeline = new AggregateBuilder();
+    // every instance has its own replica of the pipeline, so several instances can run in parallel threads
+    private final AggregateBuilder pipeline = new AggregateBuilder();
 
-    private static AnalysisEngine pAE = null;
+    private AnalysisEngine pAE = null;
 
-    public static void init(String sOutputPath){
+    private void init(String sOutputPath){
 
         // add different Engines to the Pipeline
         try {
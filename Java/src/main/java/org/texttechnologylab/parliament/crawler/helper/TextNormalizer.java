@@ -0,0 +1,354 @@
+package org.texttechnologylab.parliament.crawler.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class for the normalization of the text of a protocol in a single pass over the characters.
+ * The rules of a parliament are kept in a Rules table:
+ * <ol>
+ *     <li>single characters are removed or replaced (control characters, C1 characters, ...)</li>
+ *     <li>a hyphen directly before a line break is removed together with the line break</li>
+ *     <li>line breaks are replaced by a space</li>
+ *     <li>two spaces are replaced by one (like replaceAll("  ", " "), a run of n spaces keeps n/2 rounded up)</li>
+ *     <li>strings are replaced, e.g. &amp;#38; by &amp;</li>
+ * </ol>
+ * The result is the same as applying the steps one after another with String.replaceAll,
+ * but the text is copied only once into a buffer, which is reused for the next text.
+ * The converter normalizes the text before it is set in the CAS, since the structure annotations need the offsets.
+ * An instance is not thread-safe, every thread needs its own one.
+ */
+public class TextNormalizer {
+
+    private static final Map<String, Rules> RULES = new ConcurrentHashMap<>(0);
+
+    static {
+        register("Bundestag", Rules.protocol());
+    }
+
+    private final Rules pRules;
+
+    private char[] cBuffer = new char[0];
+
+    /**
+     * Constructor
+     * @param pRules
+     */
+    public TextNormalizer(Rules pRules) {
+        this.pRules = pRules;
+    }
+
+    /**
+     * Method to register the rules of a parliament
+     * @param sParliament
+     * @param pRules
+     */
+    public static void register(String sParliament, Rules pRules) {
+        RULES.put(sParliament, pRules);
+    }
+
+    /**
+     * Method to get a normalizer with the rules of a parliament
+     * @param sParliament
+     * @return a normalizer with the default rules (Rules.protocol) if the parliament has no own rules
+     */
+    public static TextNormalizer forParliament(String sParliament) {
+        return new TextNormalizer(RULES.getOrDefault(sParliament, Rules.protocol()));
+    }
+
+    public Rules getRules() {
+        return pRules;
+    }
+
+    /**
+     * Method to normalize a text
+     * @param sText
+     * @return
+     */
+    public String normalize(String sText) {
+        return normalize(sText, null);
+    }
+
+    /**
+     * Method to normalize a text and to map the offsets of the text to offsets of the result
+     * @param sText
+     * @param iOffsets if not null, at least length + 1 entries which are set to the offset in the result of every
+     *                 character of the text; a removed character gets the offset of the next character which is kept,
+     *                 the last entry is the length of the result
+     * @return
+     */
+    public String normalize(String sText, int[] iOffsets) {
+
+        if (sText == null || sText.isEmpty()) {
+            if (iOffsets != null && sText != null) {
+                iOffsets[0] = 0;
+            }
+            return sText;
+        }
+
+        // no rule makes the text longer
+        int iLength = sText.length();
+        if (cBuffer.length < iLength) {
+            cBuffer = new char[iLength];
+        }
+        char[] cOut = cBuffer;
+        int w = 0;
+
+        char[] cMap = pRules.cMap;
+        char[][] cPatterns = pRules.cPatterns;
+        char[][] cReplacements = pRules.cReplacements;
+
+        // start of the part of the output in which a pattern may begin, a replacement is never searched again
+        int iBarrier = 0;
+        // index of a held hyphen, -1 if there is none
+        int iHyphen = -1;
+        boolean bSpace = false;
+
+        for (int i = 0; i <= iLength; i++) {
+
+            char c;
+            if (i < iLength) {
+                c = sText.charAt(i);
+                c = cMap[c];
+                if (iOffsets != null && iHyphen < 0) {
+                    iOffsets[i] = w;
+                }
+                if (c == Rules.DELETE) {
+                    continue;
+                }
+            } else {
+                c = Rules.DELETE;
+            }
+
+            // a held hyphen is dropped together with a following line break
+            if (iHyphen >= 0) {
+                int iHeld = iHyphen;
+                iHyphen = -1;
+                if (c != '\n') {
+                    bSpace = false;
+                    w = append(cOut, w, '-', cPatterns, cReplacements, iBarrier);
+                    if (w < 0) {
+                        w = -w;
+                        iBarrier = w;
+                    }
+                }
+                // the characters after the hyphen get their offsets once it is known whether it is kept
+                if (iOffsets != null) {
+                    for (int j = iHeld + 1; j <= i && j < iLength; j++) {
+                        iOffsets[j] = w;
+                    }
+                }
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (i == iLength) {
+                break;
+            }
+            if (c == '-' && pRules.bJoinHyphenation) {
+                iHyphen = i;
+                continue;
+            }
+
+            if (c == '\n' && pRules.cLineBreak != Rules.KEEP) {
+                c = pRules.cLineBreak;
+            }
+
+            // every second space of a run is dropped
+            if (c == ' ' && pRules.bCollapseSpaces) {
+                if (bSpace) {
+                    bSpace = false;
+                    continue;
+                }
+                bSpace = true;
+            } else {
+                bSpace = false;
+            }
+
+            w = append(cOut, w, c, cPatterns, cReplacements, iBarrier);
+            if (w < 0) {
+                w = -w;
+                iBarrier = w;
+            }
+
+        }
+
+        if (iOffsets != null) {
+            iOffsets[iLength] = w;
+            // a replaced string is shorter, offsets inside of it are moved to its end
+            for (int i = iLength - 1; i >= 0; i--) {
+                if (iOffsets[i] > iOffsets[i + 1]) {
+                    iOffsets[i] = iOffsets[i + 1];
+                }
+            }
+        }
+
+        return new String(cOut, 0, w);
+
+    }
+
+    /**
+     * Method to write a character and to replace a pattern which ends with it
+     * @return the new length, negative if a pattern was replaced
+     */
+    private static int append(char[] cOut, int w, char c, char[][] cPatterns, char[][] cReplacements, int iBarrier) {
+
+        cOut[w++] = c;
+
+        for (int p = 0; p < cPatterns.length; p++) {
+            char[] cPattern = cPatterns[p];
+            int iStart = w - cPattern.length;
+            if (iStart < iBarrier || cPattern[cPattern.length - 1] != c) {
+                continue;
+            }
+            boolean bMatch = true;
+            for (int k = 0; k < cPattern.length - 1 && bMatch; k++) {
+                bMatch = cOut[iStart + k] == cPattern[k];
+            }
+            if (bMatch) {
+                char[] cReplacement = cReplacements[p];
+                System.arraycopy(cReplacement, 0, cOut, iStart, cReplacement.length);
+                return -(iStart + cReplacement.length);
+            }
+        }
+
+        return w;
+
+    }
+
+    /**
+     * Class for the rules of a parliament
+     */
+    public static class Rules {
+
+        /**
+         * Marker of a removed character, the noncharacter U+FFFF is always removed
+         */
+        static final char DELETE = '\uFFFF';
+
+        /**
+         * Marker for line breaks which are kept
+         */
+        static final char KEEP = '\uFFFF';
+
+        private final char[] cMap = new char[Character.MAX_VALUE + 1];
+
+        private boolean bJoinHyphenation = false;
+
+        private char cLineBreak = KEEP;
+
+        private boolean bCollapseSpaces = false;
+
+        private final List<String[]> pReplacements = new ArrayList<>(0);
+
+        private char[][] cPatterns = new char[0][];
+
+        private char[][] cReplacements = new char[0][];
+
+        /**
+         * Constructor for rules which do not change the text
+         */
+        public Rules() {
+            for (int i = 0; i < cMap.length; i++) {
+                cMap[i] = (char) i;
+            }
+            cMap[DELETE] = DELETE;
+        }
+
+        /**
+         * Method to get the rules which were used for the Bundestag protocols so far:
+         * control characters except the line break and the C1 characters are removed, hyphenations at
+         * line ends are joined, line breaks become spaces, double spaces are reduced and &amp;#38; becomes &amp;
+         * @return
+         */
+        public static Rules protocol() {
+            return new Rules()
+                    .delete('\u0000', '\u0009')
+                    .delete('\u000B', '\u001F')
+                    .delete('\u007F', '\u009F')
+                    .joinHyphenation(true)
+                    .lineBreak(' ')
+                    .collapseSpaces(true)
+                    .replace("&#38;", "&");
+        }
+
+        /**
+         * Method to remove all characters from cFrom to cTo
+         * @param cFrom
+         * @param cTo
+         * @return
+         */
+        public Rules delete(char cFrom, char cTo) {
+            for (int c = cFrom; c <= cTo; c++) {
+                cMap[c] = DELETE;
+            }
+            return this;
+        }
+
+        /**
+         * Method to replace a character by another one, a character which is removed stays removed
+         * @param c
+         * @param cReplacement
+         * @return
+         */
+        public Rules replace(char c, char cReplacement) {
+            if (cMap[c] != DELETE) {
+                cMap[c] = cReplacement;
+            }
+            return this;
+        }
+
+        /**
+         * Method to join words which are hyphenated at the end of a line
+         * @param bJoin
+         * @return
+         */
+        public Rules joinHyphenation(boolean bJoin) {
+            this.bJoinHyphenation = bJoin;
+            return this;
+        }
+
+        /**
+         * Method to replace the line breaks by a character
+         * @param cLineBreak
+         * @return
+         */
+        public Rules lineBreak(char cLineBreak) {
+            this.cLineBreak = cLineBreak;
+            return this;
+        }
+
+        /**
+         * Method to reduce double spaces
+         * @param bCollapse
+         * @return
+         */
+        public Rules collapseSpaces(boolean bCollapse) {
+            this.bCollapseSpaces = bCollapse;
+            return this;
+        }
+
+        /**
+         * Method to replace a string, the replacement must not be longer than the string
+         * @param sPattern
+         * @param sReplacement
+         * @return
+         */
+        public Rules replace(String sPattern, String sReplacement) {
+            if (sPattern.isEmpty() || sReplacement.length() > sPattern.length()) {
+                throw new IllegalArgumentException("The replacement of \"" + sPattern + "\" must not be longer than the pattern");
+            }
+            pReplacements.add(new String[]{sPattern, sReplacement});
+            cPatterns = Arrays.copyOf(cPatterns, pReplacements.size());
+            cReplacements = Arrays.copyOf(cReplacements, pReplacements.size());
+            cPatterns[pReplacements.size() - 1] = sPattern.toCharArray();
+            cReplacements[pReplacements.size() - 1] = sReplacement.toCharArray();
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,310 @@
+package org.texttechnologylab.parliament.crawler.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Class for the metrics of the crawlers: counters, gauges and latency histograms, each with labels such as host and parliament.
+ * The metrics are registered as attributes of the MBean org.texttechnologylab.parliament:type=CrawlerMetrics (jconsole, VisualVM)
+ * and can be served in the Prometheus text format under /metrics, the port is set with -Dgerparcor.metrics.port.
+ * Histograms are exported as summaries with the 50th, 95th and 99th percentile.
+ */
+public class CrawlerMetrics implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "org.texttechnologylab.parliament:type=CrawlerMetrics";
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private static CrawlerMetrics pDefault = null;
+
+    private final Map<String, Family> pFamilies = new ConcurrentSkipListMap<>();
+
+    private HttpServer pServer = null;
+
+    /**
+     * Method to get the registry shared by all crawlers of this JVM.
+     * On the first call it is registered at the platform MBean server and, with -Dgerparcor.metrics.port, served over HTTP.
+     * @return
+     */
+    public static synchronized CrawlerMetrics getDefault() {
+        if (pDefault == null) {
+            pDefault = new CrawlerMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(pDefault, new ObjectName(OBJECT_NAME));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            Integer iPort = Integer.getInteger("gerparcor.metrics.port");
+            if (iPort != null) {
+                try {
+                    pDefault.serve(iPort);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return pDefault;
+    }
+
+    /**
+     * Method to get a counter
+     * @param sName
+     * @param sHelp
+     * @param sLabels pairs of label name and value
+     * @return
+     */
+    public LongAdder counter(String sName, String sHelp, String... sLabels) {
+        return (LongAdder) family(sName, sHelp, "counter").pSeries.computeIfAbsent(labels(sLabels), k -> new LongAdder());
+    }
+
+    /**
+     * Method to register a gauge, which is read whenever the metrics are exported
+     * @param sName
+     * @param sHelp
+     * @param pValue
+     * @param sLabels pairs of label name and value
+     */
+    public void gauge(String sName, String sHelp, Supplier<? extends Number> pValue, String... sLabels) {
+        family(sName, sHelp, "gauge").pSeries.putIfAbsent(labels(sLabels), new Gauge(pValue));
+    }
+
+    /**
+     * Method to get a latency histogram
+     * @param sName
+     * @param sHelp
+     * @param sLabels pairs of label name and value
+     * @return
+     */
+    public LatencyHistogram histogram(String sName, String sHelp, String... sLabels) {
+        return (LatencyHistogram) family(sName, sHelp, "summary").pSeries.computeIfAbsent(labels(sLabels), k -> new LatencyHistogram());
+    }
+
+    /**
+     * Method to write all metrics in the Prometheus text format
+     * @param pWriter
+     * @throws IOException
+     */
+    public void write(Writer pWriter) throws IOException {
+        for (Family pFamily : pFamilies.values()) {
+            pWriter.write("# HELP " + pFamily.sName + " " + pFamily.sHelp + "\n");
+            pWriter.write("# TYPE " + pFamily.sName + " " + pFamily.sType + "\n");
+            for (Map.Entry<String, Object> pSeries : pFamily.pSeries.entrySet()) {
+                String sLabels = pSeries.getKey();
+                Object pValue = pSeries.getValue();
+                if (pValue instanceof LatencyHistogram) {
+                    LatencyHistogram pHistogram = (LatencyHistogram) pValue;
+                    for (double dQuantile : QUANTILES) {
+                        String sQuantile = "quantile=\"" + dQuantile + "\"";
+                        pWriter.write(pFamily.sName + "{" + (sLabels.isEmpty() ? sQuantile : sLabels + "," + sQuantile) + "} " + format(pHistogram.getPercentile(dQuantile * 100)) + "\n");
+                    }
+                    pWriter.write(pFamily.sName + "_sum" + braces(sLabels) + " " + format(pHistogram.getSum()) + "\n");
+                    pWriter.write(pFamily.sName + "_count" + braces(sLabels) + " " + pHistogram.getCount() + "\n");
+                } else {
+                    pWriter.write(pFamily.sName + braces(sLabels) + " " + format(value(pValue)) + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to serve the metrics under http://&lt;host&gt;:&lt;port&gt;/metrics
+     * @param iPort
+     * @throws IOException
+     */
+    public synchronized void serve(int iPort) throws IOException {
+        if (pServer != null) {
+            return;
+        }
+        pServer = HttpServer.create(new InetSocketAddress(iPort), 0);
+        pServer.setExecutor(Executors.newSingleThreadExecutor(CrawlerRuntime.platformThreadFactory("metrics")));
+        pServer.createContext("/metrics", pExchange -> {
+            StringWriter pText = new StringWriter();
+            write(pText);
+            byte[] bBody = pText.toString().getBytes(StandardCharsets.UTF_8);
+            pExchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            pExchange.sendResponseHeaders(200, bBody.length);
+            try (OutputStream pOutput = pExchange.getResponseBody()) {
+                pOutput.write(bBody);
+            }
+        });
+        pServer.start();
+        System.out.println("Metrics on http://localhost:" + pServer.getAddress().getPort() + "/metrics");
+    }
+
+    private Family family(String sName, String sHelp, String sType) {
+        Family pFamily = pFamilies.computeIfAbsent(sName, k -> new Family(sName, sHelp, sType));
+        if (!pFamily.sType.equals(sType)) {
+            throw new IllegalArgumentException(sName + " is a " + pFamily.sType);
+        }
+        return pFamily;
+    }
+
+    private static String labels(String... sLabels) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < sLabels.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            String sValue = sLabels[i + 1] == null ? "" : sLabels[i + 1];
+            sb.append(sLabels[i]).append("=\"").append(sValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append("\"");
+        }
+        return sb.toString();
+    }
+
+    private static String braces(String sLabels) {
+        return sLabels.isEmpty() ? "" : "{" + sLabels + "}";
+    }
+
+    private static double value(Object pValue) {
+        if (pValue instanceof LongAdder) {
+            return ((LongAdder) pValue).sum();
+        }
+        if (pValue instanceof Gauge) {
+            return ((Gauge) pValue).get();
+        }
+        return Double.NaN;
+    }
+
+    private static String format(double dValue) {
+        if (dValue == Math.rint(dValue) && !Double.isInfinite(dValue) && Math.abs(dValue) < 1e15) {
+            return String.valueOf((long) dValue);
+        }
+        return String.format(Locale.ROOT, "%.6g", dValue);
+    }
+
+    /**
+     * Method to get all values by the attribute names of the MBean
+     * @return
+     */
+    private Map<String, Object> getAttributes() {
+        Map<String, Object> rMap = new ConcurrentSkipListMap<>();
+        for (Family pFamily : pFamilies.values()) {
+            for (Map.Entry<String, Object> pSeries : pFamily.pSeries.entrySet()) {
+                String sName = pFamily.sName + braces(pSeries.getKey());
+                if (pSeries.getValue() instanceof LatencyHistogram) {
+                    LatencyHistogram pHistogram = (LatencyHistogram) pSeries.getValue();
+                    rMap.put(sName + " count", pHistogram.getCount());
+                    for (double dQuantile : QUANTILES) {
+                        rMap.put(sName + " p" + Math.round(dQuantile * 100), pHistogram.getPercentile(dQuantile * 100));
+                    }
+                    rMap.put(sName + " max", pHistogram.getMax());
+                } else {
+                    rMap.put(sName, value(pSeries.getValue()));
+                }
+            }
+        }
+        return rMap;
+    }
+
+    @Override
+    public Object getAttribute(String sAttribute) throws AttributeNotFoundException {
+        Object pValue = getAttributes().get(sAttribute);
+        if (pValue == null) {
+            throw new AttributeNotFoundException(sAttribute);
+        }
+        return pValue;
+    }
+
+    @Override
+    public void setAttribute(Attribute pAttribute) {
+        throw new UnsupportedOperationException("Crawler metrics are read only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] sAttributes) {
+        Map<String, Object> pValues = getAttributes();
+        AttributeList rList = new AttributeList();
+        for (String sAttribute : sAttributes) {
+            if (pValues.containsKey(sAttribute)) {
+                rList.add(new Attribute(sAttribute, pValues.get(sAttribute)));
+            }
+        }
+        return rList;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList pAttributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String sAction, Object[] pParams, String[] sSignature) {
+        throw new UnsupportedOperationException(sAction);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> pInfos = new ArrayList<>(0);
+        for (Map.Entry<String, Object> pAttribute : getAttributes().entrySet()) {
+            pInfos.add(new MBeanAttributeInfo(pAttribute.getKey(), pAttribute.getValue().getClass().getName(), pAttribute.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of the parliament crawlers", pInfos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    /**
+     * Class for all series of a metric
+     */
+    private static class Family {
+
+        private final String sName;
+
+        private final String sHelp;
+
+        private final String sType;
+
+        private final Map<String, Object> pSeries = new ConcurrentSkipListMap<>();
+
+        Family(String sName, String sHelp, String sType) {
+            this.sName = sName;
+            this.sHelp = sHelp;
+            this.sType = sType;
+        }
+
+    }
+
+    /**
+     * Class for a gauge, the value is read from the supplier when the metrics are exported
+     */
+    private static class Gauge {
+
+        private final Supplier<? extends Number> pSupplier;
+
+        Gauge(Supplier<? extends Number> pSupplier) {
+            this.pSupplier = pSupplier;
+        }
+
+        double get() {
+            try {
+                Number pNumber = pSupplier.get();
+                return pNumber == null ? Double.NaN : pNumber.doubleValue();
+            } catch (RuntimeException e) {
+                return Double.NaN;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.texttechnologylab.parliament.crawler.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class for a lock free latency histogram with a fixed relative error, in the manner of an HDR histogram.
+ * Values are stored in microseconds: up to 63 µs each value has its own bucket, above every power of two
+ * is split into 32 linear buckets, so a percentile is off by at most 1/32 (about 3 %), from 1 µs up to days.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    private static final int MAX_EXPONENT = 42;
+
+    private final AtomicLongArray pBuckets = new AtomicLongArray(LINEAR + (MAX_EXPONENT - SUB_BITS) * SUB_BUCKETS);
+
+    private final LongAdder lCount = new LongAdder();
+
+    private final LongAdder lSum = new LongAdder();
+
+    private final LongAccumulator lMax = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Method to record a duration
+     * @param lNanos
+     */
+    public void record(long lNanos) {
+        long lMicros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(lNanos));
+        pBuckets.incrementAndGet(index(lMicros));
+        lCount.increment();
+        lSum.add(lMicros);
+        lMax.accumulate(lMicros);
+    }
+
+    public long getCount() {
+        return lCount.sum();
+    }
+
+    /**
+     * Method to get the sum of all recorded durations
+     * @return in seconds
+     */
+    public double getSum() {
+        return lSum.sum() / 1e6;
+    }
+
+    /**
+     * Method to get the longest recorded duration
+     * @return in seconds
+     */
+    public double getMax() {
+        return lMax.get() / 1e6;
+    }
+
+    /**
+     * Method to get a percentile of the recorded durations
+     * @param dPercentile between 0 and 100
+     * @return in seconds, 0 if nothing was recorded
+     */
+    public double getPercentile(double dPercentile) {
+        long[] lSnapshot = new long[pBuckets.length()];
+        long lTotal = 0;
+        for (int i = 0; i < lSnapshot.length; i++) {
+            lSnapshot[i] = pBuckets.get(i);
+            lTotal += lSnapshot[i];
+        }
+        if (lTotal == 0) {
+            return 0;
+        }
+        long lRank = Math.max(1, (long) Math.ceil(dPercentile / 100.0 * lTotal));
+        long lSeen = 0;
+        for (int i = 0; i < lSnapshot.length; i++) {
+            lSeen += lSnapshot[i];
+            if (lSeen >= lRank) {
+                return Math.min(value(i), lMax.get()) / 1e6;
+            }
+        }
+        return getMax();
+    }
+
+    private static int index(long lMicros) {
+        if (lMicros < LINEAR) {
+            return (int) lMicros;
+        }
+        int iExponent = Math.min(MAX_EXPONENT - 1, 63 - Long.numberOfLeadingZeros(lMicros));
+        int iSub = (int) ((lMicros >>> (iExponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR + (iExponent - SUB_BITS - 1) * SUB_BUCKETS + iSub;
+    }
+
+    /**
+     * Method to get the upper bound of a bucket
+     * @param iIndex
+     * @return in microseconds
+     */
+    private static long value(int iIndex) {
+        if (iIndex < LINEAR) {
+            return iIndex;
+        }
+        int iExponent = (iIndex - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+        int iSub = (iIndex - LINEAR) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + iSub + 1) << (iExponent - SUB_BITS)) - 1;
+    }
+
+}
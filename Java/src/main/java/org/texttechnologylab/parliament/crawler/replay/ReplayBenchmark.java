@@ -0,0 +1,320 @@
+package org.texttechnologylab.parliament.crawler.replay;
+
+import org.texttechnologylab.parliament.crawler.Liechtenstein;
+import org.texttechnologylab.parliament.crawler.download.CongestionController;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.download.Quarantine;
+import org.texttechnologylab.parliament.crawler.schedule.CrawlScheduler;
+import org.texttechnologylab.parliament.crawler.schedule.ParliamentCrawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Class for measuring the throughput, the tail latency and the politeness of the crawlers against a ReplayServer.
+ * The registered ParliamentCrawler run their real discover and fetch in the CrawlScheduler, all their requests
+ * (DownloadEngine, PageCache, CrawlerRuntime.connect) are answered by the server, so nothing is sent to the portals.
+ * The latency of a fetch includes the waiting for the rate limiter, the congestion window and the retries after 429.
+ * Every host of the recordings gets the same rate (gerparcor.rate.&lt;host&gt;, unless it is set already), afterwards
+ * the requests which arrived at the server are compared with this rate and with the Retry-After of the injected 429.
+ * Without an index.tsv in the recording directory synthetic recordings with the URLs of the crawlers in SYNTHETIC
+ * are generated, otherwise all registered crawlers run unless crawlers are named.
+ * Usage: ReplayBenchmark &lt;recordings&gt; [threads] [requests/s per host] [latency ms] [jitter ms] [error rate] [429 rate] [documents per parliament] [crawler ...]
+ */
+public class ReplayBenchmark {
+
+    private static final int BURST = 2;
+
+    /**
+     * Crawlers with synthetic recordings, their portals are answered without a recording of the real portal
+     */
+    public static final List<String> SYNTHETIC = Arrays.asList("Bundesrat", "Liechtenstein", "Brandenburg", "NordrheinWestfalen", "Hessen", "Bremen");
+
+    public static void main(String[] args) throws Exception {
+
+        File pDirectory = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir") + "/gerparcor/replay/synthetic");
+        int iThreads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        double dRate = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+        int iLatency = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int iJitter = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+        double dErrorRate = args.length > 5 ? Double.parseDouble(args[5]) : 0.01;
+        double dThrottleRate = args.length > 6 ? Double.parseDouble(args[6]) : 0.01;
+        int iDocuments = args.length > 7 ? Integer.parseInt(args[7]) : 100;
+        List<String> sNames = args.length > 8 ? Arrays.asList(args).subList(8, args.length) : null;
+
+        if (!new File(pDirectory, ReplayServer.INDEX).exists()) {
+            System.out.println("Generating synthetic recordings in " + pDirectory.getAbsolutePath());
+            generate(pDirectory, iDocuments);
+            if (sNames == null) {
+                sNames = SYNTHETIC;
+            }
+        }
+
+        try (ReplayServer pServer = new ReplayServer(pDirectory, 0)) {
+
+            pServer.setLatency(iLatency, iJitter);
+            pServer.setErrorRate(dErrorRate);
+            pServer.setThrottleRate(dThrottleRate, 1);
+            System.setProperty(CrawlerRuntime.REPLAY, pServer.getBaseURL());
+
+            // the rates which the crawlers set for their portals are replaced by the rate of the benchmark
+            for (String sURL : pServer.getURLs()) {
+                String sHost = HostRateLimiter.getHost(sURL);
+                if (System.getProperty(HostRateLimiter.PROPERTY_PREFIX + sHost) == null) {
+                    System.setProperty(HostRateLimiter.PROPERTY_PREFIX + sHost, dRate + ":" + BURST);
+                }
+            }
+
+            List<ParliamentCrawler> pCrawlers = new ArrayList<>(0);
+            for (ParliamentCrawler pCrawler : CrawlScheduler.load()) {
+                if (sNames == null || sNames.contains(pCrawler.getName())) {
+                    pCrawlers.add(new TimedCrawler(pCrawler));
+                }
+            }
+
+            File pOutput = Files.createTempDirectory("replay-benchmark").toFile();
+
+            DownloadEngine pEngine = new DownloadEngine(iThreads, iThreads * 64, CrawlerRuntime.useVirtualThreads());
+            pEngine.setCongestionController(new CongestionController(2, iThreads));
+            pEngine.setQuarantine(new Quarantine(new File(pOutput, "quarantine")));
+
+            CrawlScheduler pScheduler = new CrawlScheduler(pCrawlers, pEngine, iThreads, CrawlScheduler.DEFAULT_PER_HOST);
+
+            long lStart = System.nanoTime();
+            Map<String, CrawlScheduler.Result> pResults = pScheduler.run(new File(pOutput, "crawl"));
+            long lTime = Math.max(1, (System.nanoTime() - lStart) / 1000000);
+
+            pScheduler.shutdown();
+            pEngine.shutdown();
+
+            long lBytes = 0;
+            for (ReplayServer.HostStatistics pHost : pServer.getStatistics().values()) {
+                lBytes += pHost.getBytes();
+            }
+
+            int iFetched = 0;
+            int iFailed = 0;
+            List<Long> pLatencies = new ArrayList<>(0);
+            System.out.println((CrawlerRuntime.useVirtualThreads() ? "virtual" : "platform") + " threads: " + iThreads + ", rate: " + dRate + "/s per host, latency: " + iLatency + "+" + iJitter + " ms, 500: " + dErrorRate + ", 429: " + dThrottleRate);
+            for (ParliamentCrawler pCrawler : pCrawlers) {
+                TimedCrawler pTimed = (TimedCrawler) pCrawler;
+                CrawlScheduler.Result pResult = pResults.get(pCrawler.getName());
+                iFetched += pResult.getFetched();
+                iFailed += pResult.getFailed();
+                pLatencies.addAll(pTimed.pLatencies);
+                System.out.println(pResult + "\tdiscovery: " + pTimed.lDiscovery / 1000000 + " ms");
+            }
+
+            long[] lLatencies = pLatencies.stream().mapToLong(Long::longValue).sorted().toArray();
+
+            System.out.println("documents: " + iFetched + "\tfailed: " + iFailed);
+            System.out.println("time: " + lTime + " ms\tdocuments/s: " + String.format("%.1f", iFetched * 1000.0 / lTime) + "\tMB/s: " + String.format("%.2f", lBytes / 1048576.0 * 1000 / lTime));
+            System.out.println("fetch latency (ms)\tp50: " + percentile(lLatencies, 50) + "\tp95: " + percentile(lLatencies, 95) + "\tp99: " + percentile(lLatencies, 99) + "\tmax: " + percentile(lLatencies, 100));
+
+            System.out.println("politeness (allowed: " + dRate + "/s, burst " + BURST + ")");
+            boolean bPolite = true;
+            for (ReplayServer.HostStatistics pHost : pServer.getStatistics().values()) {
+                boolean bHost = pHost.isPolite(dRate, BURST);
+                bPolite &= bHost;
+                System.out.println(pHost + "\t" + (bHost ? "OK" : "VIOLATION"));
+            }
+            System.out.println(bPolite ? "All hosts were crawled politely" : "Politeness was violated");
+
+        }
+
+    }
+
+    /**
+     * Method to get a percentile of sorted latencies
+     * @param lSorted in ns
+     * @param iPercentile
+     * @return in ms
+     */
+    private static long percentile(long[] lSorted, int iPercentile) {
+        if (lSorted.length == 0) {
+            return 0;
+        }
+        int iIndex = (int) Math.ceil(iPercentile / 100.0 * lSorted.length) - 1;
+        return lSorted[Math.max(0, Math.min(lSorted.length - 1, iIndex))] / 1000000;
+    }
+
+    /**
+     * Method to generate synthetic recordings with the URLs which the crawlers of SYNTHETIC request:
+     * the listing pages of the Bundesrat, the years of Liechtenstein and the result pages of Bremen, and the PDFs
+     * of all of them, which Brandenburg, NordrheinWestfalen and Hessen find by probing
+     * @param pDirectory
+     * @param iDocuments number of documents per parliament
+     * @throws IOException
+     */
+    public static void generate(File pDirectory, int iDocuments) throws IOException {
+
+        pDirectory.mkdirs();
+
+        // Bundesrat: archive, one page per legislature and the PDFs
+        String[] sPeriods = {"2017-2021", "2021-2025"};
+        StringBuilder sbArchive = new StringBuilder("<html><body><div><div class=\"body-text\"><table><tbody>");
+        for (int p = 0; p < sPeriods.length; p++) {
+            String sPeriod = sPeriods[p];
+            String sPath = "DE/service/archiv/pl-protokoll-archiv/_functions/plpr" + sPeriod.substring(0, 4) + "-" + sPeriod.substring(7) + "/plpr" + sPeriod.substring(0, 4) + "-" + sPeriod.substring(7) + "-node.html";
+            sbArchive.append("<tr><td><a href=\"").append(sPath).append("\">").append(sPeriod).append("</a></td></tr>");
+            StringBuilder sbPeriod = new StringBuilder("<html><body><table><tbody>");
+            for (int i = p; i < iDocuments; i += sPeriods.length) {
+                int iSession = 950 + i;
+                String sPDF = "SharedDocs/downloads/DE/plenarprotokolle/" + sPeriod.substring(0, 4) + "/Plenarprotokoll-" + iSession + ".pdf?__blob=publicationFile&v=1";
+                sbPeriod.append("<tr><td><a href=\"").append(sPDF.replace("&", "&amp;")).append("\" title=\"Plenarprotokoll ").append(iSession).append(" (PDF, 1MB)\">").append(iSession).append(". Sitzung</a></td></tr>");
+                ReplayServer.add(pDirectory, "https://www.bundesrat.de/" + sPDF, "application/pdf", pdf(iSession));
+            }
+            sbPeriod.append("</tbody></table></body></html>");
+            ReplayServer.add(pDirectory, "https://www.bundesrat.de/" + sPath, "text/html; charset=UTF-8", sbPeriod.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        sbArchive.append("</tbody></table></div></div></body></html>");
+        ReplayServer.add(pDirectory, "https://www.bundesrat.de/DE/service/archiv/pl-protokoll-archiv/pl-protokoll-archiv-node.html", "text/html; charset=UTF-8", sbArchive.toString().getBytes(StandardCharsets.UTF_8));
+
+        // Liechtenstein: one page per year since the first year, the sessions are selected by month and day
+        int iYears = LocalDate.now().getYear() - Liechtenstein.FIRST_YEAR + 1;
+        for (int y = 0; y < iYears; y++) {
+            int iYear = Liechtenstein.FIRST_YEAR + y;
+            StringBuilder sbYear = new StringBuilder("<html><body><table><tr>");
+            for (int i = y, k = 0; i < iDocuments; i += iYears, k++) {
+                int iMonth = 1 + k % 12;
+                int iDay = 1 + (k / 12) % 28;
+                sbYear.append("<td class=\"selectionDate\" onClick=\"location.href='default.aspx?mode=lp&amp;prim=").append(iYear).append("&amp;value=").append(iMonth).append("&amp;tag=").append(iDay).append("'\">").append(iDay).append(".").append(iMonth).append(".</td>");
+                ReplayServer.add(pDirectory, "https://lp.rechtportal.li/PDF/Landtagsprotokoll_" + iYear + "_" + iMonth + "_" + iDay + ".pdf", "application/pdf", pdf(i));
+            }
+            sbYear.append("</tr></table></body></html>");
+            ReplayServer.add(pDirectory, "https://www.landtag.li/protokolle/default.aspx?mode=lp&prim=" + iYear, "text/html; charset=UTF-8", sbYear.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Brandenburg: the sessions of the 7th period are probed
+        for (int i = 1; i <= iDocuments; i++) {
+            ReplayServer.add(pDirectory, "https://www.parlamentsdokumentation.brandenburg.de/starweb/LBB/ELVIS/parladoku/w7/plpr/" + i + ".pdf", "application/pdf", pdf(i));
+        }
+
+        // NordrheinWestfalen: the sessions of the periods 17 and 18 are probed
+        for (int i = 0; i < iDocuments; i++) {
+            ReplayServer.add(pDirectory, "https://www.landtag.nrw.de/portal/WWW/dokumentenarchiv/Dokument/MMP" + (17 + i % 2) + "-" + (1 + i / 2) + ".pdf", "application/pdf", pdf(i));
+        }
+
+        // Hessen: the sessions of the periods 16 to 20 are probed, the number is padded to five digits
+        for (int i = 0; i < iDocuments; i++) {
+            String sNumber = String.format("%05d", 1 + i / 5);
+            ReplayServer.add(pDirectory, "https://starweb.hessen.de/cache/PLPR/" + (16 + i % 5) + "/" + sNumber.substring(4) + "/" + sNumber + ".pdf", "application/pdf", pdf(i));
+        }
+
+        // Bremen: the list of the 20th period links result pages with ten PDFs each
+        String sBremen = "https://paris.bremische-buergerschaft.de/";
+        StringBuilder sbList = new StringBuilder("<html><body><select>");
+        for (int r = 0; r * 10 < iDocuments; r++) {
+            String sResult = "starweb/paris/servlet.starweb?path=paris/LISSHPLPRDokument.web&id=" + (r + 1);
+            sbList.append("<option value=\"").append(sResult.replace("&", "&amp;")).append("\">").append(r + 1).append("</option>");
+            StringBuilder sbResult = new StringBuilder("<html><body><table>");
+            for (int i = r * 10; i < Math.min(iDocuments, r * 10 + 10); i++) {
+                String sPDF = "paris.bremische-buergerschaft.de/dokumente/wp20/land/protokoll/p20l" + String.format("%04d", i + 1) + ".pdf";
+                // the portal links the PDFs with http, the crawler requests them with https
+                sbResult.append("<tr><td>").append(i + 1).append(". Sitzung</td><td><a href=\"http://").append(sPDF).append("\">PDF</a></td></tr>");
+                ReplayServer.add(pDirectory, "https://" + sPDF, "application/pdf", pdf(i));
+            }
+            sbResult.append("</table></body></html>");
+            ReplayServer.add(pDirectory, sBremen + sResult, "text/html; charset=UTF-8", sbResult.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        sbList.append("</select></body></html>");
+        ReplayServer.add(pDirectory, sBremen + "starweb/paris/servlet.starweb?path=paris/LISSHPLPRList.web&search=WP=20%20AND%20PARL=L%20AND%20DART=P", "text/html; charset=UTF-8", sbList.toString().getBytes(StandardCharsets.UTF_8));
+
+    }
+
+    private static String text(int iWords) {
+        String[] sWords = {"Präsident", "Abgeordnete", "Gesetz", "Antrag", "Beifall", "Zuruf", "Ausschuss", "Beratung"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < iWords; i++) {
+            sb.append(i > 0 ? " " : "").append(sWords[i % sWords.length]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method to create a small but structurally complete PDF
+     * @param iNumber
+     * @return
+     */
+    private static byte[] pdf(int iNumber) {
+        List<String> sObjects = new ArrayList<>(0);
+        sObjects.add("<< /Type /Catalog /Pages 2 0 R >>");
+        sObjects.add("<< /Type /Pages /Kids [3 0 R] /Count 1 >>");
+        sObjects.add("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] /Contents 4 0 R >>");
+        String sStream = "BT /F1 12 Tf 72 770 Td (Plenarprotokoll " + iNumber + " " + text(2000) + ") Tj ET";
+        sObjects.add("<< /Length " + sStream.length() + " >>\nstream\n" + sStream + "\nendstream");
+
+        StringBuilder sb = new StringBuilder("%PDF-1.4\n");
+        Map<Integer, Integer> pOffsets = new TreeMap<>();
+        for (int i = 0; i < sObjects.size(); i++) {
+            pOffsets.put(i + 1, sb.toString().getBytes(StandardCharsets.ISO_8859_1).length);
+            sb.append(i + 1).append(" 0 obj\n").append(sObjects.get(i)).append("\nendobj\n");
+        }
+        int iXRef = sb.toString().getBytes(StandardCharsets.ISO_8859_1).length;
+        sb.append("xref\n0 ").append(sObjects.size() + 1).append("\n0000000000 65535 f \n");
+        pOffsets.values().forEach(o -> sb.append(String.format("%010d 00000 n \n", o)));
+        sb.append("trailer\n<< /Size ").append(sObjects.size() + 1).append(" /Root 1 0 R >>\nstartxref\n").append(iXRef).append("\n%%EOF\n");
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Class for a crawler whose discovery and fetches are timed
+     */
+    private static class TimedCrawler implements ParliamentCrawler {
+
+        private final ParliamentCrawler pCrawler;
+
+        private final Queue<Long> pLatencies = new ConcurrentLinkedQueue<>();
+
+        private volatile long lDiscovery = 0;
+
+        TimedCrawler(ParliamentCrawler pCrawler) {
+            this.pCrawler = pCrawler;
+        }
+
+        @Override
+        public String getName() {
+            return pCrawler.getName();
+        }
+
+        @Override
+        public List<DownloadJob> discover(File pOutput) throws IOException {
+            long lStart = System.nanoTime();
+            try {
+                return pCrawler.discover(pOutput);
+            } finally {
+                lDiscovery = System.nanoTime() - lStart;
+            }
+        }
+
+        @Override
+        public File fetch(DownloadJob pJob, DownloadEngine pEngine) throws IOException {
+            long lStart = System.nanoTime();
+            try {
+                return pCrawler.fetch(pJob, pEngine);
+            } finally {
+                pLatencies.add(System.nanoTime() - lStart);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            pCrawler.finish();
+        }
+
+    }
+
+}
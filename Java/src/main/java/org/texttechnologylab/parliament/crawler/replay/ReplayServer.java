@@ -0,0 +1,478 @@
+package org.texttechnologylab.parliament.crawler.replay;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.texttechnologylab.parliament.crawler.download.BlobStore;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class for an offline HTTP server which answers with recorded responses of the parliament portals
+ * (listing pages, PDFs, JSON of PARLIS and the OData service of the Schweiz, ALTO XML of the OCR).
+ * The recordings are described in index.tsv of the recording directory (URL, content type, file).
+ * A request for http://&lt;server&gt;/&lt;host&gt;/&lt;path&gt; is answered with the recording of http(s)://&lt;host&gt;/&lt;path&gt;,
+ * with -Dgerparcor.replay=http://&lt;server&gt; the DownloadEngine and the PageCache send all requests to the server.
+ * Latency, errors and throttling (429 with Retry-After) can be injected, and every request is counted per host,
+ * so the politeness of a crawler can be checked afterwards.
+ * Usage: ReplayServer &lt;recordings&gt; [port] [latency ms] [error rate] [429 rate]
+ */
+public class ReplayServer implements Closeable {
+
+    public static final String INDEX = "index.tsv";
+
+    /**
+     * Requests which arrive this long after a 429 were sent before the crawler could see it
+     */
+    private static final long THROTTLE_GRACE = 50;
+
+    private final File pDirectory;
+
+    private final Map<String, Recording> pRecordings = new ConcurrentHashMap<>(0);
+
+    private final Map<String, HostStatistics> pStatistics = new ConcurrentHashMap<>(0);
+
+    private final HttpServer pServer;
+
+    private final ExecutorService pExecutor;
+
+    private volatile int iLatency = 0;
+
+    private volatile int iJitter = 0;
+
+    private volatile double dErrorRate = 0;
+
+    private volatile double dThrottleRate = 0;
+
+    private volatile int iRetryAfter = 1;
+
+    /**
+     * Constructor, the server is started immediately
+     * @param pDirectory directory with the recordings and index.tsv
+     * @param iPort port, 0 for a free port
+     * @throws IOException
+     */
+    public ReplayServer(File pDirectory, int iPort) throws IOException {
+        this.pDirectory = pDirectory;
+        load();
+        pServer = HttpServer.create(new InetSocketAddress("127.0.0.1", iPort), 4096);
+        pExecutor = Executors.newCachedThreadPool(CrawlerRuntime.platformThreadFactory("replay"));
+        pServer.setExecutor(pExecutor);
+        pServer.createContext("/", this::handle);
+        pServer.start();
+    }
+
+    /**
+     * Method to get the URL which has to be set as -Dgerparcor.replay
+     * @return
+     */
+    public String getBaseURL() {
+        return "http://127.0.0.1:" + pServer.getAddress().getPort();
+    }
+
+    /**
+     * Method to set the time the server waits before every answer
+     * @param iLatency in ms
+     * @param iJitter additional random time in ms
+     */
+    public void setLatency(int iLatency, int iJitter) {
+        this.iLatency = iLatency;
+        this.iJitter = iJitter;
+    }
+
+    /**
+     * Method to set the share of requests which are answered with 500
+     * @param dErrorRate
+     */
+    public void setErrorRate(double dErrorRate) {
+        this.dErrorRate = dErrorRate;
+    }
+
+    /**
+     * Method to set the share of requests which are answered with 429
+     * @param dThrottleRate
+     * @param iRetryAfter seconds sent in the Retry-After header
+     */
+    public void setThrottleRate(double dThrottleRate, int iRetryAfter) {
+        this.dThrottleRate = dThrottleRate;
+        this.iRetryAfter = iRetryAfter;
+    }
+
+    /**
+     * Method to get the URLs of all recordings
+     * @return
+     */
+    public List<String> getURLs() {
+        List<String> rList = new ArrayList<>(0);
+        pRecordings.values().forEach(r -> rList.add(r.sURL));
+        Collections.sort(rList);
+        return rList;
+    }
+
+    /**
+     * Method to get the request statistics per host
+     * @return
+     */
+    public Map<String, HostStatistics> getStatistics() {
+        return new TreeMap<>(pStatistics);
+    }
+
+    /**
+     * Method to forget the statistics of all previous requests
+     */
+    public void resetStatistics() {
+        pStatistics.clear();
+    }
+
+    /**
+     * Method to (re)read the index of the recordings
+     * @throws IOException
+     */
+    public void load() throws IOException {
+        File pIndex = new File(pDirectory, INDEX);
+        if (!pIndex.exists()) {
+            throw new IOException("No " + INDEX + " in " + pDirectory.getAbsolutePath());
+        }
+        try (BufferedReader pReader = Files.newBufferedReader(pIndex.toPath(), StandardCharsets.UTF_8)) {
+            String sLine;
+            while ((sLine = pReader.readLine()) != null) {
+                String[] sSplit = sLine.split("\t");
+                if (sSplit.length >= 3) {
+                    pRecordings.put(key(sSplit[0]), new Recording(sSplit[0], sSplit[1], new File(pDirectory, sSplit[2])));
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to add a response to a recording directory
+     * @param pDirectory
+     * @param sURL
+     * @param sContentType
+     * @param bContent
+     * @throws IOException
+     */
+    public static synchronized void add(File pDirectory, String sURL, String sContentType, byte[] bContent) throws IOException {
+        MessageDigest pDigest = BlobStore.newDigest();
+        pDigest.update(key(sURL).getBytes(StandardCharsets.UTF_8));
+        String sFile = "files/" + BlobStore.toHex(pDigest) + extension(sContentType);
+        File pFile = new File(pDirectory, sFile);
+        pFile.getParentFile().mkdirs();
+        Files.write(pFile.toPath(), bContent);
+        try (Writer pWriter = new OutputStreamWriter(new FileOutputStream(new File(pDirectory, INDEX), true), StandardCharsets.UTF_8)) {
+            pWriter.write(sURL + "\t" + sContentType + "\t" + sFile + "\n");
+        }
+    }
+
+    /**
+     * Method to record the responses of the real portals into a recording directory
+     * @param pDirectory
+     * @param sURLs
+     */
+    public static void record(File pDirectory, List<String> sURLs) {
+        DownloadEngine pEngine = DownloadEngine.getDefault();
+        for (String sURL : sURLs) {
+            try {
+                File pTemp = File.createTempFile("record", ".tmp");
+                pEngine.download(pTemp, sURL);
+                String sContentType = contentType(sURL, pTemp);
+                add(pDirectory, sURL, sContentType, Files.readAllBytes(pTemp.toPath()));
+                pTemp.delete();
+                System.out.println(sURL + "\t" + sContentType);
+            } catch (IOException e) {
+                System.out.println(sURL + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(HttpExchange pExchange) throws IOException {
+
+        long lArrival = System.currentTimeMillis();
+
+        URI pURI = pExchange.getRequestURI();
+        String sKey = pURI.getRawPath().substring(1) + (pURI.getRawQuery() != null ? "?" + pURI.getRawQuery() : "");
+        String sHost = sKey.split("[/?]", 2)[0];
+
+        HostStatistics pHost = pStatistics.computeIfAbsent(sHost, HostStatistics::new);
+        pHost.begin(lArrival);
+
+        try {
+
+            int iWait = iLatency + (iJitter > 0 ? ThreadLocalRandom.current().nextInt(iJitter) : 0);
+            if (iWait > 0) {
+                try {
+                    Thread.sleep(iWait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            double dRandom = ThreadLocalRandom.current().nextDouble();
+            if (dRandom < dThrottleRate) {
+                pHost.iThrottled.incrementAndGet();
+                pHost.lThrottledUntil = System.currentTimeMillis() + iRetryAfter * 1000L;
+                pHost.lThrottledAt = System.currentTimeMillis();
+                pExchange.getResponseHeaders().set("Retry-After", String.valueOf(iRetryAfter));
+                pExchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            if (dRandom < dThrottleRate + dErrorRate) {
+                pHost.iErrors.incrementAndGet();
+                pExchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            Recording pRecording = pRecordings.get(sKey);
+            if (pRecording == null || !pRecording.pFile.exists()) {
+                pHost.iMissing.incrementAndGet();
+                pExchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            pExchange.getResponseHeaders().set("Content-Type", pRecording.sContentType);
+            if ("HEAD".equals(pExchange.getRequestMethod())) {
+                pExchange.getResponseHeaders().set("Content-Length", String.valueOf(pRecording.pFile.length()));
+                pExchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            pExchange.sendResponseHeaders(200, pRecording.pFile.length());
+            try (OutputStream pOutput = pExchange.getResponseBody()) {
+                Files.copy(pRecording.pFile.toPath(), pOutput);
+            }
+            pHost.lBytes.addAndGet(pRecording.pFile.length());
+
+        } finally {
+            pHost.end();
+            pExchange.close();
+        }
+
+    }
+
+    /**
+     * Method to get the key of a URL, the scheme is ignored
+     * @param sURL
+     * @return
+     */
+    private static String key(String sURL) {
+        int iScheme = sURL.indexOf("://");
+        return iScheme >= 0 ? sURL.substring(iScheme + 3) : sURL;
+    }
+
+    private static String contentType(String sURL, File pFile) throws IOException {
+        String sLower = sURL.toLowerCase();
+        byte[] bStart = new byte[64];
+        int iRead;
+        try (InputStream pInput = Files.newInputStream(pFile.toPath())) {
+            iRead = Math.max(0, pInput.read(bStart));
+        }
+        String sStart = new String(bStart, 0, iRead, StandardCharsets.ISO_8859_1).trim();
+        if (sStart.startsWith("%PDF") || sLower.endsWith(".pdf")) {
+            return "application/pdf";
+        }
+        if (sStart.startsWith("{") || sStart.startsWith("[") || sLower.contains("$format=json")) {
+            return "application/json";
+        }
+        if (sStart.startsWith("<?xml") && !sLower.contains(".htm")) {
+            return "application/xml";
+        }
+        return "text/html; charset=UTF-8";
+    }
+
+    private static String extension(String sContentType) {
+        if (sContentType.contains("pdf")) {
+            return ".pdf";
+        }
+        if (sContentType.contains("json")) {
+            return ".json";
+        }
+        if (sContentType.contains("xml")) {
+            return ".xml";
+        }
+        return ".html";
+    }
+
+    @Override
+    public void close() {
+        pServer.stop(0);
+        pExecutor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        ReplayServer pServer = new ReplayServer(new File(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+        pServer.setLatency(args.length > 2 ? Integer.parseInt(args[2]) : 0, 0);
+        pServer.setErrorRate(args.length > 3 ? Double.parseDouble(args[3]) : 0);
+        pServer.setThrottleRate(args.length > 4 ? Double.parseDouble(args[4]) : 0, 1);
+
+        System.out.println(pServer.getURLs().size() + " recordings, start the crawler with -D" + CrawlerRuntime.REPLAY + "=" + pServer.getBaseURL());
+
+    }
+
+    /**
+     * Class for a recorded response
+     */
+    private static class Recording {
+
+        private final String sURL;
+
+        private final String sContentType;
+
+        private final File pFile;
+
+        Recording(String sURL, String sContentType, File pFile) {
+            this.sURL = sURL;
+            this.sContentType = sContentType;
+            this.pFile = pFile;
+        }
+
+    }
+
+    /**
+     * Class for the requests of one host
+     */
+    public static class HostStatistics {
+
+        private final String sHost;
+
+        private final ConcurrentLinkedQueue<Long> pArrivals = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger iActive = new AtomicInteger(0);
+
+        private final AtomicInteger iMaxActive = new AtomicInteger(0);
+
+        private final AtomicInteger iThrottled = new AtomicInteger(0);
+
+        private final AtomicInteger iIgnoredRetryAfter = new AtomicInteger(0);
+
+        private final AtomicInteger iErrors = new AtomicInteger(0);
+
+        private final AtomicInteger iMissing = new AtomicInteger(0);
+
+        private final AtomicLong lBytes = new AtomicLong(0);
+
+        private volatile long lThrottledAt = 0;
+
+        private volatile long lThrottledUntil = 0;
+
+        HostStatistics(String sHost) {
+            this.sHost = sHost;
+        }
+
+        private void begin(long lArrival) {
+            pArrivals.add(lArrival);
+            if (lArrival > lThrottledAt + THROTTLE_GRACE && lArrival < lThrottledUntil) {
+                iIgnoredRetryAfter.incrementAndGet();
+            }
+            iMaxActive.accumulateAndGet(iActive.incrementAndGet(), Math::max);
+        }
+
+        private void end() {
+            iActive.decrementAndGet();
+        }
+
+        public String getHost() {
+            return sHost;
+        }
+
+        public int getRequests() {
+            return pArrivals.size();
+        }
+
+        /**
+         * Method to get the highest number of requests which were answered at the same time
+         * @return
+         */
+        public int getMaxConcurrent() {
+            return iMaxActive.get();
+        }
+
+        /**
+         * Method to get the highest number of requests which arrived within a time window
+         * @param lWindow in ms
+         * @return
+         */
+        public int getMaxRequests(long lWindow) {
+            long[] lTimes = pArrivals.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(lTimes);
+            int iMax = 0;
+            int iStart = 0;
+            for (int i = 0; i < lTimes.length; i++) {
+                while (lTimes[i] - lTimes[iStart] >= lWindow) {
+                    iStart++;
+                }
+                iMax = Math.max(iMax, i - iStart + 1);
+            }
+            return iMax;
+        }
+
+        public int getThrottled() {
+            return iThrottled.get();
+        }
+
+        /**
+         * Method to get the number of requests which arrived while the host was paused by a Retry-After
+         * @return
+         */
+        public int getIgnoredRetryAfter() {
+            return iIgnoredRetryAfter.get();
+        }
+
+        public int getErrors() {
+            return iErrors.get();
+        }
+
+        public int getMissing() {
+            return iMissing.get();
+        }
+
+        public long getBytes() {
+            return lBytes.get();
+        }
+
+        /**
+         * Method to check if the host never got more requests than a token bucket allows
+         * @param dRate requests per second
+         * @param iBurst
+         * @return
+         */
+        public boolean isPolite(double dRate, int iBurst) {
+            // one request of tolerance for the time between the token and the arrival
+            return getMaxRequests(1000) <= iBurst + Math.ceil(dRate) + 1 && getIgnoredRetryAfter() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return sHost + "\trequests: " + getRequests() + "\tmax/s: " + getMaxRequests(1000) + "\tmax concurrent: " + getMaxConcurrent()
+                    + "\t429: " + getThrottled() + "\tignored Retry-After: " + getIgnoredRetryAfter() + "\t500: " + getErrors() + "\t404: " + getMissing();
+        }
+
+    }
+
+}
@@ -0,0 +1,317 @@
+package org.texttechnologylab.parliament.crawler.schedule;
+
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.crawler.download.HostRateLimiter;
+import org.texttechnologylab.parliament.crawler.metrics.CrawlerMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Class for running all registered ParliamentCrawler at once.
+ * The discovery of every crawler runs in its own thread. The fetches are distributed to one lane per host,
+ * which has a fixed number of workers, so a slow or hanging portal only blocks its own lane.
+ * In the virtual thread mode (-Dgerparcor.threads=virtual) every fetch gets its own virtual thread and the
+ * lanes only limit the fetches per host.
+ * A global semaphore caps the number of fetches of all lanes together.
+ * The jobs of every crawler are counted in the CrawlerMetrics (gerparcor_jobs_total).
+ * Usage: CrawlScheduler &lt;output&gt; [name ...]
+ */
+public class CrawlScheduler {
+
+    /**
+     * Maximum number of parallel fetches, can be set with -Dgerparcor.scheduler.global
+     */
+    public static final int DEFAULT_GLOBAL = Integer.getInteger("gerparcor.scheduler.global", 32);
+
+    /**
+     * Number of parallel fetches per host, can be set with -Dgerparcor.scheduler.host
+     */
+    public static final int DEFAULT_PER_HOST = Integer.getInteger("gerparcor.scheduler.host", 4);
+
+    /**
+     * Classes of the crawlers which are not ported to the ParliamentCrawler yet, they still have to be run with
+     * their own main or test methods until they are ported
+     */
+    public static final List<String> NOT_COVERED = Arrays.asList(
+            "Bundestag", "Reichtstag", "Schweiz", "Oesterreich",
+            "BaWue", "Bayern", "Berlin", "MeckPom", "Niedersachsen", "RheinlandPfalnz", "Saarland",
+            "Sachsen", "SachsenAnhalt", "Schleswig_Holstein", "Thueringen",
+            "Kaernten", "Niederoestereich", "Oberoestereich", "Salzburg", "Steiermark", "Tirol", "Vorarlberg");
+
+    private final List<ParliamentCrawler> pCrawlers;
+
+    private final DownloadEngine pEngine;
+
+    private final Semaphore pGlobal;
+
+    private final int iPerHost;
+
+    private final boolean bVirtual;
+
+    private final Map<String, Lane> pLanes = new ConcurrentHashMap<>(0);
+
+    /**
+     * Executor of all lanes in the virtual thread mode
+     */
+    private ExecutorService pVirtual = null;
+
+    private final AtomicInteger iPending = new AtomicInteger(0);
+
+    /**
+     * Constructor
+     * @param pCrawlers
+     * @param pEngine engine which executes the fetches
+     * @param iGlobal maximum number of parallel fetches
+     * @param iPerHost number of parallel fetches per host
+     */
+    public CrawlScheduler(List<ParliamentCrawler> pCrawlers, DownloadEngine pEngine, int iGlobal, int iPerHost) {
+        this(pCrawlers, pEngine, iGlobal, iPerHost, CrawlerRuntime.useVirtualThreads());
+    }
+
+    /**
+     * Constructor
+     * @param pCrawlers
+     * @param pEngine engine which executes the fetches
+     * @param iGlobal maximum number of parallel fetches
+     * @param iPerHost number of parallel fetches per host
+     * @param bVirtual true to run every fetch in its own virtual thread
+     */
+    public CrawlScheduler(List<ParliamentCrawler> pCrawlers, DownloadEngine pEngine, int iGlobal, int iPerHost, boolean bVirtual) {
+        this.pCrawlers = pCrawlers;
+        this.pEngine = pEngine;
+        this.pGlobal = new Semaphore(iGlobal, true);
+        this.iPerHost = iPerHost;
+        this.bVirtual = bVirtual;
+        if (bVirtual) {
+            pVirtual = CrawlerRuntime.newVirtualExecutor("fetch");
+        }
+    }
+
+    /**
+     * Method to load all crawlers which are registered via the ServiceLoader
+     * @return
+     */
+    public static List<ParliamentCrawler> load() {
+        List<ParliamentCrawler> rList = new ArrayList<>(0);
+        ServiceLoader.load(ParliamentCrawler.class).forEach(rList::add);
+        return rList;
+    }
+
+    /**
+     * Method to run all crawlers and wait until all documents are fetched
+     * @param pOutput root directory, every crawler writes into a subdirectory with its name
+     * @return the results per crawler
+     * @throws InterruptedException
+     */
+    public Map<String, Result> run(File pOutput) throws InterruptedException {
+
+        Map<String, Result> rResults = new LinkedHashMap<>(0);
+        pCrawlers.forEach(c -> rResults.put(c.getName(), new Result(c.getName())));
+
+        ExecutorService pDiscovery = Executors.newFixedThreadPool(Math.max(1, pCrawlers.size()), CrawlerRuntime.platformThreadFactory("discovery"));
+
+        for (ParliamentCrawler pCrawler : pCrawlers) {
+            Result pResult = rResults.get(pCrawler.getName());
+            pDiscovery.execute(() -> {
+                try {
+                    File pDirectory = new File(pOutput, pCrawler.getName());
+                    pDirectory.mkdirs();
+                    List<DownloadJob> pJobs = pCrawler.discover(pDirectory);
+                    pResult.iDiscovered.addAndGet(pJobs.size());
+                    count(pCrawler, "discovered").add(pJobs.size());
+                    pJobs.forEach(pJob -> schedule(pCrawler, pJob, pResult));
+                } catch (Exception e) {
+                    pResult.sError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                    e.printStackTrace();
+                }
+            });
+        }
+
+        pDiscovery.shutdown();
+        pDiscovery.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        synchronized (iPending) {
+            while (iPending.get() > 0) {
+                iPending.wait(1000);
+            }
+        }
+
+        for (ParliamentCrawler pCrawler : pCrawlers) {
+            try {
+                pCrawler.finish();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return rResults;
+
+    }
+
+    /**
+     * Method to hand a fetch to the lane of its host
+     * @param pCrawler
+     * @param pJob
+     * @param pResult
+     */
+    private void schedule(ParliamentCrawler pCrawler, DownloadJob pJob, Result pResult) {
+
+        if (pJob.getParliament().isEmpty()) {
+            pJob.parliament(pCrawler.getName());
+        }
+
+        String sHost = HostRateLimiter.getHost(pJob.getURL());
+        Lane pLane = pLanes.computeIfAbsent(sHost, h -> new Lane(bVirtual ? pVirtual : CrawlerRuntime.newExecutor(h, iPerHost, false), iPerHost));
+
+        iPending.incrementAndGet();
+        pLane.pExecutor.execute(() -> {
+            try {
+                pLane.pPermits.acquire();
+                try {
+                    pGlobal.acquire();
+                    try {
+                        pCrawler.fetch(pJob, pEngine);
+                        pResult.iFetched.incrementAndGet();
+                        count(pCrawler, "fetched").increment();
+                    } finally {
+                        pGlobal.release();
+                    }
+                } finally {
+                    pLane.pPermits.release();
+                }
+            } catch (IOException | RuntimeException e) {
+                // a RuntimeException of the parsing code of a crawler is a failed job as well
+                pResult.iFailed.incrementAndGet();
+                count(pCrawler, "failed").increment();
+                System.out.println(pJob.getURL() + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (iPending.decrementAndGet() == 0) {
+                    synchronized (iPending) {
+                        iPending.notifyAll();
+                    }
+                }
+            }
+        });
+
+    }
+
+    private static LongAdder count(ParliamentCrawler pCrawler, String sResult) {
+        return CrawlerMetrics.getDefault().counter("gerparcor_jobs_total", "Jobs of the crawlers by result (discovered, fetched, failed)", "parliament", pCrawler.getName(), "result", sResult);
+    }
+
+    /**
+     * Method to stop the workers of all lanes
+     */
+    public void shutdown() {
+        pLanes.values().forEach(l -> l.pExecutor.shutdown());
+        if (pVirtual != null) {
+            pVirtual.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        File pOutput = new File(args[0]);
+        pOutput.mkdirs();
+
+        List<ParliamentCrawler> pCrawlers = load();
+        if (args.length > 1) {
+            List<String> sNames = Arrays.asList(args).subList(1, args.length);
+            pCrawlers = pCrawlers.stream().filter(c -> sNames.contains(c.getName())).collect(Collectors.toList());
+        }
+
+        // one run does not refresh the whole corpus yet
+        System.out.println("WARNING: not covered by the scheduler, run them on their own: " + String.join(", ", NOT_COVERED));
+
+        CrawlScheduler pScheduler = new CrawlScheduler(pCrawlers, DownloadEngine.getDefault(), DEFAULT_GLOBAL, DEFAULT_PER_HOST);
+
+        long lStart = System.currentTimeMillis();
+        pScheduler.run(pOutput).values().forEach(System.out::println);
+        System.out.println("Finished in " + (System.currentTimeMillis() - lStart) + " ms");
+
+        pScheduler.shutdown();
+
+    }
+
+    /**
+     * Class for the workers and the limit of a host
+     */
+    private static class Lane {
+
+        private final ExecutorService pExecutor;
+
+        private final Semaphore pPermits;
+
+        Lane(ExecutorService pExecutor, int iPermits) {
+            this.pExecutor = pExecutor;
+            this.pPermits = new Semaphore(iPermits);
+        }
+
+    }
+
+    /**
+     * Class for the result of a crawler
+     */
+    public static class Result {
+
+        private final String sName;
+
+        private final AtomicInteger iDiscovered = new AtomicInteger(0);
+
+        private final AtomicInteger iFetched = new AtomicInteger(0);
+
+        private final AtomicInteger iFailed = new AtomicInteger(0);
+
+        private volatile String sError = null;
+
+        Result(String sName) {
+            this.sName = sName;
+        }
+
+        public String getName() {
+            return sName;
+        }
+
+        public int getDiscovered() {
+            return iDiscovered.get();
+        }
+
+        public int getFetched() {
+            return iFetched.get();
+        }
+
+        public int getFailed() {
+            return iFailed.get();
+        }
+
+        public String getError() {
+            return sError;
+        }
+
+        @Override
+        public String toString() {
+            return sName + "\tdiscovered: " + getDiscovered() + "\tfetched: " + getFetched() + "\tfailed: " + getFailed() + (sError != null ? "\terror: " + sError : "");
+        }
+
+    }
+
+}
@@ -0,0 +1,248 @@
+package org.texttechnologylab.parliament.crawler.schedule;
+
+import org.bson.Document;
+import org.texttechnologylab.parliament.crawler.download.CrawlerRuntime;
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+import org.texttechnologylab.parliament.database.MongoDBConfig;
+import org.texttechnologylab.parliament.database.MongoDBConnectionHandler;
+import org.texttechnologylab.parliament.database.MongoWorkQueue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class for a crawl which is shared by several machines through a MongoWorkQueue.
+ * Every registered ParliamentCrawler gets a discover task; the node which leases it runs the discovery and adds a
+ * download task for every document, which any node can lease and fetch. All nodes write into the same output
+ * directory (e.g. a shared file system), the targets are stored relative to it.
+ * A node stops when no task is pending or leased anymore.
+ * The collection of the queue is set with -Dgerparcor.queue, a new crawl needs a new collection.
+ * Usage: DistributedCrawl &lt;mongo config&gt; &lt;output&gt; [workers [name ...]]
+ */
+public class DistributedCrawl {
+
+    public static final String DISCOVER = "discover";
+
+    public static final String DOWNLOAD = "download";
+
+    public static final String COLLECTION = System.getProperty("gerparcor.queue", "crawl_queue");
+
+    /**
+     * Pause of an idle worker while other nodes still hold leases
+     */
+    private static final long IDLE = 5000;
+
+    private final MongoWorkQueue pQueue;
+
+    private final Map<String, ParliamentCrawler> pCrawlers = new LinkedHashMap<>(0);
+
+    private final DownloadEngine pEngine;
+
+    private final File pOutput;
+
+    /**
+     * Constructor
+     * @param pQueue
+     * @param pCrawlers
+     * @param pEngine
+     * @param pOutput root directory, every crawler writes into a subdirectory with its name
+     */
+    public DistributedCrawl(MongoWorkQueue pQueue, List<ParliamentCrawler> pCrawlers, DownloadEngine pEngine, File pOutput) {
+        this.pQueue = pQueue;
+        this.pEngine = pEngine;
+        this.pOutput = pOutput;
+        pCrawlers.forEach(c -> this.pCrawlers.put(c.getName(), c));
+    }
+
+    /**
+     * Method to add the discover tasks of all crawlers, tasks of a former call are kept
+     * @return number of new tasks
+     */
+    public int seed() {
+        int rCount = 0;
+        for (String sName : pCrawlers.keySet()) {
+            if (pQueue.add(DISCOVER + ":" + sName, DISCOVER, new Document("parliament", sName))) {
+                rCount++;
+            }
+        }
+        return rCount;
+    }
+
+    /**
+     * Method to work on the tasks of the queue until all tasks of all nodes are finished
+     * @param iWorkers number of tasks which this node runs in parallel
+     * @return number of tasks which this node completed
+     * @throws InterruptedException
+     */
+    public int run(int iWorkers) throws InterruptedException {
+
+        AtomicInteger rCompleted = new AtomicInteger(0);
+        ExecutorService pWorkers = CrawlerRuntime.newExecutor("queue", iWorkers);
+
+        pQueue.startHeartbeat();
+
+        for (int w = 0; w < iWorkers; w++) {
+            pWorkers.execute(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        MongoWorkQueue.Lease pLease = pQueue.lease();
+                        if (pLease == null) {
+                            // the discovery of another node may still add downloads
+                            if (pQueue.isFinished()) {
+                                return;
+                            }
+                            Thread.sleep(IDLE);
+                            continue;
+                        }
+                        try {
+                            process(pLease);
+                            if (pQueue.complete(pLease)) {
+                                rCompleted.incrementAndGet();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            System.out.println(pLease + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage());
+                            pQueue.fail(pLease, e.getClass().getSimpleName() + ": " + e.getMessage());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        pWorkers.shutdown();
+        pWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        pQueue.stopHeartbeat();
+
+        for (ParliamentCrawler pCrawler : pCrawlers.values()) {
+            try {
+                pCrawler.finish();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return rCompleted.get();
+
+    }
+
+    /**
+     * Method to run a task
+     * @param pLease
+     * @throws IOException
+     */
+    private void process(MongoWorkQueue.Lease pLease) throws IOException {
+
+        Document pPayload = pLease.getPayload();
+        ParliamentCrawler pCrawler = pCrawlers.get(pPayload.getString("parliament"));
+        if (pCrawler == null) {
+            throw new IOException("No crawler " + pPayload.getString("parliament") + " on " + pQueue.getOwner());
+        }
+
+        switch (pLease.getType()) {
+            case DISCOVER:
+                File pDirectory = new File(pOutput, pCrawler.getName());
+                pDirectory.mkdirs();
+                int iNew = 0;
+                for (DownloadJob pJob : pCrawler.discover(pDirectory)) {
+                    if (pJob.getParliament().isEmpty()) {
+                        pJob.parliament(pCrawler.getName());
+                    }
+                    Document pJobDocument = toDocument(pJob);
+                    if (pQueue.add(DOWNLOAD + ":" + pJobDocument.getString("target"), DOWNLOAD, pJobDocument)) {
+                        iNew++;
+                    }
+                }
+                System.out.println(pCrawler.getName() + "\t" + iNew + " downloads added by " + pQueue.getOwner());
+                break;
+            case DOWNLOAD:
+                pCrawler.fetch(toJob(pPayload), pEngine);
+                break;
+            default:
+                throw new IOException("Unknown task " + pLease.getType());
+        }
+
+    }
+
+    /**
+     * Method to store a download in a task, the target is stored relative to the output directory
+     * @param pJob
+     * @return
+     */
+    Document toDocument(DownloadJob pJob) {
+        String sTarget = pOutput.getAbsoluteFile().toPath().relativize(pJob.getTarget().getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+        Document rDocument = new Document("parliament", pJob.getParliament())
+                .append("target", sTarget)
+                .append("url", pJob.getURL())
+                .append("method", pJob.getMethod())
+                .append("headers", new Document(new LinkedHashMap<String, Object>(pJob.getHeaders())));
+        if (pJob.getStoreKey() != null) {
+            rDocument.append("store", Arrays.asList(pJob.getStoreKey()));
+        }
+        return rDocument;
+    }
+
+    /**
+     * Method to get the download of a task
+     * @param pDocument
+     * @return
+     */
+    DownloadJob toJob(Document pDocument) {
+        DownloadJob rJob = new DownloadJob(new File(pOutput, pDocument.getString("target")), pDocument.getString("url"))
+                .method(pDocument.getString("method"));
+        Document pHeaders = pDocument.get("headers", Document.class);
+        if (pHeaders != null) {
+            pHeaders.forEach((k, v) -> rJob.header(k, String.valueOf(v)));
+        }
+        List<String> sStore = pDocument.getList("store", String.class);
+        if (sStore != null && sStore.size() == 3) {
+            rJob.store(sStore.get(0), sStore.get(1), sStore.get(2));
+        }
+        return rJob.parliament(pDocument.getString("parliament"));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        MongoDBConnectionHandler pHandler = new MongoDBConnectionHandler(new MongoDBConfig(args[0]));
+
+        File pOutput = new File(args[1]);
+        pOutput.mkdirs();
+
+        int iWorkers = args.length > 2 ? Integer.parseInt(args[2]) : CrawlScheduler.DEFAULT_GLOBAL;
+
+        List<ParliamentCrawler> pCrawlers = CrawlScheduler.load();
+        if (args.length > 3) {
+            List<String> sNames = Arrays.asList(args).subList(3, args.length);
+            pCrawlers.removeIf(c -> !sNames.contains(c.getName()));
+        }
+
+        // host name and process id, e.g. 4711@crawler1
+        String sOwner = ManagementFactory.getRuntimeMXBean().getName();
+        if (!sOwner.contains("@")) {
+            sOwner = sOwner + "@" + InetAddress.getLocalHost().getHostName();
+        }
+
+        DistributedCrawl pCrawl = new DistributedCrawl(new MongoWorkQueue(pHandler, COLLECTION, sOwner), pCrawlers, DownloadEngine.getDefault(), pOutput);
+
+        System.out.println(pCrawl.seed() + " crawlers added to " + COLLECTION);
+
+        long lStart = System.currentTimeMillis();
+        int iCompleted = pCrawl.run(iWorkers);
+        System.out.println(sOwner + " completed " + iCompleted + " tasks in " + (System.currentTimeMillis() - lStart) + " ms");
+
+        DownloadEngine.getDefault().shutdown();
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.texttechnologylab.parliament.crawler.schedule;
+
+import org.texttechnologylab.parliament.crawler.download.DownloadEngine;
+import org.texttechnologylab.parliament.crawler.download.DownloadJob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Interface for a crawler of a parliament which can be run by the CrawlScheduler.
+ * A crawler splits its work into the discovery of the documents (listing pages, probing, ...) and the
+ * fetch of each document, so the scheduler can run the fetches of all parliaments in parallel.
+ * Implementations are registered in META-INF/services/org.texttechnologylab.parliament.crawler.schedule.ParliamentCrawler
+ */
+public interface ParliamentCrawler {
+
+    /**
+     * Method to get the name of the parliament, which is also the name of the output directory
+     * @return
+     */
+    String getName();
+
+    /**
+     * Method to find the documents of the parliament
+     * @param pOutput output directory of the parliament
+     * @return the downloads which are not finished yet
+     * @throws IOException
+     */
+    List<DownloadJob> discover(File pOutput) throws IOException;
+
+    /**
+     * Method to fetch a single document
+     * @param pJob
+     * @param pEngine
+     * @return
+     * @throws IOException
+     */
+    default File fetch(DownloadJob pJob, DownloadEngine pEngine) throws IOException {
+        return pEngine.download(pJob);
+    }
+
+    /**
+     * Method which is called after all fetches of the crawler are finished, e.g. to close a Watermark
+     * @throws IOException
+     */
+    default void finish() throws IOException {
+    }
+
+}
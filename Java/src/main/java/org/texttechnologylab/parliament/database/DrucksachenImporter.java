@@ -0,0 +1,538 @@
+package org.texttechnologylab.parliament.database;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Class for loading the Drucksachen (XML and JSON files of Bundestag.Drucksachen) into a collection of the MongoDB.
+ * The files are read with streaming parsers (Jackson JsonParser, StAX) without building a tree, every record
+ * becomes a Document. A file contains one record or a list of records (a JSON array, a documents array of the DIP API
+ * or an XML root with repeated children). Every worker collects the records in batches which are written with an
+ * unordered bulkWrite as upserts on the id of the record, so the import can be repeated.
+ * If a Drucksache exists as JSON and as XML, only the JSON file is imported.
+ * Usage: DrucksachenImporter &lt;mongo config&gt; [directory [collection [workers]]]
+ */
+public class DrucksachenImporter {
+
+    public static final String COLLECTION = "drucksachen";
+
+    public static final int DEFAULT_BATCH = 1000;
+
+    /**
+     * Number of attempts of a batch which failed as a whole (e.g. a lost connection)
+     */
+    private static final int WRITE_ATTEMPTS = 3;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final MongoCollection<Document> pCollection;
+
+    private int iBatchSize = DEFAULT_BATCH;
+
+    private final AtomicLong lFiles = new AtomicLong(0);
+    private final AtomicLong lRecords = new AtomicLong(0);
+    private final AtomicLong lErrors = new AtomicLong(0);
+
+    /**
+     * Constructor
+     * @param pCollection
+     */
+    public DrucksachenImporter(MongoCollection<Document> pCollection) {
+        this.pCollection = pCollection;
+    }
+
+    /**
+     * Method to set the number of records of a bulk write
+     * @param iBatchSize
+     * @return
+     */
+    public DrucksachenImporter setBatchSize(int iBatchSize) {
+        this.iBatchSize = Math.max(1, iBatchSize);
+        return this;
+    }
+
+    /**
+     * Method to import all Drucksachen of a directory
+     * @param pDirectory
+     * @param iWorkers number of files which are parsed and written in parallel
+     * @return number of records which were written
+     * @throws InterruptedException
+     */
+    public long importDirectory(File pDirectory, int iWorkers) throws InterruptedException {
+
+        Queue<File> pFiles = new ConcurrentLinkedQueue<>();
+        File[] pList = pDirectory.listFiles();
+        if (pList != null) {
+            for (File f : pList) {
+                String sName = f.getName();
+                if (sName.endsWith(".json")) {
+                    pFiles.add(f);
+                } else if (sName.endsWith(".xml") && !new File(pDirectory, sName.substring(0, sName.length() - 4) + ".json").exists()) {
+                    pFiles.add(f);
+                }
+            }
+        }
+
+        ExecutorService pWorkers = Executors.newFixedThreadPool(Math.max(1, iWorkers));
+
+        for (int w = 0; w < Math.max(1, iWorkers); w++) {
+            pWorkers.execute(() -> {
+
+                // the XMLInputFactory is not guaranteed to be thread-safe
+                XMLInputFactory pXML = newXMLInputFactory();
+                List<WriteModel<Document>> pBatch = new ArrayList<>(iBatchSize);
+
+                File f;
+                while ((f = pFiles.poll()) != null) {
+                    try {
+                        read(f, pXML, pRecord -> {
+                            pBatch.add(new ReplaceOneModel<>(Filters.eq("_id", pRecord.get("_id")), pRecord, new ReplaceOptions().upsert(true)));
+                            if (pBatch.size() >= iBatchSize) {
+                                write(pBatch);
+                            }
+                        });
+                        lFiles.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        // the records of the file before the error stay in the batch, the worker continues with the next file
+                        System.out.println(f.getName() + "\t" + e.getClass().getSimpleName() + "\t" + e.getMessage());
+                        lErrors.incrementAndGet();
+                    }
+                }
+                write(pBatch);
+
+            });
+        }
+
+        pWorkers.shutdown();
+        pWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        return lRecords.get();
+
+    }
+
+    /**
+     * Method to write a batch, the batch is empty afterwards.
+     * Errors are counted and logged, they never end the worker: records rejected by the server are errors, a batch which
+     * failed as a whole is written again up to WRITE_ATTEMPTS times (the upserts can be repeated) and then counted as errors.
+     * The driver waits for a server (serverSelectionTimeout) before every attempt.
+     * @param pBatch
+     */
+    private void write(List<WriteModel<Document>> pBatch) {
+
+        if (pBatch.isEmpty()) {
+            return;
+        }
+        for (int iAttempt = 1; ; iAttempt++) {
+            try {
+                // unordered: the server applies the writes in any order and continues after an error
+                pCollection.bulkWrite(pBatch, new BulkWriteOptions().ordered(false));
+                lRecords.addAndGet(pBatch.size());
+                break;
+            } catch (MongoBulkWriteException e) {
+                List<BulkWriteError> pErrors = e.getWriteErrors();
+                lRecords.addAndGet(pBatch.size() - pErrors.size());
+                lErrors.addAndGet(pErrors.size());
+                if (!pErrors.isEmpty()) {
+                    System.out.println(pErrors.size() + " of " + pBatch.size() + " records not written: " + pErrors.get(0).getMessage());
+                }
+                // the exception may only carry a write concern error, then all records were applied but not acknowledged
+                if (e.getWriteConcernError() != null) {
+                    System.out.println("write concern error for " + pBatch.size() + " records: " + e.getWriteConcernError().getMessage());
+                }
+                break;
+            } catch (MongoException e) {
+                if (iAttempt >= WRITE_ATTEMPTS) {
+                    lErrors.addAndGet(pBatch.size());
+                    System.out.println(pBatch.size() + " records not written after " + iAttempt + " attempts: " + e.getMessage());
+                    break;
+                }
+                System.out.println("batch of " + pBatch.size() + " records failed, retry " + iAttempt + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                // a record which can not be encoded (e.g. a field name with $) fails the batch before it is sent,
+                // so the records are written one by one and only the broken one is lost
+                if (pBatch.size() > 1) {
+                    for (WriteModel<Document> pModel : pBatch) {
+                        write(new ArrayList<>(Collections.singletonList(pModel)));
+                    }
+                } else {
+                    lErrors.incrementAndGet();
+                    System.out.println("record not written: " + e.getClass().getSimpleName() + "\t" + e.getMessage());
+                }
+                break;
+            }
+        }
+        pBatch.clear();
+
+    }
+
+    /**
+     * Method to read the records of a file
+     * @param pFile
+     * @param pXML factory for the XML files
+     * @param pConsumer gets every record with its _id
+     * @throws IOException
+     */
+    public static void read(File pFile, XMLInputFactory pXML, Consumer<Document> pConsumer) throws IOException {
+
+        String sName = pFile.getName();
+        String sBase = sName.substring(0, sName.lastIndexOf('.'));
+        int[] iIndex = {0};
+
+        Consumer<Document> pIdentify = pRecord -> {
+            Object pID = pRecord.get("id");
+            // records without an id are identified by the file and their position in it
+            pRecord.put("_id", pID != null ? String.valueOf(pID) : sBase + "#" + iIndex[0]);
+            pRecord.put("file", sName);
+            iIndex[0]++;
+            pConsumer.accept(pRecord);
+        };
+
+        try (InputStream pInput = new BufferedInputStream(new FileInputStream(pFile), 1 << 16)) {
+            if (sName.endsWith(".json")) {
+                readJSON(pInput, pIdentify);
+            } else {
+                readXML(pInput, pXML, pIdentify);
+            }
+        }
+
+    }
+
+    /**
+     * Method to create a factory for readXML, DTDs and external entities are not loaded
+     * @return
+     */
+    public static XMLInputFactory newXMLInputFactory() {
+        XMLInputFactory rFactory = XMLInputFactory.newInstance();
+        rFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        rFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        rFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        rFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        return rFactory;
+    }
+
+    /**
+     * Method to read the records of a JSON file: the elements of a top level array, the elements of the documents
+     * array of a response of the DIP API or the top level object
+     * @param pInput
+     * @param pConsumer
+     * @throws IOException
+     */
+    static void readJSON(InputStream pInput, Consumer<Document> pConsumer) throws IOException {
+
+        try (JsonParser pParser = JSON.createParser(pInput)) {
+
+            JsonToken pToken = pParser.nextToken();
+
+            if (pToken == JsonToken.START_ARRAY) {
+                readRecords(pParser, pConsumer);
+            } else if (pToken == JsonToken.START_OBJECT) {
+                Document pRoot = new Document();
+                boolean bList = false;
+                while (pParser.nextToken() == JsonToken.FIELD_NAME) {
+                    String sField = pParser.getCurrentName();
+                    if (pParser.nextToken() == JsonToken.START_ARRAY && "documents".equals(sField)) {
+                        readRecords(pParser, pConsumer);
+                        bList = true;
+                    } else {
+                        pRoot.put(sField, readValue(pParser));
+                    }
+                }
+                // numFound, cursor, ... of a list are no record
+                if (!bList) {
+                    pConsumer.accept(pRoot);
+                }
+            } else if (pToken != null) {
+                throw new IOException("No JSON object or array: " + pToken);
+            }
+
+        }
+
+    }
+
+    /**
+     * Method to read the objects of an array as records, one after another
+     * @param pParser positioned on the START_ARRAY, afterwards on its END_ARRAY
+     * @param pConsumer
+     * @throws IOException
+     */
+    private static void readRecords(JsonParser pParser, Consumer<Document> pConsumer) throws IOException {
+        JsonToken pToken;
+        while ((pToken = pParser.nextToken()) != JsonToken.END_ARRAY && pToken != null) {
+            if (pToken == JsonToken.START_OBJECT) {
+                pConsumer.accept((Document) readValue(pParser));
+            } else {
+                pParser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Method to read the value of the current token
+     * @param pParser positioned on the first token of the value, afterwards on its last token
+     * @return a Document, a List, a String, a number, a Boolean or null
+     * @throws IOException
+     */
+    private static Object readValue(JsonParser pParser) throws IOException {
+
+        switch (pParser.currentToken()) {
+            case START_OBJECT:
+                Document rDocument = new Document();
+                while (pParser.nextToken() == JsonToken.FIELD_NAME) {
+                    String sField = pParser.getCurrentName();
+                    pParser.nextToken();
+                    rDocument.put(sField, readValue(pParser));
+                }
+                return rDocument;
+            case START_ARRAY:
+                List<Object> rList = new ArrayList<>(0);
+                while (pParser.nextToken() != JsonToken.END_ARRAY) {
+                    rList.add(readValue(pParser));
+                }
+                return rList;
+            case VALUE_STRING:
+                return pParser.getText();
+            case VALUE_NUMBER_INT:
+                switch (pParser.getNumberType()) {
+                    case INT:
+                        return pParser.getIntValue();
+                    case LONG:
+                        return pParser.getLongValue();
+                    default:
+                        // BSON has no arbitrary precision integers
+                        return pParser.getText();
+                }
+            case VALUE_NUMBER_FLOAT:
+                return pParser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+
+    }
+
+    /**
+     * Method to read the records of an XML file. Every element becomes a Document with its attributes and child
+     * elements as fields (repeated children become a list, an element with only text becomes a String, mixed text is
+     * stored in the field text). If the first two children of the root are elements with the same name, every child
+     * with this name is a record and is passed on as soon as it is read, otherwise the root is the record.
+     * Only the first child is kept until the second one decides, other children of a list of records are kept in the
+     * root, which is then a record of its own.
+     * @param pInput
+     * @param pFactory
+     * @param pConsumer
+     * @throws IOException
+     */
+    static void readXML(InputStream pInput, XMLInputFactory pFactory, Consumer<Document> pConsumer) throws IOException {
+
+        XMLStreamReader pReader = null;
+        try {
+            pReader = pFactory.createXMLStreamReader(pInput);
+
+            while (pReader.hasNext() && pReader.next() != XMLStreamConstants.START_ELEMENT) {
+                // prolog, doctype and comments
+            }
+            if (!pReader.isStartElement()) {
+                throw new IOException("No element");
+            }
+
+            Document pRoot = readAttributes(pReader);
+            Map<String, List<Object>> pLists = new HashMap<>(0);
+            Document pFirst = null;
+            String sChild = null;
+            boolean bRecords = false;
+            boolean bMixed = false;
+            boolean bFields = false;
+
+            while (pReader.hasNext()) {
+                int iEvent = pReader.next();
+                if (iEvent == XMLStreamConstants.END_ELEMENT) {
+                    break;
+                }
+                if (iEvent != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String sName = pReader.getLocalName();
+                Object pValue = readElement(pReader);
+                boolean bRecord = pValue instanceof Document && !bMixed && (sChild == null || sChild.equals(sName));
+
+                if (bRecords && bRecord) {
+                    pConsumer.accept((Document) pValue);
+                } else if (bRecord && pFirst == null) {
+                    pFirst = (Document) pValue;
+                    sChild = sName;
+                } else if (bRecord) {
+                    // the second child decides: from now on the children are records
+                    bRecords = true;
+                    pConsumer.accept(pFirst);
+                    pConsumer.accept((Document) pValue);
+                    pFirst = null;
+                } else {
+                    if (pFirst != null) {
+                        put(pRoot, pLists, sChild, pFirst);
+                        pFirst = null;
+                    }
+                    bMixed = !bRecords;
+                    bFields = true;
+                    put(pRoot, pLists, sName, pValue);
+                }
+            }
+
+            if (pFirst != null) {
+                put(pRoot, pLists, sChild, pFirst);
+            }
+            // the attributes of a list of records are no record
+            if (!bRecords || bFields) {
+                pConsumer.accept(pRoot);
+            }
+
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            if (pReader != null) {
+                try {
+                    pReader.close();
+                } catch (XMLStreamException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Method to read an element
+     * @param pReader positioned on the start element, afterwards on its end element
+     * @return a Document, or a String for an element with only text
+     * @throws XMLStreamException
+     */
+    private static Object readElement(XMLStreamReader pReader) throws XMLStreamException {
+
+        Document rDocument = readAttributes(pReader);
+        Map<String, List<Object>> pLists = new HashMap<>(0);
+        StringBuilder sb = new StringBuilder();
+
+        while (pReader.hasNext()) {
+            int iEvent = pReader.next();
+            if (iEvent == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+            switch (iEvent) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String sName = pReader.getLocalName();
+                    put(rDocument, pLists, sName, readElement(pReader));
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    sb.append(pReader.getTextCharacters(), pReader.getTextStart(), pReader.getTextLength());
+                    break;
+            }
+        }
+
+        String sText = sb.toString().trim();
+        if (rDocument.isEmpty()) {
+            return sText;
+        }
+        if (!sText.isEmpty()) {
+            rDocument.put("text", sText);
+        }
+        return rDocument;
+
+    }
+
+    private static Document readAttributes(XMLStreamReader pReader) {
+        Document rDocument = new Document();
+        for (int a = 0; a < pReader.getAttributeCount(); a++) {
+            rDocument.put(pReader.getAttributeLocalName(a), pReader.getAttributeValue(a));
+        }
+        return rDocument;
+    }
+
+    /**
+     * Method to add a field, a field which exists already becomes a list
+     * @param pDocument
+     * @param pLists lists of the repeated fields of the document
+     * @param sName
+     * @param pValue
+     */
+    private static void put(Document pDocument, Map<String, List<Object>> pLists, String sName, Object pValue) {
+        List<Object> pList = pLists.get(sName);
+        if (pList != null) {
+            pList.add(pValue);
+        } else if (pDocument.containsKey(sName)) {
+            pList = new ArrayList<>(2);
+            pList.add(pDocument.get(sName));
+            pList.add(pValue);
+            pLists.put(sName, pList);
+            pDocument.put(sName, pList);
+        } else {
+            pDocument.put(sName, pValue);
+        }
+    }
+
+    public long getFiles() {
+        return lFiles.get();
+    }
+
+    public long getRecords() {
+        return lRecords.get();
+    }
+
+    public long getErrors() {
+        return lErrors.get();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        MongoDBConnectionHandler pHandler = new MongoDBConnectionHandler(new MongoDBConfig(args[0]));
+
+        File pDirectory = new File(args.length > 1 ? args[1] : "/tmp/Drucksachen");
+        String sCollection = args.length > 2 ? args[2] : COLLECTION;
+        int iWorkers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        DrucksachenImporter pImporter = new DrucksachenImporter(pHandler.getDatabase().getCollection(sCollection));
+
+        long lStart = System.currentTimeMillis();
+        pImporter.importDirectory(pDirectory, iWorkers);
+        long lTime = Math.max(1, System.currentTimeMillis() - lStart);
+
+        System.out.println(pImporter.getFiles() + " files, " + pImporter.getRecords() + " records, " + pImporter.getErrors() + " errors in " + lTime + " ms (" + (pImporter.getRecords() * 1000 / lTime) + " records/s)");
+
+    }
+
+}
@@ -42,10 +42,10 @@ public class MongoDBConfig extends Properties {
 
     /**
      * Method for the Username
-     * @return
+     * @return empty if remote_user is not set, then no credentials are sent
      */
     public String getMongoUsername(){
-        return getProperty("remote_user", "user");
+        return getProperty("remote_user", "").trim();
 
     }
 
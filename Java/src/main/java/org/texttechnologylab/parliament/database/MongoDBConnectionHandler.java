@@ -44,8 +44,6 @@ public class MongoDBConnectionHandler {
      */
     private void init(){
 
-        // defind credentials (Username, database, password)
-        MongoCredential credential = MongoCredential.createScramSha1Credential(pConfig.getMongoUsername(), pConfig.getMongoDatabase(), pConfig.getMongoPassword().toCharArray());
         // defining Hostname and Port
         ServerAddress seed = new ServerAddress(pConfig.getMongoHostname(), pConfig.getMongoPort());
         List<ServerAddress> seeds = new ArrayList(0);
@@ -61,8 +59,15 @@ public class MongoDBConnectionHandler {
                 .sslEnabled(false)
                 .build();
 
-        // connect to MongoDB
-        pClient = new MongoClient(seeds, credential, options);
+        // connect to MongoDB, without remote_user (e.g. a local mongod for testing) no credentials are sent
+        if(pConfig.getMongoUsername().isEmpty()){
+            pClient = new MongoClient(seeds, options);
+        }
+        else{
+            // defind credentials (Username, database, password)
+            MongoCredential credential = MongoCredential.createScramSha1Credential(pConfig.getMongoUsername(), pConfig.getMongoDatabase(), pConfig.getMongoPassword().toCharArray());
+            pClient = new MongoClient(seeds, credential, options);
+        }
 
         // select database
         pDatabase = pClient.getDatabase(pConfig.getMongoDatabase());
@@ -0,0 +1,339 @@
+package org.texttechnologylab.parliament.database;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class for a work queue in a collection of the MongoDB, which is shared by any number of crawler nodes.
+ * Every task is a document with a unique _id, a type (e.g. discover, download) and a payload:
+ * <pre>
+ * { _id, type, payload, state: pending|leased|done|failed, owner, token, leaseUntil, attempts, error, created, updated }
+ * </pre>
+ * A node takes a task with an atomic findOneAndUpdate, which either finds a pending task or a leased task whose lease
+ * expired, so no task is ever given to two living nodes at the same time. While a task runs its lease is extended by
+ * a heartbeat; if a node dies the lease expires and another node takes the task.
+ * Every lease gets a new token, a node can only extend, complete or fail a task with the token of its current lease,
+ * so a node which lost its lease can not overwrite the result of the new owner. Adding and completing tasks is idempotent.
+ * The expiry is compared with the clocks of the nodes, the lease should therefore be much longer than their difference.
+ * Every lease counts as an attempt, also when the node dies before it could fail the task; a task whose lease expired
+ * after the maximum of attempts is not leased again but failed, so a task which crashes its nodes ends the crawl.
+ */
+public class MongoWorkQueue {
+
+    public static final String PENDING = "pending";
+    public static final String LEASED = "leased";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    /**
+     * Default duration of a lease in milliseconds
+     */
+    public static final long DEFAULT_LEASE = 5 * 60 * 1000;
+
+    /**
+     * Default number of attempts after which a task is failed permanently
+     */
+    public static final int DEFAULT_ATTEMPTS = 5;
+
+    private final MongoCollection<Document> pCollection;
+
+    private final String sOwner;
+
+    private long lLease = DEFAULT_LEASE;
+
+    private int iMaxAttempts = DEFAULT_ATTEMPTS;
+
+    private final Map<String, Lease> pLeases = new ConcurrentHashMap<>(0);
+
+    private ScheduledExecutorService pHeartbeat = null;
+
+    /**
+     * Constructor
+     * @param pHandler connection to the MongoDB
+     * @param sCollection collection of the queue
+     * @param sOwner name of this node, e.g. host name and process id
+     */
+    public MongoWorkQueue(MongoDBConnectionHandler pHandler, String sCollection, String sOwner) {
+        this(pHandler.getDatabase().getCollection(sCollection), sOwner);
+    }
+
+    /**
+     * Constructor
+     * @param pCollection collection of the queue
+     * @param sOwner name of this node
+     */
+    public MongoWorkQueue(MongoCollection<Document> pCollection, String sOwner) {
+        this.pCollection = pCollection;
+        this.sOwner = sOwner;
+        // the lease query looks for pending tasks and for expired leases of a type
+        pCollection.createIndex(Indexes.ascending("type", "state", "leaseUntil"));
+        pCollection.createIndex(Indexes.ascending("state"));
+    }
+
+    /**
+     * Method to set the duration of the leases
+     * @param lLease milliseconds
+     */
+    public void setLease(long lLease) {
+        this.lLease = Math.max(1000, lLease);
+    }
+
+    /**
+     * Method to set the number of attempts after which a task is failed permanently
+     * @param iMaxAttempts
+     */
+    public void setMaxAttempts(int iMaxAttempts) {
+        this.iMaxAttempts = Math.max(1, iMaxAttempts);
+    }
+
+    public String getOwner() {
+        return sOwner;
+    }
+
+    /**
+     * Method to add a task, a task which already exists (in any state) is not changed
+     * @param sID unique id of the task, e.g. the URL of a document
+     * @param sType
+     * @param pPayload
+     * @return true if the task is new
+     */
+    public boolean add(String sID, String sType, Document pPayload) {
+        Date pNow = new Date();
+        try {
+            UpdateResult pResult = pCollection.updateOne(Filters.eq("_id", sID),
+                    Updates.combine(
+                            Updates.setOnInsert("type", sType),
+                            Updates.setOnInsert("payload", pPayload),
+                            Updates.setOnInsert("state", PENDING),
+                            Updates.setOnInsert("attempts", 0),
+                            Updates.setOnInsert("created", pNow),
+                            Updates.setOnInsert("updated", pNow)),
+                    new UpdateOptions().upsert(true));
+            return pResult.getUpsertedId() != null;
+        } catch (MongoWriteException e) {
+            // two nodes added the same task at the same time
+            if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Method to take the oldest pending task or a task with an expired lease
+     * @param sTypes types of the tasks, all types if empty
+     * @return the lease, null if there is no task
+     */
+    public Lease lease(String... sTypes) {
+
+        Date pNow = new Date();
+        String sToken = UUID.randomUUID().toString();
+
+        Bson pAvailable = Filters.or(
+                Filters.eq("state", PENDING),
+                Filters.and(Filters.eq("state", LEASED), Filters.lt("leaseUntil", pNow), Filters.lt("attempts", iMaxAttempts)));
+        Bson pFilter = sTypes.length == 0 ? pAvailable : Filters.and(Filters.in("type", Arrays.asList(sTypes)), pAvailable);
+
+        Document pTask = pCollection.findOneAndUpdate(pFilter,
+                Updates.combine(
+                        Updates.set("state", LEASED),
+                        Updates.set("owner", sOwner),
+                        Updates.set("token", sToken),
+                        Updates.set("leaseUntil", new Date(pNow.getTime() + lLease)),
+                        Updates.set("updated", pNow),
+                        Updates.inc("attempts", 1)),
+                new FindOneAndUpdateOptions().sort(Sorts.ascending("created")).returnDocument(ReturnDocument.AFTER));
+
+        if (pTask == null) {
+            expire();
+            return null;
+        }
+
+        Lease rLease = new Lease(pTask, sToken);
+        pLeases.put(rLease.getID(), rLease);
+        return rLease;
+
+    }
+
+    /**
+     * Method to extend a lease
+     * @param pLease
+     * @return false if the lease expired and the task belongs to another node now
+     */
+    public boolean heartbeat(Lease pLease) {
+        Date pNow = new Date();
+        UpdateResult pResult = pCollection.updateOne(
+                Filters.and(Filters.eq("_id", pLease.getID()), Filters.eq("token", pLease.sToken), Filters.eq("state", LEASED)),
+                Updates.combine(Updates.set("leaseUntil", new Date(pNow.getTime() + lLease)), Updates.set("updated", pNow)));
+        if (pResult.getMatchedCount() == 0) {
+            pLeases.remove(pLease.getID());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method to mark a task as finished. Completing a task twice has no effect.
+     * @param pLease
+     * @return true if the task is done, false if the lease was lost and the task is not done
+     */
+    public boolean complete(Lease pLease) {
+        pLeases.remove(pLease.getID());
+        Date pNow = new Date();
+        UpdateResult pResult = pCollection.updateOne(
+                Filters.and(Filters.eq("_id", pLease.getID()), Filters.eq("token", pLease.sToken), Filters.eq("state", LEASED)),
+                Updates.combine(Updates.set("state", DONE), Updates.set("updated", pNow), Updates.unset("leaseUntil")));
+        if (pResult.getMatchedCount() > 0) {
+            return true;
+        }
+        return isDone(pLease.getID());
+    }
+
+    /**
+     * Method to give a task back after an error, it is leased again until the maximum of attempts is reached
+     * @param pLease
+     * @param sError
+     * @return false if the lease was lost
+     */
+    public boolean fail(Lease pLease, String sError) {
+        pLeases.remove(pLease.getID());
+        String sState = pLease.getAttempts() >= iMaxAttempts ? FAILED : PENDING;
+        UpdateResult pResult = pCollection.updateOne(
+                Filters.and(Filters.eq("_id", pLease.getID()), Filters.eq("token", pLease.sToken), Filters.eq("state", LEASED)),
+                Updates.combine(Updates.set("state", sState), Updates.set("error", sError), Updates.set("updated", new Date()), Updates.unset("leaseUntil")));
+        return pResult.getMatchedCount() > 0;
+    }
+
+    /**
+     * Method to fail all tasks whose lease expired after the maximum of attempts
+     * @return number of failed tasks
+     */
+    public long expire() {
+        Date pNow = new Date();
+        UpdateResult pResult = pCollection.updateMany(
+                Filters.and(Filters.eq("state", LEASED), Filters.lt("leaseUntil", pNow), Filters.gte("attempts", iMaxAttempts)),
+                Updates.combine(Updates.set("state", FAILED), Updates.set("error", "lease expired after " + iMaxAttempts + " attempts"),
+                        Updates.set("updated", pNow), Updates.unset("leaseUntil")));
+        return pResult.getModifiedCount();
+    }
+
+    /**
+     * Method to check if a task is done
+     * @param sID
+     * @return
+     */
+    public boolean isDone(String sID) {
+        return pCollection.countDocuments(Filters.and(Filters.eq("_id", sID), Filters.eq("state", DONE))) > 0;
+    }
+
+    /**
+     * Method to count the tasks of a state
+     * @param sState
+     * @return
+     */
+    public long count(String sState) {
+        return pCollection.countDocuments(Filters.eq("state", sState));
+    }
+
+    /**
+     * Method to check if there is no task left which is pending or leased by any node
+     * @return
+     */
+    public boolean isFinished() {
+        expire();
+        return pCollection.countDocuments(Filters.in("state", Arrays.asList(PENDING, LEASED))) == 0;
+    }
+
+    /**
+     * Method to start a thread which extends all leases of this node every third of the lease duration
+     */
+    public synchronized void startHeartbeat() {
+        if (pHeartbeat != null) {
+            return;
+        }
+        pHeartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "queue-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        pHeartbeat.scheduleWithFixedDelay(() -> {
+            for (Lease pLease : pLeases.values()) {
+                try {
+                    if (!heartbeat(pLease)) {
+                        System.out.println("Lost lease of " + pLease.getID());
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, lLease / 3, lLease / 3, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method to stop the heartbeat
+     */
+    public synchronized void stopHeartbeat() {
+        if (pHeartbeat != null) {
+            pHeartbeat.shutdownNow();
+            pHeartbeat = null;
+        }
+    }
+
+    /**
+     * Class for a task which is leased by this node
+     */
+    public static class Lease {
+
+        private final Document pTask;
+
+        private final String sToken;
+
+        Lease(Document pTask, String sToken) {
+            this.pTask = pTask;
+            this.sToken = sToken;
+        }
+
+        public String getID() {
+            return pTask.getString("_id");
+        }
+
+        public String getType() {
+            return pTask.getString("type");
+        }
+
+        public Document getPayload() {
+            return pTask.get("payload", Document.class);
+        }
+
+        public int getAttempts() {
+            return pTask.getInteger("attempts", 1);
+        }
+
+        @Override
+        public String toString() {
+            return getType() + "\t" + getID();
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.texttechnologylab.parliament.crawler.helper;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class for checking that the TextNormalizer with Rules.protocol() gives the same text as the chain of
+ * replaceAll calls which was used for the Bundestag protocols before, and that its offsets are consistent
+ */
+public class TextNormalizerTest {
+
+    /**
+     * Characters of the random texts: every rule of the chain, letters which no rule changes and the pieces of &#38;
+     */
+    private static final String ALPHABET = "ab -\n\r\t &#38;;\u0000\u0001\u001F\u007F\u0084\u0085\u0093\u0096\u009F\u00A0x\u00e4";
+
+    private static final int TEXTS = 200000;
+
+    /**
+     * Method with the replaceAll calls of Bundestag.bundestagNeu before the TextNormalizer
+     * @param sText
+     * @return
+     */
+    private static String chain(String sText) {
+        sText =  sText.replaceAll("[\\x00-\\x09]", "");
+        sText =  sText.replaceAll("[\\x0B-\\x1F]", "");
+        sText =  sText.replaceAll("[\\x20]", " ");
+        sText =  sText.replaceAll("[\\x7F-\\x9F]", "");
+        sText =  sText.replaceAll("\u0096", "'");
+        sText =  sText.replaceAll("\u0093", "");
+        sText =  sText.replaceAll("\u0084", "");
+        sText =  sText.replaceAll("\u0085", "");
+        sText =  sText.replaceAll("\\-\n", "");
+        sText =  sText.replaceAll("\n", " ");
+        sText =  sText.replaceAll("  ", " ");
+        sText =  sText.replaceAll("&#38;", "&");
+        return sText;
+    }
+
+    @Test
+    public void protocolRulesMatchReplaceAll() {
+
+        Random pRandom = new Random(4711);
+        TextNormalizer pNormalizer = new TextNormalizer(TextNormalizer.Rules.protocol());
+
+        for (int t = 0; t < TEXTS; t++) {
+
+            StringBuilder sb = new StringBuilder();
+            int iLength = pRandom.nextInt(40);
+            for (int i = 0; i < iLength; i++) {
+                sb.append(ALPHABET.charAt(pRandom.nextInt(ALPHABET.length())));
+            }
+            String sText = sb.toString();
+
+            int[] iOffsets = new int[iLength + 1];
+            String sResult = pNormalizer.normalize(sText, iOffsets);
+
+            assertEquals(escape(sText), chain(sText), sResult);
+            assertEquals(escape(sText), sResult, pNormalizer.normalize(sText));
+
+            // the offsets are monotonic, end with the length of the result and point to the unchanged letters
+            assertEquals(escape(sText), sResult.length(), iOffsets[iLength]);
+            for (int i = 0; i < iLength; i++) {
+                assertTrue(escape(sText), iOffsets[i] <= iOffsets[i + 1]);
+                char c = sText.charAt(i);
+                if (c == 'a' || c == 'b' || c == 'x' || c == '\u00e4') {
+                    assertEquals(escape(sText), c, sResult.charAt(iOffsets[i]));
+                }
+            }
+
+        }
+
+    }
+
+    @Test
+    public void emptyText() {
+        int[] iOffsets = {-1};
+        assertEquals("", TextNormalizer.forParliament("Bundestag").normalize("", iOffsets));
+        assertEquals(0, iOffsets[0]);
+    }
+
+    private static String escape(String sText) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : sText.toCharArray()) {
+            sb.append(c < 0x20 || (c >= 0x7F && c <= 0x9F) ? String.format("\\u%04X", (int) c) : String.valueOf(c));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,240 @@
+package org.texttechnologylab.parliament.database;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class for checking the MongoWorkQueue against a local mongod: lease exclusivity, token fencing,
+ * expiry after the maximum of attempts and idempotent complete.
+ * The connection is read from src/test/resources/mongodb-test.properties (127.0.0.1:27017 without credentials),
+ * another config can be given with -Dgerparcor.mongo.config=&lt;file&gt;. If the server is not reachable the tests are skipped.
+ * Usage:
+ * <pre>
+ * mkdir -p /tmp/mongo-test && mongod --dbpath /tmp/mongo-test --port 27017
+ * mvn test -Dtest=MongoWorkQueueTest
+ * </pre>
+ * Every test uses its own collection, which is dropped afterwards.
+ */
+public class MongoWorkQueueTest {
+
+    private static final String CONFIG = System.getProperty("gerparcor.mongo.config", "src/test/resources/mongodb-test.properties");
+
+    /**
+     * Shortest lease the queue allows
+     */
+    private static final long LEASE = 1000;
+
+    private static MongoDBConnectionHandler pHandler = null;
+
+    private MongoCollection<Document> pCollection = null;
+
+    @BeforeClass
+    public static void connect() throws IOException {
+        MongoDBConfig pConfig = new MongoDBConfig(new File(CONFIG));
+        Assume.assumeTrue("no mongod on " + pConfig.getMongoHostname() + ":" + pConfig.getMongoPort() + ", see the usage of MongoWorkQueueTest",
+                isReachable(pConfig.getMongoHostname(), pConfig.getMongoPort()));
+        pHandler = new MongoDBConnectionHandler(pConfig);
+    }
+
+    /**
+     * Method to check if the server accepts connections, the MongoClient would wait for minutes
+     * @param sHost
+     * @param iPort
+     * @return
+     */
+    private static boolean isReachable(String sHost, int iPort) {
+        try (Socket pSocket = new Socket()) {
+            pSocket.connect(new InetSocketAddress(sHost, iPort), 1000);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Before
+    public void create() {
+        pCollection = pHandler.getDatabase().getCollection("queue_test_" + UUID.randomUUID().toString().replace("-", ""));
+    }
+
+    @After
+    public void drop() {
+        if (pCollection != null) {
+            pCollection.drop();
+        }
+    }
+
+    private MongoWorkQueue queue(String sOwner) {
+        MongoWorkQueue rQueue = new MongoWorkQueue(pCollection, sOwner);
+        rQueue.setLease(LEASE);
+        return rQueue;
+    }
+
+    @Test
+    public void leaseIsExclusive() throws Exception {
+
+        int iTasks = 200;
+        int iNodes = 8;
+
+        MongoWorkQueue pQueue = new MongoWorkQueue(pCollection, "setup");
+        for (int i = 0; i < iTasks; i++) {
+            assertTrue(pQueue.add("task" + i, "download", new Document("i", i)));
+        }
+
+        // every node has its own queue object, as if it ran on its own machine; the leases do not expire during the test
+        Map<String, String> pOwners = new ConcurrentHashMap<>(0);
+        List<String> pDuplicates = new ArrayList<>(0);
+        ExecutorService pNodes = Executors.newFixedThreadPool(iNodes);
+        List<Future<?>> pFutures = new ArrayList<>(0);
+        for (int n = 0; n < iNodes; n++) {
+            MongoWorkQueue pNode = new MongoWorkQueue(pCollection, "node" + n);
+            pFutures.add(pNodes.submit(() -> {
+                MongoWorkQueue.Lease pLease;
+                while ((pLease = pNode.lease("download")) != null) {
+                    String sOther = pOwners.putIfAbsent(pLease.getID(), pNode.getOwner());
+                    if (sOther != null) {
+                        synchronized (pDuplicates) {
+                            pDuplicates.add(pLease.getID() + " " + sOther + " " + pNode.getOwner());
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> pFuture : pFutures) {
+            pFuture.get(2, TimeUnit.MINUTES);
+        }
+        pNodes.shutdown();
+
+        assertTrue("leased twice: " + pDuplicates, pDuplicates.isEmpty());
+        assertEquals(iTasks, pOwners.size());
+        assertEquals(iTasks, pQueue.count(MongoWorkQueue.LEASED));
+        assertEquals(0, pQueue.count(MongoWorkQueue.PENDING));
+
+    }
+
+    @Test
+    public void leaseOfOtherTypeIsNotTaken() {
+        MongoWorkQueue pQueue = queue("node");
+        pQueue.add("discover", "discover", new Document());
+        assertNull(pQueue.lease("download"));
+        assertEquals("discover", pQueue.lease("download", "discover").getID());
+    }
+
+    @Test
+    public void lostLeaseIsFenced() throws InterruptedException {
+
+        MongoWorkQueue pNodeA = queue("a");
+        MongoWorkQueue pNodeB = queue("b");
+        pNodeA.add("task", "download", new Document());
+
+        MongoWorkQueue.Lease pLeaseA = pNodeA.lease();
+        assertEquals(1, pLeaseA.getAttempts());
+        assertNull("a living lease must not be taken", pNodeB.lease());
+
+        // a stops sending heartbeats, after the lease expired b takes the task with a new token
+        Thread.sleep(LEASE + 500);
+        MongoWorkQueue.Lease pLeaseB = pNodeB.lease();
+        assertEquals("task", pLeaseB.getID());
+        assertEquals(2, pLeaseB.getAttempts());
+
+        // the old token of a can neither extend, fail nor complete the task of b
+        assertFalse(pNodeA.heartbeat(pLeaseA));
+        assertFalse(pNodeA.fail(pLeaseA, "stale"));
+        assertFalse(pNodeA.complete(pLeaseA));
+        Document pTask = pCollection.find(new Document("_id", "task")).first();
+        assertEquals(MongoWorkQueue.LEASED, pTask.getString("state"));
+        assertEquals("b", pTask.getString("owner"));
+        assertFalse(pTask.containsKey("error"));
+
+        assertTrue(pNodeB.heartbeat(pLeaseB));
+        assertTrue(pNodeB.complete(pLeaseB));
+
+        // a late fail of a does not reopen the finished task
+        assertFalse(pNodeA.fail(pLeaseA, "stale"));
+        assertTrue(pNodeA.isDone("task"));
+
+    }
+
+    @Test
+    public void expiredLeaseFailsAfterMaxAttempts() throws InterruptedException {
+
+        MongoWorkQueue pQueue = queue("node");
+        pQueue.setMaxAttempts(2);
+        pQueue.add("crash", "download", new Document());
+
+        // the node dies twice without failing the task
+        assertEquals(1, pQueue.lease().getAttempts());
+        Thread.sleep(LEASE + 500);
+        assertEquals(2, pQueue.lease().getAttempts());
+        Thread.sleep(LEASE + 500);
+
+        assertNull("a task must not be leased after the maximum of attempts", pQueue.lease());
+        assertEquals(1, pQueue.count(MongoWorkQueue.FAILED));
+        assertEquals(0, pQueue.count(MongoWorkQueue.LEASED));
+        assertTrue(pQueue.isFinished());
+        Document pTask = pCollection.find(new Document("_id", "crash")).first();
+        assertEquals(2, (int) pTask.getInteger("attempts"));
+        assertTrue(pTask.getString("error").startsWith("lease expired"));
+
+    }
+
+    @Test
+    public void failIsRetriedUntilMaxAttempts() {
+
+        MongoWorkQueue pQueue = queue("node");
+        pQueue.setMaxAttempts(2);
+        pQueue.add("error", "download", new Document());
+
+        assertTrue(pQueue.fail(pQueue.lease(), "first"));
+        assertEquals(1, pQueue.count(MongoWorkQueue.PENDING));
+        assertTrue(pQueue.fail(pQueue.lease(), "second"));
+        assertEquals(1, pQueue.count(MongoWorkQueue.FAILED));
+        assertNull(pQueue.lease());
+
+    }
+
+    @Test
+    public void completeIsIdempotent() {
+
+        MongoWorkQueue pQueue = queue("node");
+        assertTrue(pQueue.add("task", "download", new Document("url", "https://example.org/1.pdf")));
+        assertFalse("adding a task twice must not create a second one", pQueue.add("task", "download", new Document()));
+
+        MongoWorkQueue.Lease pLease = pQueue.lease();
+        assertEquals("https://example.org/1.pdf", pLease.getPayload().getString("url"));
+        assertTrue(pQueue.complete(pLease));
+        assertTrue(pQueue.complete(pLease));
+        assertEquals(1, pQueue.count(MongoWorkQueue.DONE));
+
+        // a finished task is neither added nor leased again
+        assertFalse(pQueue.add("task", "download", new Document()));
+        assertNull(pQueue.lease());
+        assertTrue(pQueue.isFinished());
+        assertEquals(1, pCollection.countDocuments());
+
+    }
+
+}